@@ -0,0 +1,136 @@
+package com.pinora.browser.core;
+
+import com.pinora.browser.util.URLUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.CookieHandler;
+import java.net.URI;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link CookieHandler} backed by {@link CookieManager}, installed as the JVM
+ * default so that WebView traffic and {@code HttpURLConnection}s share the
+ * browser's cookie jar, domain policies and blocking settings.
+ *
+ * WebKit calls this from its network threads for every request, so lookups go
+ * straight to the manager's domain index and the common no-cookie case returns
+ * a shared empty map. Third-party blocking compares the request's registrable
+ * domain with the sites currently shown in tabs, which the UI keeps up to date
+ * through {@link #setFirstPartySites(Collection)}.
+ *
+ * WebKit also routes {@code document.cookie} through this handler, with the
+ * page's scheme rewritten to {@code javascript} or {@code javascripts} (for
+ * secure pages). Such calls never see or change HttpOnly cookies.
+ */
+public class BrowserCookieHandler extends CookieHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(BrowserCookieHandler.class);
+    private static final String COOKIE_HEADER = "Cookie";
+    private static final String SET_COOKIE_HEADER = "Set-Cookie";
+    // WebKit rewrites the page's scheme to these for document.cookie reads and writes
+    private static final String SCRIPT_SCHEME = "javascript";
+    private static final String SECURE_SCRIPT_SCHEME = "javascripts";
+
+    private final CookieManager cookieManager;
+    private final CookieInterceptor interceptor;
+    private volatile Set<String> firstPartySites = Collections.emptySet();
+
+    public BrowserCookieHandler(CookieManager cookieManager) {
+        this.cookieManager = cookieManager;
+        this.interceptor = new CookieInterceptor(cookieManager);
+    }
+
+    /**
+     * Install this handler as the JVM-wide default
+     */
+    public void install() {
+        CookieHandler.setDefault(this);
+        logger.info("Cookie handler installed");
+    }
+
+    /**
+     * Replace the set of top-level page URLs whose sites count as first party
+     */
+    public void setFirstPartySites(Collection<String> pageUrls) {
+        Set<String> sites = new HashSet<>();
+        for (String url : pageUrls) {
+            String site = URLUtil.getRegistrableDomain(URLUtil.getHost(url));
+            if (site != null) {
+                sites.add(site);
+            }
+        }
+        firstPartySites = Collections.unmodifiableSet(sites);
+    }
+
+    @Override
+    public Map<String, List<String>> get(URI uri, Map<String, List<String>> requestHeaders) {
+        if (uri == null) {
+            throw new IllegalArgumentException("URI is null");
+        }
+        String host = uri.getHost();
+        if (host == null || isBlockedThirdParty(host)) {
+            return Collections.emptyMap();
+        }
+        try {
+            String header = cookieManager.getCookieHeader(host, uri.getPath(), isSecure(uri), !isScript(uri));
+            if (header == null) {
+                return Collections.emptyMap();
+            }
+            return Collections.singletonMap(COOKIE_HEADER, Collections.singletonList(header));
+        } catch (Exception e) {
+            logger.warn("Failed to look up cookies for {}: {}", host, e.getMessage());
+            return Collections.emptyMap();
+        }
+    }
+
+    @Override
+    public void put(URI uri, Map<String, List<String>> responseHeaders) {
+        if (uri == null || responseHeaders == null) {
+            throw new IllegalArgumentException("Argument is null");
+        }
+        String host = uri.getHost();
+        if (host == null) {
+            return;
+        }
+        for (Map.Entry<String, List<String>> header : responseHeaders.entrySet()) {
+            if (!SET_COOKIE_HEADER.equalsIgnoreCase(header.getKey())) {
+                continue;
+            }
+            if (isBlockedThirdParty(host)) {
+                logger.debug("Third-party cookies blocked for {}", host);
+                return;
+            }
+            for (String value : header.getValue()) {
+                interceptor.storeSetCookieHeader(value, host, isScript(uri));
+            }
+        }
+    }
+
+    private boolean isBlockedThirdParty(String host) {
+        if (!cookieManager.isBlockThirdPartyCookies()) {
+            return false;
+        }
+        Set<String> sites = firstPartySites;
+        // Nothing is open yet (e.g. the first navigation has not started), so there is no third party
+        return !sites.isEmpty() && !sites.contains(URLUtil.getRegistrableDomain(host));
+    }
+
+    private static boolean isSecure(URI uri) {
+        String scheme = uri.getScheme();
+        return "https".equalsIgnoreCase(scheme) || "wss".equalsIgnoreCase(scheme) || SECURE_SCRIPT_SCHEME.equalsIgnoreCase(scheme);
+    }
+    
+    /**
+     * Whether WebKit is asking on behalf of {@code document.cookie} rather than for an HTTP request
+     */
+    private static boolean isScript(URI uri) {
+        String scheme = uri.getScheme();
+        return SCRIPT_SCHEME.equalsIgnoreCase(scheme) || SECURE_SCRIPT_SCHEME.equalsIgnoreCase(scheme);
+    }
+}
@@ -13,21 +13,42 @@ public class BrowserEngine {
     private HistoryManager historyManager;
     private BookmarkManager bookmarkManager;
     private CacheManager cacheManager;
+    private BrowserResponseCache responseCache;
     private CookieManager cookieManager;
+    private BrowserCookieHandler cookieHandler;
+    private BrowserHttpClient httpClient;
+    private PersistenceManager persistenceManager;
     
     public BrowserEngine() {
         this.historyManager = new HistoryManager();
         this.bookmarkManager = new BookmarkManager();
         this.cacheManager = new CacheManager();
+        this.responseCache = new BrowserResponseCache(cacheManager);
+        this.responseCache.install();
         this.cookieManager = new CookieManager();
+        this.cookieHandler = new BrowserCookieHandler(cookieManager);
+        this.cookieHandler.install();
+        this.httpClient = new BrowserHttpClient(cookieHandler, cacheManager);
+        this.persistenceManager = new PersistenceManager(bookmarkManager, historyManager, cookieManager);
         logger.info("Browser Engine initialized");
     }
     
+    /**
+     * Record a navigation. Only updates memory; history is written to disk in the background.
+     */
     public void navigate(String url) {
         logger.info("Navigating to: {}", url);
         historyManager.addToHistory(url);
     }
     
+    /**
+     * Flush pending data to disk and stop background work
+     */
+    public void shutdown() {
+        persistenceManager.shutdown();
+        httpClient.shutdown();
+    }
+    
     public HistoryManager getHistoryManager() {
         return historyManager;
     }
@@ -40,7 +61,23 @@ public class BrowserEngine {
         return cacheManager;
     }
     
+    public BrowserResponseCache getResponseCache() {
+        return responseCache;
+    }
+    
     public CookieManager getCookieManager() {
         return cookieManager;
     }
+    
+    public BrowserCookieHandler getCookieHandler() {
+        return cookieHandler;
+    }
+    
+    public BrowserHttpClient getHttpClient() {
+        return httpClient;
+    }
+    
+    public PersistenceManager getPersistenceManager() {
+        return persistenceManager;
+    }
 }
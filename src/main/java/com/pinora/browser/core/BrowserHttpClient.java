@@ -0,0 +1,699 @@
+package com.pinora.browser.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLSession;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.CookieHandler;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The one {@link HttpClient} behind all network traffic that does not go
+ * through WebView: download inspection, downloads, extension installs.
+ *
+ * Sharing a client shares its connection pool, so repeated requests to an
+ * origin reuse a kept-alive HTTP/1.1 connection or multiplex over a single
+ * HTTP/2 connection instead of paying a new TLS handshake each time. Requests
+ * carry the same browser headers as WebView, and cookies are sent and stored
+ * through the browser's {@link BrowserCookieHandler}. At most
+ * {@value #MAX_CONNECTIONS_PER_HOST} requests per origin are in flight at
+ * once, like a regular browser; further callers wait up to
+ * {@link #SLOT_TIMEOUT} for a slot and then fail, so a body stream that is
+ * never closed cannot stall its origin for good.
+ *
+ * HttpClient has no {@link java.net.ResponseCache} support, so this class
+ * talks to the {@link CacheManager} itself, the way {@link BrowserResponseCache}
+ * does for {@code HttpURLConnection}: fresh responses are answered from disk
+ * without a slot, stale ones are revalidated with a conditional request, and
+ * storable responses are copied into the cache as the caller reads them.
+ */
+public class BrowserHttpClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(BrowserHttpClient.class);
+
+    public static final String USER_AGENT = "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 " +
+            "(KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36";
+    private static final int MAX_CONNECTIONS_PER_HOST = 6;
+    private static final Duration SLOT_TIMEOUT = Duration.ofSeconds(30);
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(15);
+    // Idle connections are kept this long; the JDK reads it once, when the first client is built
+    private static final String KEEPALIVE_PROPERTY = "jdk.httpclient.keepalive.timeout";
+    private static final String KEEPALIVE_SECONDS = "60";
+    /** Stored bodies are handed to subscribers in heap chunks of this size */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final HttpClient client;
+    private final ExecutorService executor;
+    private final CacheManager cacheManager;
+    private final ConcurrentHashMap<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+
+    public BrowserHttpClient(CookieHandler cookieHandler, CacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+        if (System.getProperty(KEEPALIVE_PROPERTY) == null) {
+            System.setProperty(KEEPALIVE_PROPERTY, KEEPALIVE_SECONDS);
+        }
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "BrowserHttpClient-" + threads.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(CONNECT_TIMEOUT)
+            .cookieHandler(cookieHandler)
+            .executor(executor)
+            .build();
+        logger.info("HTTP client initialized");
+    }
+
+    /**
+     * Start a GET request for {@code uri} with the browser's default headers
+     */
+    public HttpRequest.Builder newRequest(URI uri) {
+        // Accept-Encoding is left out: HttpClient does not decompress bodies
+        return HttpRequest.newBuilder(uri)
+            .header("User-Agent", USER_AGENT)
+            .header("Accept", "*/*")
+            .header("Accept-Language", "en-US,en;q=0.9");
+    }
+
+    /**
+     * Send a request and read its whole body, waiting for a free slot for the origin first
+     */
+    public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        HttpCacheEntry entry = lookup(request);
+        HttpResponse<T> cached = fromCache(request, entry, handler, start);
+        if (cached != null) {
+            return cached;
+        }
+        Semaphore permit = acquire(request.uri());
+        try {
+            return fetch(request, entry, handler, start);
+        } finally {
+            permit.release();
+        }
+    }
+
+    /**
+     * Send a request whose body is read as a stream. The origin's slot is held
+     * until the stream is closed, so callers must close it.
+     */
+    public HttpResponse<InputStream> sendStreaming(HttpRequest request) throws IOException, InterruptedException {
+        return stream(request, true);
+    }
+
+    /**
+     * Send a request for a long-running transfer such as a download. The
+     * origin's slot is only held until the response headers arrive, so a slow
+     * or paused transfer does not hold up other requests to the origin.
+     * Callers must close the body stream.
+     */
+    public HttpResponse<InputStream> download(HttpRequest request) throws IOException, InterruptedException {
+        return stream(request, false);
+    }
+
+    /**
+     * Headers of a HEAD request for {@code uri}
+     */
+    public HttpResponse<Void> head(URI uri) throws IOException, InterruptedException {
+        HttpRequest request = newRequest(uri)
+            .method("HEAD", HttpRequest.BodyPublishers.noBody())
+            .build();
+        return send(request, HttpResponse.BodyHandlers.discarding());
+    }
+
+    /**
+     * Close the client's connections, cancelling requests in flight, and stop its worker threads
+     */
+    public void shutdown() {
+        client.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    private HttpResponse<InputStream> stream(HttpRequest request, boolean holdSlot) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        HttpCacheEntry entry = lookup(request);
+        HttpResponse<InputStream> cached = fromCache(request, entry, HttpResponse.BodyHandlers.ofInputStream(), start);
+        if (cached != null) {
+            return cached;
+        }
+        Semaphore permit = acquire(request.uri());
+        if (!holdSlot) {
+            try {
+                return fetch(request, entry, HttpResponse.BodyHandlers.ofInputStream(), start);
+            } finally {
+                permit.release();
+            }
+        }
+        AtomicBoolean released = new AtomicBoolean();
+        Runnable release = () -> {
+            if (released.compareAndSet(false, true)) {
+                permit.release();
+            }
+        };
+        boolean handedOff = false;
+        try {
+            HttpResponse<InputStream> response = fetch(request, entry, info -> HttpResponse.BodySubscribers.mapping(
+                HttpResponse.BodySubscribers.ofInputStream(), in -> new PermitInputStream(in, release)), start);
+            handedOff = true;
+            return response;
+        } finally {
+            // From here on the body stream gives the slot back
+            if (!handedOff) {
+                release.run();
+            }
+        }
+    }
+
+    /**
+     * The stored response for a request, fresh or stale, or null if there is none or the request bypasses the cache.
+     * Unsafe requests invalidate what is stored for their URL.
+     */
+    private HttpCacheEntry lookup(HttpRequest request) {
+        String method = request.method();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            cacheManager.invalidate(request.uri());
+            return null;
+        }
+        Map<String, List<String>> headers = request.headers().map();
+        if (!CacheManager.isCacheableRequest(method, headers)) {
+            return null;
+        }
+        try {
+            return cacheManager.lookup(request.uri(), method, headers);
+        } catch (Exception e) {
+            logger.warn("Failed to look up {} in the cache: {}", request.uri(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Answer a request from a fresh stored response, or return null if it has to go to the network
+     */
+    private <T> HttpResponse<T> fromCache(HttpRequest request, HttpCacheEntry entry, HttpResponse.BodyHandler<T> handler,
+                                          long start) throws IOException {
+        if (entry == null || !entry.isFresh(System.currentTimeMillis())
+            || CacheManager.requiresRevalidation(request.headers().map())) {
+            return null;
+        }
+        CacheBlobStore.Lease lease;
+        try {
+            lease = openBody(entry, request.method());
+        } catch (IOException e) {
+            // Evicted since the lookup
+            return null;
+        }
+        T body = replay(handler, entry, lease);
+        cacheManager.getStats().recordHit(System.nanoTime() - start);
+        logger.debug("Cache: fresh hit for {}", request.uri());
+        return new CachedResponse<>(request, entry, body);
+    }
+
+    /**
+     * Send a request to the network, revalidating {@code entry} if it is stale and storing the response if allowed
+     */
+    private <T> HttpResponse<T> fetch(HttpRequest request, HttpCacheEntry entry, HttpResponse.BodyHandler<T> handler,
+                                      long start) throws IOException, InterruptedException {
+        if (!CacheManager.isCacheableRequest(request.method(), request.headers().map())) {
+            return client.send(request, handler);
+        }
+        HttpCacheEntry stale = entry != null && "GET".equals(request.method()) && entry.hasValidators() ? entry : null;
+        HttpRequest outgoing = request;
+        if (stale != null) {
+            HttpRequest.Builder conditional = HttpRequest.newBuilder(request, (name, value) -> true);
+            CacheManager.conditionalHeaders(stale).forEach(conditional::setHeader);
+            outgoing = conditional.build();
+        }
+        CachingHandler<T> caching = new CachingHandler<>(request, stale, handler, start);
+        HttpResponse<T> response;
+        try {
+            response = client.send(outgoing, caching);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            caching.failed();
+            throw e;
+        }
+        caching.responded(response);
+        if (caching.bodyLost) {
+            // The stored body was evicted between the lookup and the 304; fetch it again
+            return fetch(request, null, handler, System.nanoTime());
+        }
+        if (caching.refreshed != null) {
+            logger.debug("Cache: revalidated {}", request.uri());
+            return new CachedResponse<>(request, caching.refreshed, response.body());
+        }
+        return response;
+    }
+
+    private CacheBlobStore.Lease openBody(HttpCacheEntry entry, String method) throws IOException {
+        return "HEAD".equals(method) || !entry.hasBody() ? CacheBlobStore.Lease.empty() : cacheManager.openBody(entry);
+    }
+
+    /**
+     * Feed a stored body to the caller's body handler and return the body it produces
+     */
+    private static <T> T replay(HttpResponse.BodyHandler<T> handler, HttpCacheEntry entry, CacheBlobStore.Lease lease) throws IOException {
+        HttpResponse.BodySubscriber<T> subscriber;
+        try {
+            subscriber = handler.apply(new CachedInfo(entry.getStatusCode(), headersOf(entry), HttpClient.Version.HTTP_1_1));
+        } catch (RuntimeException e) {
+            lease.close();
+            throw e;
+        }
+        subscriber.onSubscribe(new LeaseSubscription(subscriber, lease));
+        try {
+            return subscriber.getBody().toCompletableFuture().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading a cached body", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to read a cached body", e.getCause());
+        }
+    }
+
+    /**
+     * Headers of a stored response, with the length of its body
+     */
+    private static HttpHeaders headersOf(HttpCacheEntry entry) {
+        Map<String, List<String>> headers = new LinkedHashMap<>(entry.getHeaders());
+        if (entry.getBodyLength() >= 0 && entry.getHeader("Content-Length") == null) {
+            headers.put("Content-Length", List.of(Long.toString(entry.getBodyLength())));
+        }
+        return HttpHeaders.of(headers, (name, value) -> true);
+    }
+
+    /**
+     * Take one of the origin's slots, failing once {@link #SLOT_TIMEOUT} has passed without one
+     */
+    private Semaphore acquire(URI uri) throws IOException, InterruptedException {
+        String origin = originOf(uri);
+        Semaphore permit = hostPermits.computeIfAbsent(origin, k -> new Semaphore(MAX_CONNECTIONS_PER_HOST));
+        if (!permit.tryAcquire(SLOT_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+            throw new HttpTimeoutException("Timed out waiting for a connection slot for " + origin);
+        }
+        return permit;
+    }
+
+    private static String originOf(URI uri) {
+        String scheme = uri.getScheme() == null ? "http" : uri.getScheme().toLowerCase(Locale.ROOT);
+        String host = uri.getHost() == null ? "" : uri.getHost().toLowerCase(Locale.ROOT);
+        int port = uri.getPort() != -1 ? uri.getPort() : ("https".equals(scheme) ? 443 : 80);
+        return scheme + "://" + host + ":" + port;
+    }
+
+    /**
+     * Body handler for a request to the network. Records the outcome in the
+     * cache statistics once the response headers arrive, answers a 304 with
+     * the stored body, and copies storable responses into the cache.
+     */
+    private final class CachingHandler<T> implements HttpResponse.BodyHandler<T> {
+        private final HttpRequest request;
+        private final HttpCacheEntry stale;
+        private final HttpResponse.BodyHandler<T> delegate;
+        private final long startNanos;
+        private final long requestTime = System.currentTimeMillis();
+        // Set by apply(), which happens before client.send() returns
+        private boolean recorded;
+        private boolean bodyLost;
+        private HttpCacheEntry refreshed;
+        private HttpCacheEntry headOnly;
+        private CachingSubscriber<T> storing;
+
+        CachingHandler(HttpRequest request, HttpCacheEntry stale, HttpResponse.BodyHandler<T> delegate, long startNanos) {
+            this.request = request;
+            this.stale = stale;
+            this.delegate = delegate;
+            this.startNanos = startNanos;
+        }
+
+        @Override
+        public HttpResponse.BodySubscriber<T> apply(HttpResponse.ResponseInfo info) {
+            long elapsed = System.nanoTime() - startNanos;
+            int code = info.statusCode();
+            Map<String, List<String>> responseHeaders = info.headers().map();
+            CacheStats stats = cacheManager.getStats();
+            recorded = true;
+            if (stale != null) {
+                stats.recordRevalidation(code == 304, elapsed);
+                if (code == 304) {
+                    HttpCacheEntry updated = cacheManager.revalidated(stale, responseHeaders, requestTime, System.currentTimeMillis());
+                    try {
+                        CacheBlobStore.Lease lease = openBody(updated, "GET");
+                        refreshed = updated;
+                        return new NotModifiedSubscriber<>(delegate.apply(
+                            new CachedInfo(updated.getStatusCode(), headersOf(updated), info.version())), lease);
+                    } catch (IOException e) {
+                        bodyLost = true;
+                        return HttpResponse.BodySubscribers.replacing(null);
+                    }
+                }
+            } else {
+                stats.recordMiss();
+                stats.recordNetworkLoad(elapsed);
+            }
+            HttpResponse.BodySubscriber<T> subscriber = delegate.apply(info);
+            String method = request.method();
+            Map<String, List<String>> requestHeaders = request.headers().map();
+            if (!CacheManager.isStorable(method, code, requestHeaders, responseHeaders)) {
+                return subscriber;
+            }
+            Map<String, List<String>> headers = CacheManager.storedHeaders(responseHeaders);
+            HttpCacheEntry entry = new HttpCacheEntry(CacheManager.keyOf(request.uri()), method, "HTTP/1.1 " + code, code,
+                headers, CacheManager.varyValues(requestHeaders, headers), requestTime, System.currentTimeMillis());
+            if ("HEAD".equals(method)) {
+                // Stored once the response turns out not to come from a redirect
+                headOnly = entry;
+                return subscriber;
+            }
+            CacheManager.BodyWriter writer = cacheManager.store(entry, info.headers().firstValueAsLong("Content-Length").orElse(-1));
+            if (writer == null) {
+                return subscriber;
+            }
+            storing = new CachingSubscriber<>(subscriber, writer);
+            return storing;
+        }
+
+        /**
+         * The response arrived; it may only be stored under the request's URL if no redirect was followed
+         */
+        void responded(HttpResponse<T> response) {
+            boolean sameResource = response.previousResponse().isEmpty() && response.uri().equals(request.uri());
+            if (storing != null) {
+                storing.confirm(sameResource);
+            }
+            if (headOnly != null && sameResource) {
+                cacheManager.storeHeaders(headOnly);
+            }
+        }
+
+        void failed() {
+            if (!recorded) {
+                cacheManager.getStats().recordMiss();
+            }
+            if (storing != null) {
+                storing.confirm(false);
+            }
+        }
+    }
+
+    /**
+     * Copies a response body into the cache as it is delivered. The entry is
+     * committed only once the body is complete and the response is known to
+     * belong to the requested URL; a cancelled or failed body is discarded.
+     */
+    private static final class CachingSubscriber<T> implements HttpResponse.BodySubscriber<T> {
+        private final HttpResponse.BodySubscriber<T> delegate;
+        private final CacheManager.BodyWriter writer;
+        private final WritableByteChannel channel;
+        // Guarded by this
+        private boolean complete;
+        private Boolean sameResource;
+        private boolean settled;
+
+        CachingSubscriber(HttpResponse.BodySubscriber<T> delegate, CacheManager.BodyWriter writer) {
+            this.delegate = delegate;
+            this.writer = writer;
+            this.channel = Channels.newChannel(writer);
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            delegate.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    subscription.request(n);
+                }
+
+                @Override
+                public void cancel() {
+                    confirm(false);
+                    subscription.cancel();
+                }
+            });
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> items) {
+            synchronized (this) {
+                if (!settled) {
+                    try {
+                        for (ByteBuffer item : items) {
+                            channel.write(item.duplicate());
+                        }
+                    } catch (IOException e) {
+                        settled = true;
+                        writer.abort();
+                    }
+                }
+            }
+            delegate.onNext(items);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            confirm(false);
+            delegate.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            synchronized (this) {
+                complete = true;
+                settle();
+            }
+            delegate.onComplete();
+        }
+
+        @Override
+        public CompletionStage<T> getBody() {
+            return delegate.getBody();
+        }
+
+        synchronized void confirm(boolean sameResource) {
+            this.sameResource = sameResource;
+            settle();
+        }
+
+        private void settle() {
+            if (settled || sameResource == null) {
+                return;
+            }
+            if (!sameResource) {
+                settled = true;
+                writer.abort();
+            } else if (complete) {
+                settled = true;
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    logger.debug("Failed to store a response body: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes the empty body of a 304 and hands the caller's subscriber the stored body instead
+     */
+    private static final class NotModifiedSubscriber<T> implements HttpResponse.BodySubscriber<T> {
+        private final HttpResponse.BodySubscriber<T> delegate;
+        private final CacheBlobStore.Lease lease;
+
+        NotModifiedSubscriber(HttpResponse.BodySubscriber<T> delegate, CacheBlobStore.Lease lease) {
+            this.delegate = delegate;
+            this.lease = lease;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> items) {
+            // A 304 has no body
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            lease.close();
+            delegate.onSubscribe(new LeaseSubscription(delegate, CacheBlobStore.Lease.empty()));
+            delegate.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            delegate.onSubscribe(new LeaseSubscription(delegate, lease));
+        }
+
+        @Override
+        public CompletionStage<T> getBody() {
+            return delegate.getBody();
+        }
+    }
+
+    /**
+     * Delivers a stored body in heap chunks as the subscriber asks for them.
+     * The blob is read in place and its lease closed once the body is
+     * delivered or the subscriber cancels.
+     */
+    private static final class LeaseSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super List<ByteBuffer>> subscriber;
+        private final CacheBlobStore.Lease lease;
+        private final ByteBuffer source;
+        // Guarded by this
+        private long demand;
+        private boolean draining;
+        private boolean done;
+
+        LeaseSubscription(Flow.Subscriber<? super List<ByteBuffer>> subscriber, CacheBlobStore.Lease lease) {
+            this.subscriber = subscriber;
+            this.lease = lease;
+            this.source = lease.buffer();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancel();
+                subscriber.onError(new IllegalArgumentException("Non-positive request: " + n));
+                return;
+            }
+            synchronized (this) {
+                demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                // A request made from within onNext is served by the loop already running
+                if (draining || done) {
+                    return;
+                }
+                draining = true;
+            }
+            drain();
+        }
+
+        private void drain() {
+            while (true) {
+                ByteBuffer chunk = null;
+                synchronized (this) {
+                    if (done) {
+                        return;
+                    }
+                    if (source.hasRemaining()) {
+                        if (demand == 0) {
+                            draining = false;
+                            return;
+                        }
+                        demand--;
+                        int length = Math.min(CHUNK_SIZE, source.remaining());
+                        chunk = ByteBuffer.allocate(length).put(source.slice(source.position(), length)).flip();
+                        source.position(source.position() + length);
+                    } else {
+                        done = true;
+                    }
+                }
+                if (chunk == null) {
+                    lease.close();
+                    subscriber.onComplete();
+                    return;
+                }
+                subscriber.onNext(List.of(chunk));
+            }
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                done = true;
+            }
+            lease.close();
+        }
+    }
+
+    private record CachedInfo(int statusCode, HttpHeaders headers, HttpClient.Version version)
+        implements HttpResponse.ResponseInfo {
+    }
+
+    /**
+     * A response answered from the cache, or a 304 answered with the stored response
+     */
+    private record CachedResponse<T>(HttpRequest request, HttpCacheEntry entry, T body) implements HttpResponse<T> {
+        @Override
+        public int statusCode() {
+            return entry.getStatusCode();
+        }
+
+        @Override
+        public Optional<HttpResponse<T>> previousResponse() {
+            return Optional.empty();
+        }
+
+        @Override
+        public HttpHeaders headers() {
+            return headersOf(entry);
+        }
+
+        @Override
+        public Optional<SSLSession> sslSession() {
+            return Optional.empty();
+        }
+
+        @Override
+        public URI uri() {
+            return request.uri();
+        }
+
+        @Override
+        public HttpClient.Version version() {
+            return HttpClient.Version.HTTP_1_1;
+        }
+    }
+
+    /**
+     * Body stream that gives the origin's slot back when closed
+     */
+    private static final class PermitInputStream extends FilterInputStream {
+        private final Runnable release;
+
+        PermitInputStream(InputStream in, Runnable release) {
+            super(in);
+            this.release = release;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                release.run();
+            }
+        }
+    }
+}
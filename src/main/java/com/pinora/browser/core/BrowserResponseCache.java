@@ -0,0 +1,377 @@
+package com.pinora.browser.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.CacheRequest;
+import java.net.CacheResponse;
+import java.net.HttpURLConnection;
+import java.net.ResponseCache;
+import java.net.SecureCacheResponse;
+import java.net.URI;
+import java.net.URLConnection;
+import java.security.Principal;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link ResponseCache} backed by {@link CacheManager}, installed as the JVM
+ * default so that every {@code HttpURLConnection} with caching enabled is
+ * served from the browser's disk cache. The browser's own requests go through
+ * {@link BrowserHttpClient}, which uses the same {@link CacheManager}.
+ *
+ * Fresh responses are answered straight from disk. A stale response with an
+ * ETag or Last-Modified date is revalidated with a conditional request before
+ * the connection is answered: a 304 refreshes the stored entry and serves it,
+ * anything else that can be served is streamed through to the caller and
+ * stored on the way, so the resource is never fetched twice. Unsafe requests
+ * invalidate what is stored for their URL.
+ */
+public class BrowserResponseCache extends ResponseCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(BrowserResponseCache.class);
+    private static final int REVALIDATE_CONNECT_TIMEOUT = 15000;
+    private static final int REVALIDATE_READ_TIMEOUT = 30000;
+    /** Request headers the revalidation request must not copy from the original */
+    private static final Set<String> NOT_FORWARDED = Set.of("host", "connection", "content-length", "cookie",
+        "if-none-match", "if-modified-since");
+
+    private final CacheManager cacheManager;
+    // The JDK calls get() and then put() on the same thread for one request
+    private final ThreadLocal<PendingRequest> pending = new ThreadLocal<>();
+
+    public BrowserResponseCache(CacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+    }
+
+    /**
+     * Install this cache as the JVM-wide default
+     */
+    public void install() {
+        ResponseCache.setDefault(this);
+        logger.info("Response cache installed");
+    }
+
+    @Override
+    public CacheResponse get(URI uri, String method, Map<String, List<String>> requestHeaders) throws IOException {
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        pending.set(new PendingRequest(uri, new LinkedHashMap<>(requestHeaders), now, start));
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            cacheManager.invalidate(uri);
+            return null;
+        }
+        if (!CacheManager.isCacheableRequest(method, requestHeaders)) {
+            return null;
+        }
+        CacheStats stats = cacheManager.getStats();
+        try {
+            HttpCacheEntry entry = cacheManager.lookup(uri, method, requestHeaders);
+            if (entry != null && entry.isFresh(now) && !CacheManager.requiresRevalidation(requestHeaders)) {
+                CacheResponse response = response(entry, method);
+                stats.recordHit(System.nanoTime() - start);
+                logger.debug("Cache: fresh hit for {}", uri);
+                return response;
+            }
+            if (entry != null && "GET".equals(method) && entry.hasValidators()) {
+                // Counted as a hit or a miss by the revalidation itself
+                return revalidate(uri, entry, requestHeaders, now);
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to answer {} from cache: {}", uri, e.getMessage());
+        }
+        stats.recordMiss();
+        return null;
+    }
+
+    @Override
+    public CacheRequest put(URI uri, URLConnection conn) throws IOException {
+        PendingRequest request = pending.get();
+        pending.remove();
+        if (request == null || !request.uri.equals(uri) || !(conn instanceof HttpURLConnection http)) {
+            return null;
+        }
+        cacheManager.getStats().recordNetworkLoad(System.nanoTime() - request.startNanos);
+        String method = http.getRequestMethod();
+        int code = http.getResponseCode();
+        Map<String, List<String>> headers = http.getHeaderFields();
+        if (!CacheManager.isStorable(method, code, request.headers, headers)) {
+            return null;
+        }
+        HttpCacheEntry entry = newEntry(uri, method, code, http, request);
+        if ("HEAD".equals(method)) {
+            cacheManager.storeHeaders(entry);
+            return null;
+        }
+        CacheManager.BodyWriter writer = cacheManager.store(entry, http.getContentLengthLong());
+        if (writer == null) {
+            return null;
+        }
+        return new CacheRequest() {
+            @Override
+            public OutputStream getBody() {
+                return writer;
+            }
+
+            @Override
+            public void abort() {
+                writer.abort();
+            }
+        };
+    }
+
+    /**
+     * Conditional request for a stale entry on a separate, uncached connection
+     */
+    private CacheResponse revalidate(URI uri, HttpCacheEntry entry, Map<String, List<String>> requestHeaders, long requestTime) {
+        long start = System.nanoTime();
+        boolean recorded = false;
+        HttpURLConnection conn = null;
+        try {
+            conn = (HttpURLConnection) uri.toURL().openConnection();
+            conn.setUseCaches(false);
+            conn.setInstanceFollowRedirects(false);
+            conn.setConnectTimeout(REVALIDATE_CONNECT_TIMEOUT);
+            conn.setReadTimeout(REVALIDATE_READ_TIMEOUT);
+            for (Map.Entry<String, List<String>> header : requestHeaders.entrySet()) {
+                if (header.getKey() != null && !NOT_FORWARDED.contains(header.getKey().toLowerCase(Locale.ROOT))) {
+                    for (String value : header.getValue()) {
+                        conn.addRequestProperty(header.getKey(), value);
+                    }
+                }
+            }
+            CacheManager.conditionalHeaders(entry).forEach(conn::setRequestProperty);
+
+            int code = conn.getResponseCode();
+            long responseTime = System.currentTimeMillis();
+            cacheManager.getStats().recordRevalidation(code == HttpURLConnection.HTTP_NOT_MODIFIED, System.nanoTime() - start);
+            recorded = true;
+            if (code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                drain(conn);
+                logger.debug("Cache: revalidated {}", uri);
+                return response(cacheManager.revalidated(entry, conn.getHeaderFields(), requestTime, responseTime), "GET");
+            }
+            if (code != HttpURLConnection.HTTP_OK) {
+                // Let the original connection deal with redirects and errors itself
+                conn.disconnect();
+                return null;
+            }
+            PendingRequest request = new PendingRequest(uri, requestHeaders, requestTime, start);
+            HttpCacheEntry fetched = newEntry(uri, "GET", code, conn, request);
+            InputStream body = conn.getInputStream();
+            if (CacheManager.isStorable("GET", code, requestHeaders, conn.getHeaderFields())) {
+                CacheManager.BodyWriter writer = cacheManager.store(fetched, conn.getContentLengthLong());
+                if (writer != null) {
+                    body = new CachingInputStream(body, writer);
+                }
+            }
+            logger.debug("Cache: {} changed, serving the new response", uri);
+            return new EntryResponse(fetched, headerMap(fetched, conn.getContentLengthLong()), body);
+        } catch (Exception e) {
+            logger.debug("Failed to revalidate {}: {}", uri, e.getMessage());
+            if (!recorded) {
+                cacheManager.getStats().recordMiss();
+            }
+            if (conn != null) {
+                conn.disconnect();
+            }
+            return null;
+        }
+    }
+
+    private HttpCacheEntry newEntry(URI uri, String method, int code, HttpURLConnection conn, PendingRequest request) {
+        Map<String, List<String>> fields = conn.getHeaderFields();
+        List<String> status = fields.get(null);
+        String statusLine = status == null || status.isEmpty() ? "HTTP/1.1 " + code : status.get(0);
+        Map<String, List<String>> headers = CacheManager.storedHeaders(fields);
+        HttpCacheEntry entry = new HttpCacheEntry(CacheManager.keyOf(uri), method, statusLine, code, headers,
+            CacheManager.varyValues(request.headers, headers), request.time, System.currentTimeMillis());
+        if (conn instanceof HttpsURLConnection https) {
+            try {
+                List<String> certificates = new ArrayList<>();
+                for (Certificate certificate : https.getServerCertificates()) {
+                    certificates.add(Base64.getEncoder().encodeToString(certificate.getEncoded()));
+                }
+                entry = entry.withSecurity(https.getCipherSuite(), certificates);
+            } catch (Exception e) {
+                logger.debug("No TLS session details for {}: {}", uri, e.getMessage());
+            }
+        }
+        return entry;
+    }
+
+    private CacheResponse response(HttpCacheEntry entry, String method) throws IOException {
+        InputStream body = "HEAD".equals(method) || !entry.hasBody()
+            ? new ByteArrayInputStream(new byte[0])
+            : cacheManager.openBody(entry).inputStream();
+        return new EntryResponse(entry, headerMap(entry, entry.getBodyLength()), body);
+    }
+
+    /**
+     * Headers in the form {@link URLConnection} expects, with the status line under the null key
+     */
+    private static Map<String, List<String>> headerMap(HttpCacheEntry entry, long bodyLength) {
+        Map<String, List<String>> headers = new HashMap<>(entry.getHeaders());
+        headers.put(null, List.of(entry.getStatusLine()));
+        if (bodyLength >= 0 && entry.getHeader("Content-Length") == null) {
+            headers.put("Content-Length", List.of(Long.toString(bodyLength)));
+        }
+        return headers;
+    }
+
+    private static void drain(HttpURLConnection conn) {
+        try (InputStream in = conn.getInputStream()) {
+            in.transferTo(OutputStream.nullOutputStream());
+        } catch (Exception ignored) {
+            // Nothing to read after a 304
+        }
+    }
+
+    private record PendingRequest(URI uri, Map<String, List<String>> headers, long time, long startNanos) {
+    }
+
+    /**
+     * A stored or freshly fetched response. HTTPS connections only accept a
+     * {@link SecureCacheResponse}, so the TLS details recorded with the entry
+     * are handed back with it.
+     */
+    private static final class EntryResponse extends SecureCacheResponse {
+        private final HttpCacheEntry entry;
+        private final Map<String, List<String>> headers;
+        private final InputStream body;
+
+        EntryResponse(HttpCacheEntry entry, Map<String, List<String>> headers, InputStream body) {
+            this.entry = entry;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public InputStream getBody() {
+            return body;
+        }
+
+        @Override
+        public String getCipherSuite() {
+            return entry.getCipherSuite();
+        }
+
+        @Override
+        public List<Certificate> getLocalCertificateChain() {
+            return null;
+        }
+
+        @Override
+        public List<Certificate> getServerCertificateChain() throws SSLPeerUnverifiedException {
+            List<String> encoded = entry.getServerCertificates();
+            if (encoded == null || encoded.isEmpty()) {
+                throw new SSLPeerUnverifiedException("No server certificates stored for " + entry.getKey());
+            }
+            try {
+                CertificateFactory factory = CertificateFactory.getInstance("X.509");
+                List<Certificate> chain = new ArrayList<>();
+                for (String certificate : encoded) {
+                    chain.add(factory.generateCertificate(new ByteArrayInputStream(Base64.getDecoder().decode(certificate))));
+                }
+                return chain;
+            } catch (Exception e) {
+                throw new SSLPeerUnverifiedException("Unreadable server certificates for " + entry.getKey());
+            }
+        }
+
+        @Override
+        public Principal getPeerPrincipal() throws SSLPeerUnverifiedException {
+            return ((X509Certificate) getServerCertificateChain().get(0)).getSubjectX500Principal();
+        }
+
+        @Override
+        public Principal getLocalPrincipal() {
+            return null;
+        }
+    }
+
+    /**
+     * Copies a response body into the cache as the caller reads it, and
+     * commits it only if the caller read it to the end
+     */
+    private static final class CachingInputStream extends FilterInputStream {
+        private final CacheManager.BodyWriter writer;
+        private boolean complete;
+
+        CachingInputStream(InputStream in, CacheManager.BodyWriter writer) {
+            super(in);
+            this.writer = writer;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b < 0) {
+                complete = true;
+            } else {
+                copy(new byte[] {(byte) b}, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int off, int len) throws IOException {
+            int n = in.read(buffer, off, len);
+            if (n < 0) {
+                complete = true;
+            } else {
+                copy(buffer, off, n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Skipped bytes would be missing from the stored copy
+            writer.abort();
+            return in.skip(n);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                in.close();
+            } finally {
+                if (complete) {
+                    writer.close();
+                } else {
+                    writer.abort();
+                }
+            }
+        }
+
+        private void copy(byte[] buffer, int off, int len) {
+            try {
+                writer.write(buffer, off, len);
+            } catch (IOException e) {
+                writer.abort();
+            }
+        }
+    }
+}
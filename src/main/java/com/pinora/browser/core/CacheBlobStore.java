@@ -0,0 +1,383 @@
+package com.pinora.browser.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Off-heap storage for cached response bodies in memory-mapped slab files.
+ *
+ * Slabs are fixed-size {@code slab-N.bin} files in the cache directory, mapped
+ * once and added as the cache grows. Space is handed out in 512-byte aligned
+ * extents by a best-fit free-list allocator that merges neighbouring free
+ * extents on release. The extent of a body is its {@link Blob}; the cache's
+ * on-heap index only records slab, offset and length.
+ *
+ * Readers get read-only {@link ByteBuffer} slices of the mapping, so serving a
+ * body copies nothing onto the heap. A blob is reference counted: the cache
+ * holds one reference while the entry is stored and every open {@link Lease}
+ * holds another, so an evicted body's extent is only reused once the last
+ * reader is done with it. Thread-safe.
+ */
+public class CacheBlobStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheBlobStore.class);
+    private static final long MAX_SLAB_SIZE = 64L * 1024 * 1024;
+    private static final long MIN_SLAB_SIZE = 1024 * 1024;
+    private static final int ALIGNMENT = 512;
+    private static final Pattern SLAB_FILE = Pattern.compile("slab-(\\d+)\\.bin");
+    private static final Comparator<Extent> BY_SIZE = Comparator.comparingLong(Extent::length)
+        .thenComparingInt(Extent::slab).thenComparingLong(Extent::offset);
+
+    private final Path directory;
+    private final long slabSize;
+    // Guarded by this
+    private final List<Slab> slabs = new ArrayList<>();
+    private final TreeSet<Extent> freeBySize = new TreeSet<>(BY_SIZE);
+    private long capacity;
+    private long allocated;
+
+    /**
+     * Map the slab files already in {@code directory}; their space counts as free until reserved
+     *
+     * @param capacity total bytes of slabs the store may create
+     */
+    public CacheBlobStore(Path directory, long capacity) {
+        this.directory = directory;
+        this.capacity = capacity;
+        this.slabSize = alignUp(Math.max(MIN_SLAB_SIZE, Math.min(MAX_SLAB_SIZE, capacity)));
+        try (var files = Files.newDirectoryStream(directory, "slab-*.bin")) {
+            TreeMap<Integer, Path> existing = new TreeMap<>();
+            for (Path file : files) {
+                Matcher matcher = SLAB_FILE.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    existing.put(Integer.parseInt(matcher.group(1)), file);
+                }
+            }
+            // Slabs are numbered densely; anything after a gap is unusable
+            for (Map.Entry<Integer, Path> file : existing.entrySet()) {
+                if (file.getKey() != slabs.size()) {
+                    Files.deleteIfExists(file.getValue());
+                    continue;
+                }
+                long size = alignDown(Math.min(Files.size(file.getValue()), Integer.MAX_VALUE));
+                mapSlab(size > 0 ? size : slabSize);
+            }
+        } catch (Exception e) {
+            logger.error("Failed to open cache slabs in {}", directory, e);
+        }
+    }
+
+    /**
+     * Whether a file in the cache directory belongs to the blob store
+     */
+    public static boolean isSlabFile(String name) {
+        return SLAB_FILE.matcher(name).matches();
+    }
+
+    /**
+     * Largest body that can be stored
+     */
+    public long getMaxBlobSize() {
+        return slabSize;
+    }
+
+    public synchronized long getAllocated() {
+        return allocated;
+    }
+
+    public synchronized void setCapacity(long capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Allocate space for a body of the given length, or null if the store is full.
+     * The caller holds the blob's only reference.
+     */
+    public synchronized Blob allocate(long length) {
+        if (length <= 0 || length > slabSize) {
+            return null;
+        }
+        long size = alignUp(length);
+        Extent extent = freeBySize.ceiling(new Extent(size, -1, -1));
+        if (extent == null) {
+            // The last slab may overshoot the capacity, which leaves some room for fragmentation
+            if ((long) slabs.size() * slabSize >= capacity) {
+                return null;
+            }
+            try {
+                mapSlab(slabSize);
+            } catch (Exception e) {
+                logger.warn("Failed to add cache slab: {}", e.getMessage());
+                return null;
+            }
+            extent = freeBySize.ceiling(new Extent(size, -1, -1));
+            if (extent == null) {
+                return null;
+            }
+        }
+        take(extent, extent.offset, size);
+        allocated += size;
+        return new Blob(extent.slab, extent.offset, length);
+    }
+
+    /**
+     * Claim the extent of a body stored before a restart, or null if it is
+     * invalid or overlaps one already claimed
+     */
+    public synchronized Blob reserve(int slabIndex, long offset, long length) {
+        if (slabIndex < 0 || slabIndex >= slabs.size() || length <= 0 || offset % ALIGNMENT != 0) {
+            return null;
+        }
+        Slab slab = slabs.get(slabIndex);
+        long size = alignUp(length);
+        if (offset + size > slab.size) {
+            return null;
+        }
+        Map.Entry<Long, Long> free = slab.freeByOffset.floorEntry(offset);
+        if (free == null || free.getKey() + free.getValue() < offset + size) {
+            return null;
+        }
+        take(new Extent(free.getValue(), slabIndex, free.getKey()), offset, size);
+        allocated += size;
+        return new Blob(slabIndex, offset, length);
+    }
+
+    /**
+     * Remove [{@code offset}, {@code offset + size}) from a free extent containing it; caller holds the lock
+     */
+    private void take(Extent extent, long offset, long size) {
+        Slab slab = slabs.get(extent.slab);
+        freeBySize.remove(extent);
+        slab.freeByOffset.remove(extent.offset);
+        if (offset > extent.offset) {
+            addFree(extent.slab, extent.offset, offset - extent.offset);
+        }
+        long end = extent.offset + extent.length;
+        if (offset + size < end) {
+            addFree(extent.slab, offset + size, end - offset - size);
+        }
+    }
+
+    private synchronized void free(Blob blob) {
+        long size = alignUp(blob.length);
+        allocated -= size;
+        Slab slab = slabs.get(blob.slab);
+        long offset = blob.offset;
+        // Merge with the free extents on either side
+        Map.Entry<Long, Long> before = slab.freeByOffset.floorEntry(offset);
+        if (before != null && before.getKey() + before.getValue() == offset) {
+            removeFree(blob.slab, before.getKey(), before.getValue());
+            offset = before.getKey();
+            size += before.getValue();
+        }
+        Long afterLength = slab.freeByOffset.get(offset + size);
+        if (afterLength != null) {
+            removeFree(blob.slab, offset + size, afterLength);
+            size += afterLength;
+        }
+        addFree(blob.slab, offset, size);
+    }
+
+    private void addFree(int slab, long offset, long length) {
+        slabs.get(slab).freeByOffset.put(offset, length);
+        freeBySize.add(new Extent(length, slab, offset));
+    }
+
+    private void removeFree(int slab, long offset, long length) {
+        slabs.get(slab).freeByOffset.remove(offset);
+        freeBySize.remove(new Extent(length, slab, offset));
+    }
+
+    /**
+     * Map the next slab, creating its file if needed; caller holds the lock or is the constructor
+     */
+    private void mapSlab(long size) throws IOException {
+        int index = slabs.size();
+        Path file = directory.resolve("slab-" + index + ".bin");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            slabs.add(new Slab(buffer, size));
+        }
+        addFree(index, 0, size);
+        logger.debug("Mapped cache slab {} ({} bytes)", index, size);
+    }
+
+    private synchronized ByteBuffer slice(Blob blob) {
+        return slabs.get(blob.slab).buffer.slice((int) blob.offset, (int) blob.length);
+    }
+
+    private static long alignUp(long length) {
+        return (length + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    private static long alignDown(long length) {
+        return length / ALIGNMENT * ALIGNMENT;
+    }
+
+    private record Extent(long length, int slab, long offset) {
+    }
+
+    private static final class Slab {
+        final MappedByteBuffer buffer;
+        final long size;
+        final TreeMap<Long, Long> freeByOffset = new TreeMap<>();  // offset -> length
+
+        Slab(MappedByteBuffer buffer, long size) {
+            this.buffer = buffer;
+            this.size = size;
+        }
+    }
+
+    /**
+     * The extent holding one body. Starts with a single reference owned by
+     * whoever allocated or reserved it; the extent is freed when the last
+     * reference is released.
+     */
+    public final class Blob {
+        private final int slab;
+        private final long offset;
+        private final long length;
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        private Blob(int slab, long offset, long length) {
+            this.slab = slab;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public int getSlab() { return slab; }
+        public long getOffset() { return offset; }
+        public long getLength() { return length; }
+
+        /**
+         * Writable view of the extent, for filling a freshly allocated blob
+         */
+        public ByteBuffer writableBuffer() {
+            return slice(this);
+        }
+
+        /**
+         * Open the body for reading, or return null if the blob was already freed
+         */
+        public Lease open() {
+            int count;
+            do {
+                count = references.get();
+                if (count == 0) {
+                    return null;
+                }
+            } while (!references.compareAndSet(count, count + 1));
+            return new Lease(this);
+        }
+
+        /**
+         * Drop one reference
+         */
+        public void release() {
+            if (references.decrementAndGet() == 0) {
+                free(this);
+            }
+        }
+    }
+
+    /**
+     * A reader's hold on a blob; the extent is not reused until it is closed
+     */
+    public static final class Lease implements Closeable {
+        private static final ByteBuffer NO_BYTES = ByteBuffer.allocate(0).asReadOnlyBuffer();
+
+        private final Blob blob;
+        private final ByteBuffer buffer;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Lease(Blob blob) {
+            this.blob = blob;
+            this.buffer = blob != null ? blob.writableBuffer().asReadOnlyBuffer() : NO_BYTES;
+        }
+
+        /**
+         * Lease of an empty body, which has no blob
+         */
+        public static Lease empty() {
+            return new Lease(null);
+        }
+
+        /**
+         * Read-only view of the body, positioned at its start; valid until the lease is closed
+         */
+        public ByteBuffer buffer() {
+            return buffer.duplicate();
+        }
+
+        /**
+         * The body as a stream that closes the lease when closed
+         */
+        public InputStream inputStream() {
+            ByteBuffer source = buffer();
+            return new InputStream() {
+                @Override
+                public int read() {
+                    return source.hasRemaining() ? source.get() & 0xFF : -1;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    if (len == 0) {
+                        return 0;
+                    }
+                    if (!source.hasRemaining()) {
+                        return -1;
+                    }
+                    int n = Math.min(len, source.remaining());
+                    source.get(b, off, n);
+                    return n;
+                }
+
+                @Override
+                public long skip(long n) {
+                    int skipped = (int) Math.max(0, Math.min(n, source.remaining()));
+                    source.position(source.position() + skipped);
+                    return skipped;
+                }
+
+                @Override
+                public int available() {
+                    return source.remaining();
+                }
+
+                @Override
+                public void close() {
+                    Lease.this.close();
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true) && blob != null) {
+                blob.release();
+            }
+        }
+    }
+}
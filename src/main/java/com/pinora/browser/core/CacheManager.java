@@ -1,62 +1,816 @@
 package com.pinora.browser.core;
 
+import com.google.gson.Gson;
+import com.pinora.browser.util.ConfigManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import java.util.HashMap;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 /**
- * Manages browser cache for lightweight performance
+ * Size-bounded on-disk HTTP cache with an in-memory index of its entries.
+ *
+ * Each response is stored as a {@code .meta} file holding its
+ * {@link HttpCacheEntry} as JSON, with the payload in the memory-mapped slabs
+ * of a {@link CacheBlobStore}. An entry is only committed once its body is
+ * complete, so an aborted download never leaves a truncated entry behind.
+ * The index is rebuilt from the meta files in the background at startup;
+ * until then lookups simply miss.
+ *
+ * Entries are weighed in bytes and kept within the size limit by a
+ * {@link TinyLfuPolicy}. Lookups read a concurrent index without locking;
+ * stores, removals and the policy share one lock. Thread-safe.
  */
 public class CacheManager {
-    
+
     private static final Logger logger = LoggerFactory.getLogger(CacheManager.class);
-    
-    private Map<String, CacheEntry> cache;
-    private static final int MAX_CACHE_SIZE = 100;
-    private static final long CACHE_EXPIRY_TIME = 3600000; // 1 hour in milliseconds
-    
+    private static final Gson GSON = new Gson();
+    private static final String META_SUFFIX = ".meta";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String HEAD_KEY_PREFIX = "HEAD ";
+    /** A single response may take at most this fraction of the cache */
+    private static final int MAX_ENTRY_FRACTION = 8;
+    /** Rough cost of an entry's meta file and index slot, charged on top of its headers and body */
+    private static final long METADATA_OVERHEAD = 512;
+    private static final int ACCESS_DRAIN_THRESHOLD = AccessBuffer.CAPACITY / 2;
+    /** Connection-level headers that describe one transfer, not the stored response */
+    private static final Set<String> HOP_BY_HOP = Set.of("connection", "keep-alive", "transfer-encoding",
+        "proxy-connection", "te", "trailer", "upgrade");
+
+    private final Path directory;
+    private final CacheBlobStore blobStore;
+    private final AtomicLong tempCounter = new AtomicLong();
+    private final Map<String, HttpCacheEntry> entries = new ConcurrentHashMap<>();
+    private final AccessBuffer accessBuffer = new AccessBuffer();
+    private final CacheStats stats = new CacheStats();
+    // Guards the policy and every change to entries and their files
+    private final ReentrantLock lock = new ReentrantLock();
+    private final TinyLfuPolicy<String> policy;
+    private volatile long weightedSize;
+    private volatile long maxSize;
+    // Nothing is stored until the index is loaded, so new bodies cannot take space still owned by old entries
+    private volatile boolean indexLoaded;
+
     public CacheManager() {
-        this.cache = new HashMap<>();
+        this(Paths.get(ConfigManager.getCacheDirectory()), ConfigManager.getMaxCacheSize());
+    }
+
+    public CacheManager(Path directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.policy = new TinyLfuPolicy<>(maxSize);
+        try {
+            Files.createDirectories(directory);
+        } catch (Exception e) {
+            logger.error("Failed to create cache directory {}", directory, e);
+        }
+        this.blobStore = new CacheBlobStore(directory, maxSize);
+        Thread loader = new Thread(this::loadIndex, "CacheManager-Loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /**
+     * Cache key of a URL: scheme and host in lower case, default port and fragment dropped
+     */
+    public static String keyOf(URI uri) {
+        String scheme = uri.getScheme() != null ? uri.getScheme().toLowerCase(Locale.ROOT) : "";
+        String host = uri.getHost() != null ? uri.getHost().toLowerCase(Locale.ROOT) : "";
+        int port = uri.getPort();
+        boolean defaultPort = port == -1 || (port == 80 && scheme.equals("http")) || (port == 443 && scheme.equals("https"));
+        String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+        StringBuilder key = new StringBuilder(scheme).append("://").append(host);
+        if (!defaultPort) {
+            key.append(':').append(port);
+        }
+        key.append(path);
+        if (uri.getRawQuery() != null) {
+            key.append('?').append(uri.getRawQuery());
+        }
+        return key.toString();
+    }
+
+    /**
+     * Whether a request may be answered from or stored in the cache at all
+     */
+    public static boolean isCacheableRequest(String method, Map<String, List<String>> requestHeaders) {
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            return false;
+        }
+        if (!HttpCacheEntry.requestHeaderValue(requestHeaders, "Authorization").isEmpty()
+            || !HttpCacheEntry.requestHeaderValue(requestHeaders, "Range").isEmpty()) {
+            return false;
+        }
+        return !HttpCacheEntry.hasDirective(List.of(HttpCacheEntry.requestHeaderValue(requestHeaders, "Cache-Control")), "no-store");
+    }
+
+    /**
+     * Whether the request insists on revalidating even a fresh response
+     */
+    public static boolean requiresRevalidation(Map<String, List<String>> requestHeaders) {
+        List<String> cacheControl = List.of(HttpCacheEntry.requestHeaderValue(requestHeaders, "Cache-Control"));
+        return HttpCacheEntry.hasDirective(cacheControl, "no-cache")
+            || HttpCacheEntry.directiveSeconds(cacheControl, "max-age") == 0
+            || HttpCacheEntry.requestHeaderValue(requestHeaders, "Pragma").toLowerCase(Locale.ROOT).contains("no-cache");
+    }
+
+    /**
+     * Whether a response may be stored, and is worth storing: it must be
+     * fresh for a while or carry a validator to revalidate it with
+     */
+    public static boolean isStorable(String method, int statusCode, Map<String, List<String>> requestHeaders,
+                                     Map<String, List<String>> responseHeaders) {
+        if (!isCacheableRequest(method, requestHeaders)
+                || !HttpCacheEntry.HEURISTICALLY_CACHEABLE.contains(statusCode)) {
+            return false;
+        }
+        HttpCacheEntry probe = new HttpCacheEntry("", method, "", statusCode, responseHeaders, null, 0, 0);
+        List<String> cacheControl = probe.getHeaderValues("Cache-Control");
+        if (HttpCacheEntry.hasDirective(cacheControl, "no-store")) {
+            return false;
+        }
+        for (String vary : probe.getHeaderValues("Vary")) {
+            if (vary.contains("*")) {
+                return false;
+            }
+        }
+        return probe.hasValidators() || probe.getFreshnessLifetime() > 0;
+    }
+
+    /**
+     * The response headers to store: the status line, HTTP/2 pseudo-headers and connection-level headers are dropped
+     */
+    public static Map<String, List<String>> storedHeaders(Map<String, List<String>> responseHeaders) {
+        Map<String, List<String>> headers = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> header : responseHeaders.entrySet()) {
+            String name = header.getKey();
+            if (name != null && !name.startsWith(":") && !HOP_BY_HOP.contains(name.toLowerCase(Locale.ROOT))) {
+                headers.put(name, header.getValue());
+            }
+        }
+        return headers;
+    }
+
+    /**
+     * Request header values a response varies on, keyed by lower-case header name
+     */
+    public static Map<String, String> varyValues(Map<String, List<String>> requestHeaders, Map<String, List<String>> responseHeaders) {
+        Map<String, String> values = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> header : responseHeaders.entrySet()) {
+            if (!"Vary".equalsIgnoreCase(header.getKey())) {
+                continue;
+            }
+            for (String list : header.getValue()) {
+                for (String name : list.split(",")) {
+                    name = name.trim().toLowerCase(Locale.ROOT);
+                    if (!name.isEmpty()) {
+                        values.put(name, HttpCacheEntry.requestHeaderValue(requestHeaders, name));
+                    }
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * The stored response for a request, fresh or stale, or null. A HEAD request
+     * may be answered by a stored GET response as well as by a stored HEAD.
+     * Lock-free; the access is recorded for the eviction policy in the background.
+     */
+    public HttpCacheEntry lookup(URI uri, String method, Map<String, List<String>> requestHeaders) {
+        String key = keyOf(uri);
+        HttpCacheEntry entry = entries.get(key);
+        if (entry == null && "HEAD".equals(method)) {
+            String headKey = HEAD_KEY_PREFIX + key;
+            entry = entries.get(headKey);
+            if (entry != null) {
+                key = headKey;
+            }
+        }
+        recordAccess(key);
+        if (entry == null || !entry.matchesVary(requestHeaders)) {
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Conditional request headers that revalidate a stored response
+     */
+    public static Map<String, String> conditionalHeaders(HttpCacheEntry entry) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        if (entry.getETag() != null) {
+            headers.put("If-None-Match", entry.getETag());
+        }
+        if (entry.getLastModified() != null) {
+            headers.put("If-Modified-Since", entry.getLastModified());
+        }
+        return headers;
     }
-    
-    public void put(String key, Object value) {
-        if (cache.size() >= MAX_CACHE_SIZE) {
-            // Simple FIFO eviction
-            cache.remove(cache.keySet().iterator().next());
+
+    /**
+     * Open the stored body of an entry as a read-only view of the blob store.
+     * The body stays valid until the lease is closed, even if the entry is evicted meanwhile.
+     *
+     * @throws IOException if the entry has no body or was evicted before it could be opened
+     */
+    public CacheBlobStore.Lease openBody(HttpCacheEntry entry) throws IOException {
+        if (entry.getBodyLength() == 0) {
+            return CacheBlobStore.Lease.empty();
+        }
+        CacheBlobStore.Lease lease = entry.getBlob() != null ? entry.getBlob().open() : null;
+        if (lease == null) {
+            throw new IOException("No body stored for " + entry.getKey());
         }
-        cache.put(key, new CacheEntry(value, System.currentTimeMillis()));
-        logger.debug("Cache: stored key {}", key);
+        return lease;
     }
-    
-    public Object get(String key) {
-        CacheEntry entry = cache.get(key);
-        if (entry != null && !entry.isExpired()) {
-            logger.debug("Cache: hit for key {}", key);
-            return entry.value;
+
+    /**
+     * Start storing a response body. The returned stream commits the entry
+     * when closed; call {@link BodyWriter#abort()} instead if the body was not
+     * received completely. Returns null if the response is too large to cache.
+     *
+     * @param expectedLength the Content-Length of the response, or -1 if unknown
+     */
+    public BodyWriter store(HttpCacheEntry entry, long expectedLength) {
+        long limit = getMaxEntrySize();
+        if (!indexLoaded || expectedLength > limit) {
+            return null;
+        }
+        try {
+            if (expectedLength > 0) {
+                // Known length: write straight into the mapped slab
+                CacheBlobStore.Blob blob = blobStore.allocate(expectedLength);
+                return blob != null ? new BodyWriter(entry, blob, expectedLength) : null;
+            }
+            if (expectedLength == 0) {
+                return new BodyWriter(entry, (CacheBlobStore.Blob) null, 0);
+            }
+            return new BodyWriter(entry, tempFile(entry.getKey()), limit);
+        } catch (Exception e) {
+            logger.warn("Failed to start caching {}: {}", entry.getKey(), e.getMessage());
+            return null;
         }
-        if (entry != null) {
-            cache.remove(key);
+    }
+
+    /**
+     * Store the response to a HEAD request, which has no body. A stored GET
+     * response for the same URL, if any, is left in place.
+     */
+    public void storeHeaders(HttpCacheEntry entry) {
+        if (indexLoaded) {
+            commit(entry, HEAD_KEY_PREFIX + entry.getKey(), null, -1);
         }
-        return null;
     }
-    
+
+    /**
+     * Refresh a stored response after the server answered 304 Not Modified
+     */
+    public HttpCacheEntry revalidated(HttpCacheEntry entry, Map<String, List<String>> notModifiedHeaders,
+                                      long requestTime, long responseTime) {
+        HttpCacheEntry updated = entry.revalidated(notModifiedHeaders, requestTime, responseTime);
+        String key = "HEAD".equals(entry.getMethod()) ? HEAD_KEY_PREFIX + entry.getKey() : entry.getKey();
+        lock.lock();
+        try {
+            if (entries.replace(key, entry, updated)) {
+                writeMeta(key, updated);
+                removeAll(policy.add(key, weigh(updated)));
+            }
+        } finally {
+            lock.unlock();
+        }
+        return updated;
+    }
+
+    /**
+     * Drop whatever is stored for a URL, as required after an unsafe request to it
+     */
+    public void invalidate(URI uri) {
+        String key = keyOf(uri);
+        if (!entries.containsKey(key) && !entries.containsKey(HEAD_KEY_PREFIX + key)) {
+            return;
+        }
+        lock.lock();
+        try {
+            remove(key);
+            remove(HEAD_KEY_PREFIX + key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
     public void clear() {
-        cache.clear();
+        lock.lock();
+        try {
+            for (String key : new ArrayList<>(entries.keySet())) {
+                remove(key);
+            }
+        } finally {
+            lock.unlock();
+        }
         logger.info("Cache cleared");
     }
-    
-    private class CacheEntry {
-        Object value;
-        long timestamp;
-        
-        CacheEntry(Object value, long timestamp) {
-            this.value = value;
-            this.timestamp = timestamp;
-        }
-        
-        boolean isExpired() {
-            return System.currentTimeMillis() - timestamp > CACHE_EXPIRY_TIME;
+
+    /**
+     * Live counters, for callers that serve requests from the cache to record hits, misses and latencies
+     */
+    public CacheStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Current occupancy and counters since startup
+     */
+    public Map<String, Object> getCacheStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("entries", getEntryCount());
+        statistics.put("size", getSize());
+        statistics.put("maxSize", getMaxSize());
+        statistics.put("slabBytesAllocated", blobStore.getAllocated());
+        statistics.put("hits", stats.getHits());
+        statistics.put("misses", stats.getMisses());
+        statistics.put("hitRatio", stats.getHitRatio());
+        statistics.put("revalidated", stats.getRevalidated());
+        statistics.put("stores", stats.getStores());
+        statistics.put("bytesStored", stats.getBytesStored());
+        statistics.put("evictions", stats.getEvictions());
+        statistics.put("evictedBytes", stats.getEvictedBytes());
+        statistics.put("rejectedByPolicy", stats.getRejected());
+        putLatency(statistics, "hitLatency", stats.getHitLatency());
+        putLatency(statistics, "networkLatency", stats.getNetworkLatency());
+        putLatency(statistics, "revalidationLatency", stats.getRevalidationLatency());
+        return statistics;
+    }
+
+    private static void putLatency(Map<String, Object> statistics, String name, CacheStats.LatencyHistogram histogram) {
+        statistics.put(name + "Count", histogram.getCount());
+        statistics.put(name + "P50Nanos", histogram.percentile(0.50));
+        statistics.put(name + "P99Nanos", histogram.percentile(0.99));
+    }
+
+    public int getEntryCount() {
+        return entries.size();
+    }
+
+    /**
+     * Weighted size of the cache: bytes of stored bodies plus an estimate for their metadata
+     */
+    public long getSize() {
+        return weightedSize;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Change the size limit, evicting entries right away if the cache is now too large
+     */
+    public void setMaxSize(long bytes) {
+        lock.lock();
+        try {
+            maxSize = Math.max(0, bytes);
+            removeAll(policy.setMaximum(maxSize));
+            blobStore.setCapacity(maxSize);
+        } finally {
+            lock.unlock();
+        }
+        ConfigManager.setMaxCacheSize(bytes);
+    }
+
+    private long getMaxEntrySize() {
+        return Math.min(maxSize / MAX_ENTRY_FRACTION, blobStore.getMaxBlobSize());
+    }
+
+    /**
+     * Bytes an entry is charged against the size limit
+     */
+    private static long weigh(HttpCacheEntry entry) {
+        long weight = METADATA_OVERHEAD + Math.max(0, entry.getBodyLength());
+        for (Map.Entry<String, List<String>> header : entry.getHeaders().entrySet()) {
+            for (String value : header.getValue()) {
+                weight += header.getKey().length() + value.length();
+            }
+        }
+        return weight;
+    }
+
+    /**
+     * Note a lookup for the eviction policy. Lookups only append to a lossy
+     * buffer; whoever next holds the lock replays it into the policy, and a
+     * filling buffer is drained by the reader if the lock happens to be free.
+     */
+    private void recordAccess(String key) {
+        if (!accessBuffer.offer(key) || accessBuffer.pending() >= ACCESS_DRAIN_THRESHOLD) {
+            if (lock.tryLock()) {
+                try {
+                    drainAccesses();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Replay buffered lookups into the policy; caller holds the lock
+     */
+    private void drainAccesses() {
+        accessBuffer.drainTo(policy::recordAccess);
+    }
+
+    /**
+     * Put a completed entry in place, replacing any previous one under the same key
+     *
+     * @param blob the filled body, handing its reference over to the cache; null for an empty body
+     * @param length body length, or -1 for a header-only entry
+     */
+    private void commit(HttpCacheEntry entry, String key, CacheBlobStore.Blob blob, long length) {
+        lock.lock();
+        try {
+            drainAccesses();
+            try {
+                HttpCacheEntry stored = length >= 0 ? entry.withBody(blob, length) : entry;
+                HttpCacheEntry previous = entries.put(key, stored);
+                if (previous != null) {
+                    // Readers of the old body keep their lease on it
+                    discard(key, previous, false);
+                }
+                writeMeta(key, stored);
+                // The policy may turn a rarely used response away, in which case it goes again right here
+                List<String> evicted = policy.add(key, weigh(stored));
+                if (evicted.remove(key)) {
+                    entries.remove(key);
+                    discard(key, stored, true);
+                    stats.recordRejection();
+                } else {
+                    stats.recordStore(length);
+                }
+                removeAll(evicted);
+                logger.debug("Cache: stored {} ({} bytes)", key, length);
+            } catch (Exception e) {
+                logger.warn("Failed to store {} in cache: {}", key, e.getMessage());
+                if (blob != null) {
+                    blob.release();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove entries the policy evicted; caller holds the lock
+     */
+    private void removeAll(List<String> evicted) {
+        for (String key : evicted) {
+            HttpCacheEntry removed = entries.remove(key);
+            if (removed != null) {
+                discard(key, removed, true);
+                stats.recordEviction(weigh(removed));
+            }
+        }
+        weightedSize = policy.weightedSize();
+    }
+
+    /**
+     * Remove one entry and its files; caller holds the lock
+     */
+    private void remove(String key) {
+        HttpCacheEntry removed = entries.remove(key);
+        if (removed != null) {
+            policy.remove(key);
+            discard(key, removed, true);
+            weightedSize = policy.weightedSize();
+        }
+    }
+
+    /**
+     * Release a removed entry's body and delete its meta file
+     *
+     * @param withMeta false when a new version of the entry is about to overwrite the meta file
+     */
+    private void discard(String key, HttpCacheEntry entry, boolean withMeta) {
+        if (withMeta) {
+            deleteQuietly(directory.resolve(fileName(key) + META_SUFFIX));
+        }
+        if (entry.getBlob() != null) {
+            entry.getBlob().release();
+        }
+    }
+
+    private void writeMeta(String key, HttpCacheEntry entry) {
+        Path meta = directory.resolve(fileName(key) + META_SUFFIX);
+        Path temp = tempFile(key);
+        try {
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                GSON.toJson(new StoredEntry(key, entry), writer);
+            }
+            Files.move(temp, meta, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (Exception e) {
+            logger.warn("Failed to write cache metadata for {}: {}", key, e.getMessage());
+            deleteQuietly(temp);
+        }
+    }
+
+    /**
+     * Rebuild the index from the meta files, oldest response first so that the
+     * LRU order roughly survives a restart, then delete files no entry refers to
+     */
+    private void loadIndex() {
+        List<StoredEntry> loaded = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + META_SUFFIX)) {
+            for (Path file : files) {
+                try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                    StoredEntry stored = GSON.fromJson(reader, StoredEntry.class);
+                    if (stored != null && stored.key != null && stored.entry != null
+                        && file.getFileName().toString().equals(fileName(stored.key) + META_SUFFIX)) {
+                        loaded.add(stored);
+                    }
+                } catch (Exception e) {
+                    logger.debug("Skipping unreadable cache entry {}: {}", file, e.getMessage());
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Failed to read cache directory {}", directory, e);
+            return;
+        }
+        loaded.sort((a, b) -> Long.compare(a.entry.getResponseTime(), b.entry.getResponseTime()));
+
+        lock.lock();
+        try {
+            for (StoredEntry stored : loaded) {
+                HttpCacheEntry entry = stored.entry;
+                if (entry.getBodyLength() > 0) {
+                    // Claim the body's extent; a corrupt or overlapping one drops the entry
+                    CacheBlobStore.Blob blob = blobStore.reserve(entry.getBlobSlab(), entry.getBlobOffset(), entry.getBodyLength());
+                    if (blob == null) {
+                        continue;
+                    }
+                    entry.attachBlob(blob);
+                }
+                entries.put(stored.key, entry);
+                removeAll(policy.add(stored.key, weigh(entry)));
+            }
+
+            Set<String> referenced = new HashSet<>();
+            for (String key : entries.keySet()) {
+                referenced.add(fileName(key) + META_SUFFIX);
+            }
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    if (!CacheBlobStore.isSlabFile(name) && !referenced.contains(name)) {
+                        deleteQuietly(file);
+                    }
+                }
+            } catch (Exception e) {
+                logger.warn("Failed to clean cache directory: {}", e.getMessage());
+            }
+            indexLoaded = true;
+            logger.info("Loaded {} cache entries ({} bytes)", entries.size(), weightedSize);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Path tempFile(String key) {
+        return directory.resolve(fileName(key) + "-" + tempCounter.incrementAndGet() + TEMP_SUFFIX);
+    }
+
+    /**
+     * File name stem of a key: its SHA-1 in hex
+     */
+    private static String fileName(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (Exception e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (NoSuchFileException ignored) {
+            // Already gone
+        } catch (Exception e) {
+            logger.debug("Failed to delete cache file {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Receives a response body and commits the entry on close. A body of known
+     * length goes straight into its blob; one of unknown length is spooled to a
+     * temporary file first and copied into a blob once its size is known.
+     */
+    public final class BodyWriter extends OutputStream {
+        private final HttpCacheEntry entry;
+        private final CacheBlobStore.Blob blob;     // known length
+        private final ByteBuffer target;
+        private final Path temp;                    // unknown length
+        private final OutputStream spool;
+        private final long limit;
+        private long written;
+        private boolean done;
+
+        private BodyWriter(HttpCacheEntry entry, CacheBlobStore.Blob blob, long length) {
+            this.entry = entry;
+            this.blob = blob;
+            this.target = blob != null ? blob.writableBuffer() : null;
+            this.temp = null;
+            this.spool = null;
+            this.limit = length;
+        }
+
+        private BodyWriter(HttpCacheEntry entry, Path temp, long limit) throws IOException {
+            this.entry = entry;
+            this.blob = null;
+            this.target = null;
+            this.temp = temp;
+            this.spool = new BufferedOutputStream(Files.newOutputStream(temp));
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (done) {
+                return;
+            }
+            written += len;
+            if (written > limit) {
+                logger.debug("Cache: {} is larger than announced or allowed, not stored", entry.getKey());
+                abort();
+                return;
+            }
+            if (spool != null) {
+                spool.write(b, off, len);
+            } else {
+                target.put(b, off, len);
+            }
+        }
+
+        /**
+         * Finish the body and store the entry, unless it turned out shorter than announced
+         */
+        @Override
+        public void close() throws IOException {
+            if (done) {
+                return;
+            }
+            done = true;
+            if (spool == null) {
+                if (written != limit) {
+                    logger.debug("Cache: {} body incomplete ({} of {} bytes), not stored", entry.getKey(), written, limit);
+                    if (blob != null) {
+                        blob.release();
+                    }
+                    return;
+                }
+                commit(entry, entry.getKey(), blob, written);
+                return;
+            }
+            spool.close();
+            try {
+                CacheBlobStore.Blob spooled = written > 0 ? blobStore.allocate(written) : null;
+                if (written > 0 && spooled == null) {
+                    return;
+                }
+                if (spooled != null) {
+                    ByteBuffer buffer = spooled.writableBuffer();
+                    try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.READ)) {
+                        while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                            // Fill the blob from the spool file
+                        }
+                    } catch (IOException e) {
+                        spooled.release();
+                        throw e;
+                    }
+                }
+                commit(entry, entry.getKey(), spooled, written);
+            } finally {
+                deleteQuietly(temp);
+            }
+        }
+
+        /**
+         * Discard the body; nothing is stored
+         */
+        public void abort() {
+            if (done) {
+                return;
+            }
+            done = true;
+            if (blob != null) {
+                blob.release();
+            }
+            if (spool != null) {
+                try {
+                    spool.close();
+                } catch (Exception ignored) {
+                    // The file is deleted anyway
+                }
+                deleteQuietly(temp);
+            }
+        }
+    }
+
+    /**
+     * Bounded lossy buffer of looked-up keys. Readers claim a slot with a CAS
+     * and drop the access when the buffer is full or the slot is contended;
+     * losing a few accesses only blurs the frequency estimates a little.
+     * A single drainer at a time, holding the cache lock.
+     */
+    private static final class AccessBuffer {
+        static final int CAPACITY = 128;
+
+        private final AtomicReferenceArray<String> slots = new AtomicReferenceArray<>(CAPACITY);
+        private final AtomicLong writeIndex = new AtomicLong();
+        private volatile long readIndex;
+
+        boolean offer(String key) {
+            long tail = writeIndex.get();
+            if (tail - readIndex >= CAPACITY) {
+                return false;
+            }
+            if (writeIndex.compareAndSet(tail, tail + 1)) {
+                slots.lazySet((int) (tail & (CAPACITY - 1)), key);
+            }
+            return true;
+        }
+
+        int pending() {
+            return (int) (writeIndex.get() - readIndex);
+        }
+
+        void drainTo(Consumer<String> consumer) {
+            long head = readIndex;
+            long tail = writeIndex.get();
+            for (; head < tail; head++) {
+                int index = (int) (head & (CAPACITY - 1));
+                String key = slots.get(index);
+                if (key == null) {
+                    // Claimed but not yet written; pick it up next time
+                    break;
+                }
+                slots.lazySet(index, null);
+                consumer.accept(key);
+            }
+            readIndex = head;
+        }
+    }
+
+    /**
+     * On-disk form of an entry: the key travels with it so the index can be rebuilt
+     */
+    private static final class StoredEntry {
+        String key;
+        HttpCacheEntry entry;
+
+        StoredEntry(String key, HttpCacheEntry entry) {
+            this.key = key;
+            this.entry = entry;
         }
     }
 }
@@ -0,0 +1,131 @@
+package com.pinora.browser.core;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms of the HTTP cache. Recording is lock-free
+ * and cheap enough for every request; readers get a moment's sums, not an
+ * atomic snapshot across counters.
+ */
+public class CacheStats {
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder revalidated = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+    private final LongAdder bytesStored = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder evictedBytes = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LatencyHistogram hitLatency = new LatencyHistogram();
+    private final LatencyHistogram networkLatency = new LatencyHistogram();
+    private final LatencyHistogram revalidationLatency = new LatencyHistogram();
+
+    /**
+     * A request answered from disk without contacting the server
+     */
+    public void recordHit(long nanos) {
+        hits.increment();
+        hitLatency.record(nanos);
+    }
+
+    /**
+     * A request that had to go to the network, whether or not a stale entry existed
+     */
+    public void recordMiss() {
+        misses.increment();
+    }
+
+    /**
+     * Time from a miss until the server's response headers arrived
+     */
+    public void recordNetworkLoad(long nanos) {
+        networkLatency.record(nanos);
+    }
+
+    /**
+     * A conditional request for a stale entry; a 304 also counts as a hit
+     */
+    public void recordRevalidation(boolean notModified, long nanos) {
+        revalidationLatency.record(nanos);
+        if (notModified) {
+            revalidated.increment();
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+    }
+
+    public void recordStore(long bytes) {
+        stores.increment();
+        bytesStored.add(Math.max(0, bytes));
+    }
+
+    public void recordEviction(long bytes) {
+        evictions.increment();
+        evictedBytes.add(Math.max(0, bytes));
+    }
+
+    /**
+     * A response the eviction policy declined to keep
+     */
+    public void recordRejection() {
+        rejected.increment();
+    }
+
+    public long getHits() { return hits.sum(); }
+    public long getMisses() { return misses.sum(); }
+    public long getRevalidated() { return revalidated.sum(); }
+    public long getStores() { return stores.sum(); }
+    public long getBytesStored() { return bytesStored.sum(); }
+    public long getEvictions() { return evictions.sum(); }
+    public long getEvictedBytes() { return evictedBytes.sum(); }
+    public long getRejected() { return rejected.sum(); }
+    public LatencyHistogram getHitLatency() { return hitLatency; }
+    public LatencyHistogram getNetworkLatency() { return networkLatency; }
+    public LatencyHistogram getRevalidationLatency() { return revalidationLatency; }
+
+    /**
+     * Share of requests served from the cache, between 0 and 1
+     */
+    public double getHitRatio() {
+        long hitCount = getHits();
+        long total = hitCount + getMisses();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * Histogram of durations in power-of-two nanosecond buckets
+     */
+    public static final class LatencyHistogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+
+        public void record(long nanos) {
+            buckets.incrementAndGet(63 - Long.numberOfLeadingZeros(Math.max(1, nanos)));
+        }
+
+        public long getCount() {
+            long count = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                count += buckets.get(i);
+            }
+            return count;
+        }
+
+        /**
+         * Upper bound in nanoseconds of the bucket holding the given fraction of samples, or 0 if there are none
+         */
+        public long percentile(double fraction) {
+            long total = getCount();
+            long seen = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                seen += buckets.get(i);
+                if (seen > 0 && seen >= Math.ceil(total * fraction)) {
+                    return i >= 62 ? Long.MAX_VALUE : 1L << (i + 1);
+                }
+            }
+            return 0;
+        }
+    }
+}
@@ -3,14 +3,11 @@ package com.pinora.browser.core;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
-import java.net.HttpURLConnection;
-import java.net.URI;
-import java.net.URLConnection;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Handles Cloudflare bypass by managing challenge tokens and cookies
@@ -21,86 +18,49 @@ public class CloudflareBypassHandler {
     private static final Logger logger = LoggerFactory.getLogger(CloudflareBypassHandler.class);
     
     // Real Chrome User-Agent that Cloudflare recognizes
-    private static final String USER_AGENT = "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 " +
-            "(KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36";
+    private static final String USER_AGENT = BrowserHttpClient.USER_AGENT;
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
     
-    private final CookieManager cookieManager;
     private final Map<String, Long> challengeTokenCache = new HashMap<>();
     
-    public CloudflareBypassHandler(CookieManager cookieManager) {
-        this.cookieManager = cookieManager;
-    }
-    
     /**
-     * Enhanced HTTP connection setup for Cloudflare compatibility
+     * Add the navigation headers Cloudflare expects to a request from the shared {@link BrowserHttpClient}.
+     * Cookies, including any clearance cookie, are added by the client's cookie handler.
      */
-    public void configureConnection(HttpURLConnection connection, String url) {
-        try {
-            // Set proper User-Agent
-            connection.setRequestProperty("User-Agent", USER_AGENT);
-            
-            // Set standard browser headers that Cloudflare expects
-            connection.setRequestProperty("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,image/webp,*/*;q=0.8");
-            connection.setRequestProperty("Accept-Language", "en-US,en;q=0.9");
-            connection.setRequestProperty("Accept-Encoding", "gzip, deflate, br");
-            connection.setRequestProperty("DNT", "1");
-            connection.setRequestProperty("Connection", "keep-alive");
-            connection.setRequestProperty("Upgrade-Insecure-Requests", "1");
-            connection.setRequestProperty("Sec-Fetch-Dest", "document");
-            connection.setRequestProperty("Sec-Fetch-Mode", "navigate");
-            connection.setRequestProperty("Sec-Fetch-Site", "none");
-            connection.setRequestProperty("Sec-Fetch-User", "?1");
-            
-            // Add cookies
-            URI uri = new URI(url);
-            String domain = uri.getHost();
-            java.util.List<CookieData> cookies = cookieManager.getCookiesForDomain(domain);
-            
-            if (!cookies.isEmpty()) {
-                StringBuilder cookieHeader = new StringBuilder();
-                for (int i = 0; i < cookies.size(); i++) {
-                    if (i > 0) cookieHeader.append("; ");
-                    CookieData cookie = cookies.get(i);
-                    cookieHeader.append(cookie.getName()).append("=").append(cookie.getValue());
-                }
-                connection.setRequestProperty("Cookie", cookieHeader.toString());
-                logger.debug("Added {} cookies to Cloudflare request", cookies.size());
-            }
-            
-            // Set timeout
-            connection.setConnectTimeout(10000);
-            connection.setReadTimeout(10000);
-            
-        } catch (Exception e) {
-            logger.warn("Error configuring Cloudflare connection: {}", e.getMessage());
-        }
+    public HttpRequest.Builder configureRequest(HttpRequest.Builder request) {
+        // Connection and Accept-Encoding are managed by HttpClient, which does not decompress bodies
+        return request
+            .setHeader("User-Agent", USER_AGENT)
+            .setHeader("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,image/webp,*/*;q=0.8")
+            .setHeader("Accept-Language", "en-US,en;q=0.9")
+            .setHeader("DNT", "1")
+            .setHeader("Upgrade-Insecure-Requests", "1")
+            .setHeader("Sec-Fetch-Dest", "document")
+            .setHeader("Sec-Fetch-Mode", "navigate")
+            .setHeader("Sec-Fetch-Site", "none")
+            .setHeader("Sec-Fetch-User", "?1")
+            .timeout(TIMEOUT);
     }
     
     /**
      * Check if response indicates Cloudflare challenge
      */
-    public boolean isCloudflareChallenge(HttpURLConnection connection) {
-        try {
-            int responseCode = connection.getResponseCode();
-            String server = connection.getHeaderField("Server");
-            String cacheControl = connection.getHeaderField("Cache-Control");
-            
-            // Cloudflare typically returns 403 for challenges or modifies content
-            if (responseCode == 403 || (server != null && server.contains("cloudflare"))) {
-                logger.debug("Detected Cloudflare challenge for {}", connection.getURL());
-                return true;
-            }
-            
-            // Check if response contains Cloudflare challenge JavaScript
-            if (responseCode == 200) {
-                // Read a small portion to check for challenge
-                String contentType = connection.getContentType();
-                if (contentType != null && contentType.contains("text/html")) {
-                    logger.debug("Cloudflare HTML response detected, will be handled by WebEngine JavaScript");
-                }
+    public boolean isCloudflareChallenge(HttpResponse<?> response) {
+        int responseCode = response.statusCode();
+        String server = response.headers().firstValue("Server").orElse(null);
+        
+        // Cloudflare typically returns 403 for challenges or modifies content
+        if (responseCode == 403 || (server != null && server.contains("cloudflare"))) {
+            logger.debug("Detected Cloudflare challenge for {}", response.uri());
+            return true;
+        }
+        
+        // Check if response contains Cloudflare challenge JavaScript
+        if (responseCode == 200) {
+            String contentType = response.headers().firstValue("Content-Type").orElse(null);
+            if (contentType != null && contentType.contains("text/html")) {
+                logger.debug("Cloudflare HTML response detected, will be handled by WebEngine JavaScript");
             }
-        } catch (IOException e) {
-            logger.debug("Error checking Cloudflare challenge: {}", e.getMessage());
         }
         return false;
     }
@@ -108,18 +68,12 @@ public class CloudflareBypassHandler {
     /**
      * Extract and cache Cloudflare tokens from response
      */
-    public void extractCloudflareTokens(HttpURLConnection connection, String url) {
+    public void extractCloudflareTokens(HttpResponse<?> response) {
         try {
             // Check for Cloudflare challenge token in Set-Cookie headers
-            for (int i = 0; ; i++) {
-                String headerName = connection.getHeaderFieldKey(i);
-                if (headerName == null) break;
-                
-                if ("Set-Cookie".equalsIgnoreCase(headerName)) {
-                    String cookie = connection.getHeaderField(i);
-                    if (cookie != null && (cookie.contains("cf_clearance") || cookie.contains("__cfruid"))) {
-                        logger.info("Detected Cloudflare security cookie");
-                    }
+            for (String cookie : response.headers().allValues("Set-Cookie")) {
+                if (cookie.contains("cf_clearance") || cookie.contains("__cfruid")) {
+                    logger.info("Detected Cloudflare security cookie");
                 }
             }
         } catch (Exception e) {
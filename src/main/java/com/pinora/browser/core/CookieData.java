@@ -20,7 +20,7 @@ public class CookieData implements Serializable {
     private long expiryTime; // milliseconds since epoch, 0 for session cookies
     private String sameSite; // "Strict", "Lax", "None", or null
     private long createdTime;
-    private long lastAccessedTime;
+    private volatile long lastAccessedTime; // touched by lock-free header lookups
     
     public CookieData() {
         this.createdTime = System.currentTimeMillis();
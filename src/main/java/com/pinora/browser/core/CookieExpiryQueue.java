@@ -0,0 +1,117 @@
+package com.pinora.browser.core;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Min-heap of cookie expiry times.
+ *
+ * Entries are never removed or updated in place: a cookie whose expiry changes
+ * is simply pushed again, and stale entries are recognised when they reach the
+ * top because the cookie's current expiry no longer matches. Callers decide
+ * whether a popped cookie is still in the jar. Not thread-safe.
+ */
+public class CookieExpiryQueue {
+
+    private long[] times = new long[16];
+    private CookieData[] cookies = new CookieData[16];
+    private int size;
+
+    /**
+     * Track a cookie until its current expiry time; session cookies are ignored
+     */
+    public void add(CookieData cookie) {
+        if (cookie.isSessionOnly() || cookie.getExpiryTime() <= 0) {
+            return;
+        }
+        if (size == times.length) {
+            times = Arrays.copyOf(times, size * 2);
+            cookies = Arrays.copyOf(cookies, size * 2);
+        }
+        int at = size++;
+        long time = cookie.getExpiryTime();
+        while (at > 0) {
+            int parent = (at - 1) >>> 1;
+            if (times[parent] <= time) {
+                break;
+            }
+            times[at] = times[parent];
+            cookies[at] = cookies[parent];
+            at = parent;
+        }
+        times[at] = time;
+        cookies[at] = cookie;
+    }
+
+    /**
+     * Earliest tracked expiry time, or {@link Long#MAX_VALUE} when nothing is tracked.
+     * The entry may be stale, so this is a lower bound on the next real expiry.
+     */
+    public long peekTime() {
+        return size > 0 ? times[0] : Long.MAX_VALUE;
+    }
+
+    /**
+     * Pop every entry due at {@code now} and pass the cookies whose expiry still matches to the consumer
+     */
+    public void drainExpired(long now, Consumer<CookieData> expired) {
+        while (size > 0 && times[0] < now) {
+            long time = times[0];
+            CookieData cookie = cookies[0];
+            removeTop();
+            if (cookie.getExpiryTime() == time && !cookie.isSessionOnly()) {
+                expired.accept(cookie);
+            }
+        }
+    }
+
+    /**
+     * Number of entries, including stale ones
+     */
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(cookies, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * Rebuild from the cookies currently in the jar, dropping stale entries
+     */
+    public void rebuild(Iterable<CookieData> live) {
+        clear();
+        for (CookieData cookie : live) {
+            add(cookie);
+        }
+    }
+
+    private void removeTop() {
+        size--;
+        long time = times[size];
+        CookieData cookie = cookies[size];
+        cookies[size] = null;
+        if (size == 0) {
+            return;
+        }
+        int at = 0;
+        while (true) {
+            int child = 2 * at + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && times[child + 1] < times[child]) {
+                child++;
+            }
+            if (times[child] >= time) {
+                break;
+            }
+            times[at] = times[child];
+            cookies[at] = cookies[child];
+            at = child;
+        }
+        times[at] = time;
+        cookies[at] = cookie;
+    }
+}
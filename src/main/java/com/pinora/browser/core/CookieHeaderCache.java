@@ -0,0 +1,151 @@
+package com.pinora.browser.core;
+
+import com.pinora.browser.util.URLUtil;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Memoized {@code Cookie} request headers of one {@link CookieSiteJar.Snapshot},
+ * keyed by host, path prefix, scheme and whether HttpOnly cookies are included.
+ *
+ * A cache belongs to a single immutable snapshot, so the snapshot itself is the
+ * version stamp: any change to the site publishes a new snapshot and with it an
+ * empty cache, while headers of other sites stay valid. Headers are cached per
+ * request directory, or per full path where a cookie path ends inside the
+ * directory and two requests there could get different cookies. Thread-safe.
+ */
+public class CookieHeaderCache {
+
+    private static final int MAX_ENTRIES = 512;
+    private static final long ACCESS_TIME_GRANULARITY_MS = 1000;
+    private static final CookieData[] NO_COOKIES = new CookieData[0];
+    private static final CachedHeader PER_PATH = new CachedHeader(null, NO_COOKIES);
+
+    private final CookieJarIndex index;
+    private final Stats stats;
+    private final Map<String, CachedHeader> entries = new ConcurrentHashMap<>();
+
+    /**
+     * @param index index of the snapshot; must not change afterwards
+     */
+    public CookieHeaderCache(CookieJarIndex index, Stats stats) {
+        this.index = index;
+        this.stats = stats;
+    }
+
+    /**
+     * The Cookie header for a request, or null when no cookie applies.
+     * Secure cookies are only included for secure requests, and HttpOnly
+     * cookies only if {@code includeHttpOnly}; every included cookie has its
+     * last access time brought up to {@code now}.
+     */
+    public String getHeader(String host, String path, boolean secure, boolean includeHttpOnly, long now) {
+        host = URLUtil.normalizeHost(host);
+        if (host == null) {
+            return null;
+        }
+        if (path == null || path.isEmpty()) {
+            path = "/";
+        }
+        String directory = directoryOf(path);
+        String flags = (secure ? "s" : "i") + (includeHttpOnly ? "h " : "- ");
+        String directoryKey = flags + host + ' ' + directory;
+        CachedHeader entry = entries.get(directoryKey);
+        if (entry == null) {
+            if (index.hasPathsBelow(host, directory)) {
+                store(directoryKey, PER_PATH);
+                entry = PER_PATH;
+            } else {
+                entry = store(directoryKey, build(host, path, secure, includeHttpOnly));
+                stats.misses.increment();
+            }
+        } else if (entry != PER_PATH) {
+            stats.hits.increment();
+        }
+        if (entry == PER_PATH) {
+            String pathKey = "p" + flags + host + ' ' + path;
+            entry = entries.get(pathKey);
+            if (entry == null) {
+                entry = store(pathKey, build(host, path, secure, includeHttpOnly));
+                stats.misses.increment();
+            } else {
+                stats.hits.increment();
+            }
+        }
+
+        // To the second is enough for LRU eviction, and spares hot lookups a shared write per cookie
+        for (CookieData cookie : entry.cookies) {
+            if (now - cookie.getLastAccessedTime() >= ACCESS_TIME_GRANULARITY_MS) {
+                cookie.setLastAccessedTime(now);
+            }
+        }
+        return entry.header;
+    }
+
+    private CachedHeader store(String key, CachedHeader entry) {
+        // Crude bound: a snapshot rarely lives long enough to see this many distinct paths
+        if (entries.size() >= MAX_ENTRIES) {
+            entries.clear();
+        }
+        entries.put(key, entry);
+        return entry;
+    }
+
+    private CachedHeader build(String host, String path, boolean secure, boolean includeHttpOnly) {
+        List<CookieData> matching = index.getCookiesFor(host, path);
+        StringBuilder header = null;
+        int count = 0;
+        for (int i = 0; i < matching.size(); i++) {
+            CookieData cookie = matching.get(i);
+            if ((cookie.isSecure() && !secure) || (cookie.isHttpOnly() && !includeHttpOnly)) {
+                continue;
+            }
+            if (header == null) {
+                header = new StringBuilder(64);
+            } else {
+                header.append("; ");
+            }
+            header.append(cookie.getName()).append('=').append(cookie.getValue());
+            matching.set(count++, cookie);
+        }
+        CookieData[] included = count > 0 ? matching.subList(0, count).toArray(NO_COOKIES) : NO_COOKIES;
+        return new CachedHeader(header != null ? header.toString() : null, included);
+    }
+
+    /**
+     * The request path up to and including its last slash
+     */
+    private static String directoryOf(String path) {
+        String directory = path.substring(0, path.lastIndexOf('/') + 1);
+        return directory.isEmpty() ? path : directory;
+    }
+
+    /**
+     * Hit and miss counters shared by the caches of every snapshot
+     */
+    public static final class Stats {
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+
+        public long getHits() {
+            return hits.sum();
+        }
+
+        public long getMisses() {
+            return misses.sum();
+        }
+    }
+
+    private static final class CachedHeader {
+        final String header;
+        final CookieData[] cookies;
+
+        CachedHeader(String header, CookieData[] cookies) {
+            this.header = header;
+            this.cookies = cookies;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.pinora.browser.core;
+
+import com.pinora.browser.util.DomainTrie;
+import com.pinora.browser.util.URLUtil;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of cookies by domain and path.
+ *
+ * Cookie domains are kept in a reversed-label {@link DomainTrie}, so the cookies
+ * that apply to a host are found by walking the host's labels from the top-level
+ * domain down, never touching cookies of unrelated sites. Each domain node
+ * buckets its cookies by path, so path matching runs once per distinct path
+ * rather than once per cookie. A lookup costs O(labels in host + matches).
+ *
+ * The index does not decide cookie identity; callers add each cookie once.
+ * Not thread-safe.
+ */
+public class CookieJarIndex {
+
+    private final DomainTrie<Map<String, List<CookieData>>> domains = new DomainTrie<>();
+    private int size;
+
+    public void add(CookieData cookie) {
+        String key = domainKey(cookie.getDomain());
+        if (key == null) {
+            return;
+        }
+        domains.computeIfAbsent(key, k -> new LinkedHashMap<>(4))
+            .computeIfAbsent(normalizePath(cookie.getPath()), p -> new ArrayList<>(4))
+            .add(cookie);
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Cookies that apply to a request for {@code path} on {@code host}.
+     * A null path matches every cookie path.
+     */
+    public List<CookieData> getCookiesFor(String host, String path) {
+        List<CookieData> result = new ArrayList<>();
+        host = URLUtil.normalizeHost(host);
+        if (host == null) {
+            return result;
+        }
+        domains.forEachSuffix(host, (domain, paths) -> {
+            for (Map.Entry<String, List<CookieData>> bucket : paths.entrySet()) {
+                if (path == null || pathMatches(path, bucket.getKey())) {
+                    result.addAll(bucket.getValue());
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Whether some cookie that applies to the host has a path extending {@code prefix},
+     * i.e. whether requests for different paths under {@code prefix} can get different cookies
+     */
+    public boolean hasPathsBelow(String host, String prefix) {
+        host = URLUtil.normalizeHost(host);
+        if (host == null) {
+            return false;
+        }
+        boolean[] found = new boolean[1];
+        domains.forEachSuffix(host, (domain, paths) -> {
+            for (String path : paths.keySet()) {
+                if (path.length() > prefix.length() && path.startsWith(prefix)) {
+                    found[0] = true;
+                }
+            }
+        });
+        return found[0];
+    }
+
+    /**
+     * Whether a cookie path applies to a request path (RFC 6265 section 5.1.4)
+     */
+    public static boolean pathMatches(String requestPath, String cookiePath) {
+        if (requestPath == null || requestPath.isEmpty()) {
+            requestPath = "/";
+        }
+        cookiePath = normalizePath(cookiePath);
+
+        if (!requestPath.startsWith(cookiePath)) {
+            return false;
+        }
+        // Next character after the cookie path must be "/" or the end of the request path
+        return requestPath.length() == cookiePath.length()
+            || cookiePath.endsWith("/")
+            || requestPath.charAt(cookiePath.length()) == '/';
+    }
+
+    /**
+     * Trie key for a cookie domain: lower-cased, without the leading dot of a Domain attribute
+     */
+    static String domainKey(String cookieDomain) {
+        return URLUtil.normalizeHost(cookieDomain);
+    }
+
+    private static String normalizePath(String path) {
+        return path == null || path.isEmpty() ? "/" : path;
+    }
+}
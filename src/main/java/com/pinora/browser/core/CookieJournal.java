@@ -0,0 +1,316 @@
+package com.pinora.browser.core;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Write-behind persistence for durable cookies.
+ *
+ * The jar lives in a snapshot file (a JSON array of cookies) plus an
+ * append-only journal of {@code put} and {@code delete} records, one JSON
+ * object per line. Mutations are only recorded in memory on
+ * the calling thread; repeated changes to the same cookie within
+ * {@link #FLUSH_DELAY_MS} collapse into one record, so a page that sets dozens
+ * of cookies costs a single small append on the writer thread. Once the
+ * journal passes {@link #COMPACTION_THRESHOLD_BYTES} it is folded into a new
+ * snapshot and truncated. Replaying the journal over the snapshot is
+ * idempotent, so a crash at any point loses at most the last unflushed burst.
+ *
+ * Records are opaque cookie objects identified by key; deciding which cookies
+ * are durable is up to the caller.
+ */
+public class CookieJournal {
+
+    private static final Logger logger = LoggerFactory.getLogger(CookieJournal.class);
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+
+    private static final long FLUSH_DELAY_MS = 500;
+    private static final long COMPACTION_THRESHOLD_BYTES = 256 * 1024; // 256 KB
+    private static final long CLOSE_TIMEOUT_SECONDS = 10;
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path snapshotFile;
+    private final Path journalFile;
+    private final Function<JsonObject, String> keyOf;
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "CookieJournal-Writer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Coalesced mutations waiting for the writer; a null value is a delete. Guarded by this.
+    private Map<String, JsonObject> pending = new LinkedHashMap<>();
+    private boolean flushScheduled;
+    private boolean closed;
+
+    // Owned by the writer thread (and load() before it has work)
+    private final Map<String, JsonObject> durable = new LinkedHashMap<>();
+    private Writer journalOut;
+    private long journalBytes;
+
+    public CookieJournal(String snapshotFile, String journalFile, Function<JsonObject, String> keyOf) {
+        this.snapshotFile = Paths.get(snapshotFile);
+        this.journalFile = Paths.get(journalFile);
+        this.keyOf = keyOf;
+    }
+
+    /**
+     * Read the snapshot and replay the journal over it. Returns the stored cookie records.
+     */
+    public List<JsonObject> load() {
+        durable.clear();
+        try {
+            if (Files.exists(snapshotFile)) {
+                try (Reader reader = Files.newBufferedReader(snapshotFile, StandardCharsets.UTF_8)) {
+                    JsonArray array = GSON.fromJson(reader, JsonArray.class);
+                    if (array != null) {
+                        for (JsonElement element : array) {
+                            JsonObject cookie = element.getAsJsonObject();
+                            durable.put(keyOf.apply(cookie), cookie);
+                        }
+                    }
+                }
+            }
+            if (Files.exists(journalFile)) {
+                int replayed = replayJournal();
+                journalBytes = Files.size(journalFile);
+                if (replayed > 0) {
+                    // Start from a clean snapshot; this also drops a torn trailing record
+                    writer.execute(this::compact);
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Failed to load cookies from {}", snapshotFile, e);
+        }
+        return new ArrayList<>(durable.values());
+    }
+
+    /**
+     * Record that a durable cookie was added or changed
+     */
+    public synchronized void put(String key, JsonObject cookie) {
+        record(key, cookie);
+    }
+
+    /**
+     * Record that a cookie was deleted
+     */
+    public synchronized void remove(String key) {
+        record(key, null);
+    }
+
+    /**
+     * Write every change recorded so far and wait for it to reach the journal
+     */
+    public void flush() {
+        try {
+            writer.submit(this::drain).get(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.warn("Failed to flush cookie journal: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Write outstanding changes, fold the journal into the snapshot and stop the writer.
+     * Changes recorded afterwards are dropped.
+     */
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        try {
+            writer.execute(() -> {
+                drain();
+                if (journalBytes > 0) {
+                    compact();
+                }
+                closeJournal();
+            });
+            writer.shutdown();
+            if (!writer.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                logger.warn("Cookie journal did not finish before shutdown");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.error("Failed to close cookie journal", e);
+        }
+    }
+
+    /**
+     * Size of the journal on disk in bytes
+     */
+    public long getJournalSize() {
+        return journalBytes;
+    }
+
+    private void record(String key, JsonObject cookie) {
+        if (closed) {
+            logger.warn("Cookie journal is closed; dropping write");
+            return;
+        }
+        // Re-insert so the coalesced record keeps the order of the latest change
+        pending.remove(key);
+        pending.put(key, cookie);
+        scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        if (!flushScheduled) {
+            flushScheduled = true;
+            writer.schedule(this::drain, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Append the coalesced changes to the journal, compacting when it has grown too large
+     */
+    private void drain() {
+        Map<String, JsonObject> batch;
+        synchronized (this) {
+            batch = pending;
+            pending = new LinkedHashMap<>();
+            flushScheduled = false;
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            if (journalOut == null) {
+                Files.createDirectories(journalFile.toAbsolutePath().getParent());
+                journalOut = Files.newBufferedWriter(journalFile, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            StringBuilder lines = new StringBuilder();
+            for (Map.Entry<String, JsonObject> change : batch.entrySet()) {
+                JsonObject record = new JsonObject();
+                if (change.getValue() != null) {
+                    durable.put(change.getKey(), change.getValue());
+                    record.addProperty("op", "put");
+                    record.addProperty("key", change.getKey());
+                    record.add("cookie", change.getValue());
+                } else {
+                    durable.remove(change.getKey());
+                    record.addProperty("op", "delete");
+                    record.addProperty("key", change.getKey());
+                }
+                lines.append(GSON.toJson(record)).append('\n');
+            }
+            journalOut.write(lines.toString());
+            journalOut.flush();
+            journalBytes += lines.toString().getBytes(StandardCharsets.UTF_8).length;
+        } catch (Exception e) {
+            logger.error("Failed to append to cookie journal", e);
+            closeJournal();
+        }
+
+        if (journalBytes >= COMPACTION_THRESHOLD_BYTES) {
+            compact();
+        }
+    }
+
+    /**
+     * Write the durable cookies to a new snapshot, then truncate the journal it covers
+     */
+    private void compact() {
+        Path temp = snapshotFile.resolveSibling(snapshotFile.getFileName() + TEMP_SUFFIX);
+        try {
+            long now = System.currentTimeMillis();
+            durable.values().removeIf(cookie -> isExpired(cookie, now));
+
+            JsonArray array = new JsonArray();
+            for (JsonObject cookie : durable.values()) {
+                array.add(cookie);
+            }
+            Files.createDirectories(snapshotFile.toAbsolutePath().getParent());
+            try (BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                GSON.toJson(array, out);
+            }
+            Files.move(temp, snapshotFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+            closeJournal();
+            Files.deleteIfExists(journalFile);
+            journalBytes = 0;
+            logger.info("Cookie journal compacted into {} ({} cookies)", snapshotFile.getFileName(), durable.size());
+        } catch (Exception e) {
+            logger.error("Failed to compact cookie journal", e);
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private int replayJournal() throws IOException {
+        int replayed = 0;
+        try (BufferedReader reader = Files.newBufferedReader(journalFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    JsonObject record = JsonParser.parseString(line).getAsJsonObject();
+                    switch (record.get("op").getAsString()) {
+                        case "put" -> durable.put(record.get("key").getAsString(), record.getAsJsonObject("cookie"));
+                        case "delete" -> durable.remove(record.get("key").getAsString());
+                        default -> logger.debug("Ignoring unknown cookie journal record: {}", line);
+                    }
+                    replayed++;
+                } catch (Exception e) {
+                    logger.warn("Skipping corrupt cookie journal record: {}", e.getMessage());
+                }
+            }
+        }
+        return replayed;
+    }
+
+    private void closeJournal() {
+        if (journalOut == null) {
+            return;
+        }
+        try {
+            journalOut.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close cookie journal: {}", e.getMessage());
+        }
+        journalOut = null;
+    }
+
+    private static boolean isExpired(JsonObject cookie, long now) {
+        JsonElement expiry = cookie.get("expiryTime");
+        return expiry != null && expiry.getAsLong() > 0 && expiry.getAsLong() < now;
+    }
+}
@@ -4,40 +4,108 @@ import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.pinora.browser.util.ConfigManager;
+import com.pinora.browser.util.MultiPatternMatcher;
+import com.pinora.browser.util.URLUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
- * Manages cookies for the browser with support for persistent and session cookies
+ * Manages cookies for the browser with support for persistent and session cookies.
+ *
+ * Thread-safe: network threads read and store cookies while the UI edits the jar.
+ * The jar is split into one {@link CookieSiteJar} per registrable domain; writes
+ * lock only the site they change, and reads use the site's published snapshot
+ * without taking any lock. Cookies that apply to a host all belong to the host's
+ * site, except those set on a public suffix above it, which are looked up too.
  */
 public class CookieManager {
     
     private static final Logger logger = LoggerFactory.getLogger(CookieManager.class);
     private static final String COOKIES_FILE = com.pinora.browser.util.ConfigManager.getConfigDirectory() + "/cookies.json";
+    private static final String COOKIES_JOURNAL_FILE = com.pinora.browser.util.ConfigManager.getConfigDirectory() + "/cookies.journal";
     private static final Gson GSON = new Gson();
     
-    private Map<String, CookieData> cookies; // Key: "domain:path:name"
-    private Map<String, Boolean> cookiePolicy; // domain -> allow/block
-    private boolean blockThirdPartyCookies = true;
-    private boolean blockTrackingCookies = true;
+    // Common tracking cookie name patterns, used when no tracker list has been configured
+    private static final List<String> DEFAULT_TRACKING_PATTERNS = List.of(
+        "_ga", "_gid", "track", "analytics", "_utm", "doubleclick",
+        "fbp", "_fbp", "fbsb", "fbcsb", "_ym_", "yandex_gid"
+    );
+    
+    private final Map<String, CookieSiteJar> sites = new ConcurrentHashMap<>(); // registrable domain -> its cookies
+    private final AtomicInteger cookieCount = new AtomicInteger();
+    private final AtomicInteger publicSuffixSites = new AtomicInteger(); // jars holding cookies set on a public suffix
+    private final CookieHeaderCache.Stats headerStats = new CookieHeaderCache.Stats();
+    private final CookieJournal journal = new CookieJournal(COOKIES_FILE, COOKIES_JOURNAL_FILE, CookieManager::keyOf);
+    private final CookieExpiryQueue expiryQueue = new CookieExpiryQueue(); // also guards closed
+    private final Thread expirySweeper;
+    private boolean closed;
+    
+    // Quotas; cookies beyond them are evicted least recently accessed first
+    private static final int MAX_EVICTED_SITES_TRACKED = 50;
+    private volatile int maxCookies = ConfigManager.getMaxCookies();
+    private volatile int maxCookiesPerSite = ConfigManager.getMaxCookiesPerSite();
+    private final ReentrantLock globalEviction = new ReentrantLock();
+    private final LongAdder evictedBySiteQuota = new LongAdder();
+    private final LongAdder evictedByGlobalQuota = new LongAdder();
+    private final Map<String, Long> evictedBySite = new LinkedHashMap<>(16, 0.75f, true) { // guarded by itself
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > MAX_EVICTED_SITES_TRACKED;
+        }
+    };
+    private final Map<String, Boolean> cookiePolicy = new ConcurrentHashMap<>(); // domain -> allow/block
+    private volatile boolean blockThirdPartyCookies = true;
+    private volatile boolean blockTrackingCookies = true;
+    private volatile MultiPatternMatcher trackingMatcher = new MultiPatternMatcher(DEFAULT_TRACKING_PATTERNS);
     
     public CookieManager() {
-        this.cookies = new LinkedHashMap<>();
-        this.cookiePolicy = new HashMap<>();
+        MultiPatternMatcher matcher = loadTrackingPatterns();
+        if (matcher != null) {
+            trackingMatcher = matcher;
+        }
         loadCookies();
         loadCookiePolicy();
+        
+        this.expirySweeper = new Thread(this::runExpirySweeper, "CookieManager-ExpirySweeper");
+        this.expirySweeper.setDaemon(true);
+        this.expirySweeper.start();
     }
     
     /**
      * Add or update a cookie
      */
     public void setCookie(CookieData cookie) {
+        setCookie(cookie, true);
+    }
+    
+    /**
+     * Add, update or delete a cookie written by a page script through {@code document.cookie}.
+     * Scripts can neither set an HttpOnly cookie nor replace or delete one.
+     */
+    public void setScriptCookie(CookieData cookie) {
+        if (cookie == null) return;
+        if (cookie.isHttpOnly()) {
+            logger.debug("HttpOnly cookie from script ignored: {}", cookie.getName());
+            return;
+        }
+        setCookie(cookie, false);
+    }
+    
+    private void setCookie(CookieData cookie, boolean replaceHttpOnly) {
         if (cookie == null) return;
         
         // Check if domain is allowed
@@ -52,123 +120,178 @@ public class CookieManager {
             return;
         }
         
-        String key = generateKey(cookie);
-        CookieData existing = cookies.get(key);
-        
-        if (existing != null) {
-            existing.setValue(cookie.getValue());
-            existing.setLastAccessedTime(System.currentTimeMillis());
-            existing.setExpiryTime(cookie.getExpiryTime());
-        } else {
-            cookies.put(key, cookie);
+        // Servers delete a cookie by setting it again with an expiry in the past
+        if (cookie.isExpired()) {
+            removeCookie(cookie.getDomain(), cookie.getPath(), cookie.getName(), replaceHttpOnly);
+            return;
         }
         
-        // Auto-save
-        saveCookies();
+        String key = generateKey(cookie);
+        updateSite(siteOf(cookie), true, jar -> {
+            // A stored cookie is replaced rather than changed in place, so readers of older snapshots stay consistent
+            CookieData existing = jar.snapshot().get(key);
+            if (existing != null && existing.isHttpOnly() && !replaceHttpOnly) {
+                logger.debug("Script may not replace HttpOnly cookie: {}", cookie.getName());
+                return null;
+            }
+            if (existing != null) {
+                cookie.setCreatedTime(existing.getCreatedTime());
+            }
+            cookie.setLastAccessedTime(System.currentTimeMillis());
+            jar.put(key, cookie);
+            if (existing != null && !existing.isSessionOnly() && cookie.isSessionOnly()) {
+                journal.remove(key);
+            }
+            persist(key, cookie);
+            scheduleExpiry(cookie);
+            if (jar.size() > maxCookiesPerSite) {
+                evictLeastRecentlyAccessed(jar, jar.size() - maxCookiesPerSite, cookie);
+            }
+            return null;
+        });
+        if (cookieCount.get() > maxCookies) {
+            evictGlobal(cookie);
+        }
     }
     
     /**
      * Get a cookie by domain, path, and name
      */
     public CookieData getCookie(String domain, String path, String name) {
-        String key = domain + ":" + path + ":" + name;
-        CookieData cookie = cookies.get(key);
-        
-        // Remove if expired
-        if (cookie != null && cookie.isExpired()) {
-            deleteCookie(domain, path, name);
-            return null;
-        }
-        
-        return cookie;
+        // Expired cookies have already been removed by the expiry sweeper
+        CookieSiteJar jar = sites.get(siteOfDomain(domain));
+        return jar != null ? jar.snapshot().get(domain + ":" + path + ":" + name) : null;
     }
     
     /**
-     * Get all cookies for a domain
+     * Get all cookies for a domain, including those set on its parent domains
      */
     public List<CookieData> getCookiesForDomain(String domain) {
-        return cookies.values().stream()
-            .filter(c -> c.getDomain().equals(domain) || domain.endsWith("." + c.getDomain()))
-            .filter(c -> !c.isExpired())
-            .collect(Collectors.toList());
+        return getCookiesFor(domain, null);
+    }
+    
+    /**
+     * Get the cookies that apply to a request for a path on a host; a null path matches every cookie path
+     */
+    public List<CookieData> getCookiesFor(String host, String path) {
+        List<CookieData> result = new ArrayList<>();
+        for (CookieSiteJar jar : jarsFor(host)) {
+            result.addAll(jar.snapshot().index().getCookiesFor(host, path));
+        }
+        return result;
+    }
+    
+    /**
+     * Build the Cookie request header for a request, or null when no cookie applies.
+     * Secure cookies are only included for secure requests, and HttpOnly
+     * cookies only for HTTP requests, not for reads of {@code document.cookie}.
+     * Repeated requests to the same origin reuse the header built for the
+     * first one until a cookie of that site changes. Never blocks on writers.
+     */
+    public String getCookieHeader(String host, String path, boolean secure, boolean includeHttpOnly) {
+        long now = System.currentTimeMillis();
+        String site = siteOfDomain(host);
+        CookieSiteJar jar = sites.get(site);
+        String header = jar != null ? jar.snapshot().headers().getHeader(host, path, secure, includeHttpOnly, now) : null;
+        if (publicSuffixSites.get() == 0) {
+            return header;
+        }
+        // Rare: cookies set on a public suffix above the host's site (e.g. "localhost" for "app.localhost")
+        for (int dot = site.indexOf('.'); dot >= 0; dot = site.indexOf('.', dot + 1)) {
+            CookieSiteJar suffix = sites.get(site.substring(dot + 1));
+            String part = suffix != null ? suffix.snapshot().headers().getHeader(host, path, secure, includeHttpOnly, now) : null;
+            if (part != null) {
+                header = header != null ? header + "; " + part : part;
+            }
+        }
+        return header;
     }
     
     /**
      * Get all valid cookies (non-expired)
      */
     public List<CookieData> getAllValidCookies() {
-        return cookies.values().stream()
-            .filter(c -> !c.isExpired())
-            .collect(Collectors.toList());
+        // The jar only holds unexpired cookies; the expiry sweeper drops the rest as they expire
+        return getAllCookies();
     }
     
     /**
      * Get all cookies
      */
     public List<CookieData> getAllCookies() {
-        return new ArrayList<>(cookies.values());
+        return collectAllCookies();
+    }
+    
+    private List<CookieData> collectAllCookies() {
+        List<CookieData> all = new ArrayList<>(cookieCount.get());
+        for (CookieSiteJar jar : sites.values()) {
+            all.addAll(jar.snapshot().cookies());
+        }
+        return all;
     }
     
     /**
      * Delete a specific cookie
      */
     public void deleteCookie(String domain, String path, String name) {
+        removeCookie(domain, path, name, true);
+    }
+    
+    private void removeCookie(String domain, String path, String name, boolean removeHttpOnly) {
         String key = domain + ":" + path + ":" + name;
-        cookies.remove(key);
-        saveCookies();
+        updateSite(siteOfDomain(domain), false, jar -> {
+            CookieData existing = jar.snapshot().get(key);
+            if (existing != null && existing.isHttpOnly() && !removeHttpOnly) {
+                return null;
+            }
+            CookieData removed = jar.remove(key);
+            if (removed != null && !removed.isSessionOnly()) {
+                journal.remove(key);
+            }
+            return null;
+        });
     }
     
     /**
      * Delete all cookies for a domain
      */
     public void deleteAllCookiesForDomain(String domain) {
-        cookies.entrySet().removeIf(entry -> entry.getValue().getDomain().equals(domain));
-        saveCookies();
+        updateSite(siteOfDomain(domain), false, jar -> removeCookiesIf(jar, cookie -> cookie.getDomain().equals(domain)));
     }
     
     /**
      * Delete all cookies
      */
     public void deleteAllCookies() {
-        cookies.clear();
-        saveCookies();
+        for (String site : new ArrayList<>(sites.keySet())) {
+            updateSite(site, false, jar -> removeCookiesIf(jar, cookie -> true));
+        }
     }
     
     /**
      * Delete all session cookies
      */
     public void deleteSessionCookies() {
-        cookies.entrySet().removeIf(entry -> entry.getValue().isSessionOnly());
-        saveCookies();
+        for (String site : new ArrayList<>(sites.keySet())) {
+            updateSite(site, false, jar -> removeCookiesIf(jar, CookieData::isSessionOnly));
+        }
     }
     
     /**
      * Delete expired cookies
      */
     public void deleteExpiredCookies() {
-        boolean changed = false;
-        List<String> keysToRemove = new ArrayList<>();
-        
-        for (Map.Entry<String, CookieData> entry : cookies.entrySet()) {
-            if (entry.getValue().isExpired()) {
-                keysToRemove.add(entry.getKey());
-                changed = true;
-            }
-        }
-        
-        keysToRemove.forEach(cookies::remove);
-        
-        if (changed) {
-            saveCookies();
-        }
+        removeExpired(System.currentTimeMillis());
     }
     
     /**
      * Set cookie policy for a domain
      */
     public void setDomainPolicy(String domain, boolean allowed) {
-        cookiePolicy.put(domain, allowed);
-        saveCookiePolicy();
+        synchronized (cookiePolicy) {
+            cookiePolicy.put(domain, allowed);
+            saveCookiePolicy();
+        }
     }
     
     /**
@@ -208,12 +331,54 @@ public class CookieManager {
         return blockTrackingCookies;
     }
     
+    /**
+     * Recompile the tracking-cookie matcher from the tracker list file.
+     * The file holds one name pattern per line; blank lines and lines starting with '#' are ignored.
+     * A default list is written when the file does not exist yet.
+     */
+    public void reloadTrackingPatterns() {
+        MultiPatternMatcher matcher = loadTrackingPatterns();
+        if (matcher != null) {
+            trackingMatcher = matcher;
+        }
+    }
+    
+    /**
+     * Compile the tracker list file, or return null if it cannot be read
+     */
+    private static MultiPatternMatcher loadTrackingPatterns() {
+        Path file = Paths.get(ConfigManager.getTrackerPatternsFile());
+        try {
+            if (!Files.exists(file)) {
+                List<String> lines = new ArrayList<>();
+                lines.add("# Tracking cookie name patterns, one per line (case-insensitive substring match)");
+                lines.addAll(DEFAULT_TRACKING_PATTERNS);
+                Files.createDirectories(file.toAbsolutePath().getParent());
+                Files.write(file, lines, StandardCharsets.UTF_8);
+            }
+            
+            List<String> patterns = new ArrayList<>();
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                String pattern = line.trim();
+                if (!pattern.isEmpty() && !pattern.startsWith("#")) {
+                    patterns.add(pattern);
+                }
+            }
+            MultiPatternMatcher matcher = new MultiPatternMatcher(patterns);
+            logger.info("Loaded {} tracking cookie patterns ({} states)", matcher.getPatternCount(), matcher.getStateCount());
+            return matcher;
+        } catch (Exception e) {
+            logger.error("Failed to load tracking cookie patterns from {}", file, e);
+            return null;
+        }
+    }
+    
     /**
      * Export cookies to JSON format
      */
     public String exportCookiesToJSON() {
         JsonArray array = new JsonArray();
-        for (CookieData cookie : cookies.values()) {
+        for (CookieData cookie : getAllCookies()) {
             JsonObject obj = new JsonObject();
             obj.addProperty("name", cookie.getName());
             obj.addProperty("value", cookie.getValue());
@@ -262,7 +427,7 @@ public class CookieManager {
      * Get list of unique domains
      */
     public List<String> getAllDomains() {
-        return cookies.values().stream()
+        return getAllCookies().stream()
             .map(CookieData::getDomain)
             .distinct()
             .sorted()
@@ -273,111 +438,383 @@ public class CookieManager {
      * Get cookie statistics
      */
     public Map<String, Object> getCookieStatistics() {
+        List<CookieData> all = getAllCookies();
         Map<String, Object> stats = new HashMap<>();
-        stats.put("totalCookies", cookies.size());
-        stats.put("sessionCookies", cookies.values().stream().filter(CookieData::isSessionOnly).count());
-        stats.put("persistentCookies", cookies.values().stream().filter(c -> !c.isSessionOnly()).count());
-        stats.put("secureCookies", cookies.values().stream().filter(CookieData::isSecure).count());
-        stats.put("httpOnlyCookies", cookies.values().stream().filter(CookieData::isHttpOnly).count());
-        stats.put("uniqueDomains", getAllDomains().size());
+        stats.put("totalCookies", all.size());
+        stats.put("sessionCookies", all.stream().filter(CookieData::isSessionOnly).count());
+        stats.put("persistentCookies", all.stream().filter(c -> !c.isSessionOnly()).count());
+        stats.put("secureCookies", all.stream().filter(CookieData::isSecure).count());
+        stats.put("httpOnlyCookies", all.stream().filter(CookieData::isHttpOnly).count());
+        stats.put("uniqueDomains", all.stream().map(CookieData::getDomain).distinct().count());
+        stats.put("maxCookies", maxCookies);
+        stats.put("maxCookiesPerSite", maxCookiesPerSite);
+        stats.put("evictedCookies", evictedBySiteQuota.sum() + evictedByGlobalQuota.sum());
+        stats.put("evictedBySiteQuota", evictedBySiteQuota.sum());
+        stats.put("evictedByGlobalQuota", evictedByGlobalQuota.sum());
+        synchronized (evictedBySite) {
+            stats.put("evictedBySite", new LinkedHashMap<>(evictedBySite));
+        }
+        stats.put("headerCacheHits", headerStats.getHits());
+        stats.put("headerCacheMisses", headerStats.getMisses());
         return stats;
     }
     
+    /**
+     * Set the global and per-site cookie limits, evicting least recently accessed cookies beyond them
+     */
+    public void setCookieLimits(int maxCookies, int maxCookiesPerSite) {
+        if (maxCookies < 1 || maxCookiesPerSite < 1) {
+            throw new IllegalArgumentException("Cookie limits must be positive");
+        }
+        this.maxCookies = maxCookies;
+        this.maxCookiesPerSite = maxCookiesPerSite;
+        ConfigManager.setMaxCookies(maxCookies);
+        ConfigManager.setMaxCookiesPerSite(maxCookiesPerSite);
+        enforceAllQuotas();
+    }
+    
+    public int getMaxCookies() {
+        return maxCookies;
+    }
+    
+    public int getMaxCookiesPerSite() {
+        return maxCookiesPerSite;
+    }
+    
+    /**
+     * Wait until pending cookie changes have been written to disk
+     */
+    public void flush() {
+        journal.flush();
+    }
+    
+    /**
+     * Write pending cookie changes and compact the journal; call once on shutdown
+     */
+    public void close() {
+        synchronized (expiryQueue) {
+            closed = true;
+            expiryQueue.notifyAll();
+        }
+        journal.close();
+    }
+    
     // Private helper methods
     
     private String generateKey(CookieData cookie) {
         return cookie.getDomain() + ":" + cookie.getPath() + ":" + cookie.getName();
     }
     
-    private boolean isTrackingCookie(CookieData cookie) {
-        String name = cookie.getName().toLowerCase();
-        
-        // Common tracking cookie patterns
-        String[] trackingPatterns = {
-            "_ga", "_gid", "track", "analytics", "_utm", "doubleclick",
-            "fbp", "_fbp", "fbsb", "fbcsb", "_ym_", "yandex_gid"
-        };
-        
-        for (String pattern : trackingPatterns) {
-            if (name.contains(pattern)) {
-                return true;
+    /**
+     * Run a change against a site's jar while holding its lock, keeping the global
+     * count in step and retiring the jar once it is empty. Without {@code create},
+     * a site that has no jar is left alone and the result is null.
+     */
+    private <T> T updateSite(String site, boolean create, Function<CookieSiteJar, T> change) {
+        while (true) {
+            CookieSiteJar jar = create ? sites.computeIfAbsent(site, this::newSiteJar) : sites.get(site);
+            if (jar == null) {
+                return null;
+            }
+            synchronized (jar) {
+                if (jar.isRetired()) {
+                    // Emptied and unmapped by another thread after we looked it up
+                    continue;
+                }
+                int before = jar.size();
+                T result = change.apply(jar);
+                cookieCount.addAndGet(jar.size() - before);
+                if (jar.size() == 0) {
+                    jar.retire();
+                    sites.remove(site, jar);
+                    if (URLUtil.isPublicSuffix(site)) {
+                        publicSuffixSites.decrementAndGet();
+                    }
+                }
+                return result;
             }
         }
-        
-        return false;
     }
     
-    private void saveCookies() {
-        try {
-            Files.createDirectories(Paths.get(com.pinora.browser.util.ConfigManager.getConfigDirectory()));
-            try (FileWriter writer = new FileWriter(COOKIES_FILE)) {
-                JsonArray array = new JsonArray();
-                for (CookieData cookie : cookies.values()) {
-                    JsonObject obj = new JsonObject();
-                    obj.addProperty("name", cookie.getName());
-                    obj.addProperty("value", cookie.getValue());
-                    obj.addProperty("domain", cookie.getDomain());
-                    obj.addProperty("path", cookie.getPath());
-                    obj.addProperty("secure", cookie.isSecure());
-                    obj.addProperty("httpOnly", cookie.isHttpOnly());
-                    obj.addProperty("sessionOnly", cookie.isSessionOnly());
-                    obj.addProperty("expiryTime", cookie.getExpiryTime());
-                    obj.addProperty("sameSite", cookie.getSameSite());
-                    obj.addProperty("createdTime", cookie.getCreatedTime());
-                    obj.addProperty("lastAccessedTime", cookie.getLastAccessedTime());
-                    array.add(obj);
+    private CookieSiteJar newSiteJar(String site) {
+        if (URLUtil.isPublicSuffix(site)) {
+            publicSuffixSites.incrementAndGet();
+        }
+        return new CookieSiteJar(site, headerStats);
+    }
+    
+    /**
+     * Jars whose cookies may apply to a host: its site's and those of public suffixes above it
+     */
+    private List<CookieSiteJar> jarsFor(String host) {
+        List<CookieSiteJar> jars = new ArrayList<>(1);
+        String site = siteOfDomain(host);
+        CookieSiteJar jar = sites.get(site);
+        if (jar != null) {
+            jars.add(jar);
+        }
+        if (publicSuffixSites.get() > 0) {
+            for (int dot = site.indexOf('.'); dot >= 0; dot = site.indexOf('.', dot + 1)) {
+                CookieSiteJar suffix = sites.get(site.substring(dot + 1));
+                if (suffix != null) {
+                    jars.add(suffix);
                 }
-                GSON.toJson(array, writer);
             }
-            logger.info("Cookies saved to {}", COOKIES_FILE);
-        } catch (Exception e) {
-            logger.error("Failed to save cookies", e);
         }
+        return jars;
     }
     
-    private void loadCookies() {
-        try {
-            File file = new File(COOKIES_FILE);
-            if (!file.exists()) {
-                logger.debug("Cookies file not found, starting with empty cookie store");
-                return;
+    /**
+     * Remove a site's cookies matching the filter; the caller holds the jar's lock
+     */
+    private Void removeCookiesIf(CookieSiteJar jar, java.util.function.Predicate<CookieData> filter) {
+        for (Map.Entry<String, CookieData> entry : jar.removeIf(filter).entrySet()) {
+            if (!entry.getValue().isSessionOnly()) {
+                journal.remove(entry.getKey());
             }
-            
-            String content = new String(Files.readAllBytes(Paths.get(COOKIES_FILE)));
-            JsonArray array = GSON.fromJson(content, JsonArray.class);
-            
-            if (array != null) {
-                for (JsonElement element : array) {
-                    JsonObject obj = element.getAsJsonObject();
-                    CookieData cookie = new CookieData();
-                    cookie.setName(obj.get("name").getAsString());
-                    cookie.setValue(obj.get("value").getAsString());
-                    cookie.setDomain(obj.get("domain").getAsString());
-                    cookie.setPath(obj.get("path").getAsString());
-                    cookie.setSecure(obj.get("secure").getAsBoolean());
-                    cookie.setHttpOnly(obj.get("httpOnly").getAsBoolean());
-                    cookie.setSessionOnly(obj.get("sessionOnly").getAsBoolean());
-                    cookie.setExpiryTime(obj.get("expiryTime").getAsLong());
-                    if (obj.has("sameSite")) {
-                        cookie.setSameSite(obj.get("sameSite").getAsString());
-                    }
-                    if (obj.has("createdTime")) {
-                        cookie.setCreatedTime(obj.get("createdTime").getAsLong());
+        }
+        return null;
+    }
+    
+    /**
+     * Registrable domain a cookie belongs to, which is also the site it counts against for the per-site quota
+     */
+    private static String siteOf(CookieData cookie) {
+        return siteOfDomain(cookie.getDomain());
+    }
+    
+    private static String siteOfDomain(String domain) {
+        String site = URLUtil.getRegistrableDomain(domain);
+        return site != null ? site : "";
+    }
+    
+    private void enforceAllQuotas() {
+        for (String site : new ArrayList<>(sites.keySet())) {
+            updateSite(site, false, jar -> {
+                if (jar.size() > maxCookiesPerSite) {
+                    evictLeastRecentlyAccessed(jar, jar.size() - maxCookiesPerSite, null);
+                }
+                return null;
+            });
+        }
+        if (cookieCount.get() > maxCookies) {
+            evictGlobal(null);
+        }
+    }
+    
+    /**
+     * Evict a site's least recently accessed cookies, never {@code keep}; the caller holds the jar's lock
+     */
+    private void evictLeastRecentlyAccessed(CookieSiteJar jar, int count, CookieData keep) {
+        List<CookieData> candidates = new ArrayList<>(jar.snapshot().cookies());
+        candidates.remove(keep);
+        candidates.sort(Comparator.comparingLong(CookieData::getLastAccessedTime));
+        Set<CookieData> victims = Collections.newSetFromMap(new IdentityHashMap<>());
+        victims.addAll(candidates.subList(0, Math.min(count, candidates.size())));
+        removeCookiesIf(jar, victims::contains);
+        evictedBySiteQuota.add(victims.size());
+        recordEvictions(jar.getSite(), victims.size());
+    }
+    
+    /**
+     * Evict down to a little below the global limit, so the full scan is paid once per batch rather than per cookie.
+     * Only one thread evicts at a time. It repeats until the jar is within the limit, since other threads keep
+     * adding cookies meanwhile; threads that had to wait re-check once it is done and usually find nothing to do.
+     */
+    private void evictGlobal(CookieData keep) {
+        globalEviction.lock();
+        try {
+            while (cookieCount.get() > maxCookies) {
+                int target = maxCookies - Math.max(1, maxCookies / 20);
+                int excess = cookieCount.get() - target;
+                List<CookieData> candidates = collectAllCookies();
+                candidates.remove(keep);
+                if (candidates.isEmpty()) {
+                    return;
+                }
+                candidates.sort(Comparator.comparingLong(CookieData::getLastAccessedTime));
+                
+                Map<String, Set<CookieData>> victimsBySite = new HashMap<>();
+                for (CookieData cookie : candidates.subList(0, Math.min(excess, candidates.size()))) {
+                    victimsBySite.computeIfAbsent(siteOf(cookie), s -> Collections.newSetFromMap(new IdentityHashMap<>()))
+                        .add(cookie);
+                }
+                for (Map.Entry<String, Set<CookieData>> entry : victimsBySite.entrySet()) {
+                    Set<CookieData> victims = entry.getValue();
+                    // A victim replaced in the meantime is no longer the stored instance and survives until the next pass
+                    Integer evicted = updateSite(entry.getKey(), false, jar -> {
+                        int before = jar.size();
+                        removeCookiesIf(jar, victims::contains);
+                        return before - jar.size();
+                    });
+                    if (evicted != null && evicted > 0) {
+                        evictedByGlobalQuota.add(evicted);
+                        recordEvictions(entry.getKey(), evicted);
                     }
-                    if (obj.has("lastAccessedTime")) {
-                        cookie.setLastAccessedTime(obj.get("lastAccessedTime").getAsLong());
+                }
+            }
+        } finally {
+            globalEviction.unlock();
+        }
+    }
+    
+    private void recordEvictions(String site, long count) {
+        if (count > 0) {
+            synchronized (evictedBySite) {
+                evictedBySite.merge(site, count, Long::sum);
+            }
+        }
+    }
+    
+    /**
+     * Track a cookie's expiry, waking the sweeper if it is now the first to expire
+     */
+    private void scheduleExpiry(CookieData cookie) {
+        synchronized (expiryQueue) {
+            long next = expiryQueue.peekTime();
+            expiryQueue.add(cookie);
+            // Replaced and deleted cookies leave stale entries behind; drop them once they dominate
+            if (expiryQueue.size() > 2 * cookieCount.get() + 64) {
+                expiryQueue.rebuild(getAllCookies());
+            }
+            if (expiryQueue.peekTime() < next) {
+                expiryQueue.notifyAll();
+            }
+        }
+    }
+    
+    /**
+     * Remove every cookie that expired before {@code now}
+     */
+    private void removeExpired(long now) {
+        List<CookieData> due = new ArrayList<>();
+        synchronized (expiryQueue) {
+            expiryQueue.drainExpired(now, due::add);
+        }
+        removeExpired(due);
+    }
+    
+    private void removeExpired(List<CookieData> due) {
+        // Durable cookies are left in the journal; compaction drops them once expired
+        for (CookieData cookie : due) {
+            String key = generateKey(cookie);
+            updateSite(siteOf(cookie), false, jar -> {
+                if (jar.snapshot().get(key) == cookie) {
+                    jar.remove(key);
+                    logger.debug("Cookie expired: {}", key);
+                }
+                return null;
+            });
+        }
+    }
+    
+    /**
+     * Sleep until the next cookie expires, remove it and everything else due, repeat.
+     * Site locks are taken outside the queue lock, so writers scheduling expiries never wait on removals.
+     */
+    private void runExpirySweeper() {
+        while (true) {
+            List<CookieData> due = new ArrayList<>();
+            synchronized (expiryQueue) {
+                if (closed) {
+                    return;
+                }
+                long now = System.currentTimeMillis();
+                expiryQueue.drainExpired(now, due::add);
+                if (due.isEmpty()) {
+                    long next = expiryQueue.peekTime();
+                    try {
+                        expiryQueue.wait(next == Long.MAX_VALUE ? 0 : Math.max(1, next - now + 1));
+                    } catch (InterruptedException e) {
+                        return;
                     }
-                    
-                    cookies.put(generateKey(cookie), cookie);
+                    continue;
                 }
             }
+            removeExpired(due);
+        }
+    }
+    
+    private boolean isTrackingCookie(CookieData cookie) {
+        return trackingMatcher.matches(cookie.getName());
+    }
+    
+    /**
+     * Record a durable cookie in the journal; session cookies only live in memory
+     */
+    private void persist(String key, CookieData cookie) {
+        if (!cookie.isSessionOnly()) {
+            journal.put(key, toJson(cookie));
+        }
+    }
+    
+    private void loadCookies() {
+        try {
+            for (JsonObject obj : journal.load()) {
+                CookieData cookie = fromJson(obj);
+                String key = generateKey(cookie);
+                
+                // Older cookie files also stored session cookies
+                if (cookie.isSessionOnly() || cookie.isExpired()) {
+                    journal.remove(key);
+                    continue;
+                }
+                
+                updateSite(siteOf(cookie), true, jar -> jar.put(key, cookie));
+                expiryQueue.add(cookie);
+            }
+            
+            // The limits may have been lowered since the jar was saved
+            enforceAllQuotas();
             
-            logger.info("Loaded {} cookies from disk", cookies.size());
+            logger.info("Loaded {} cookies from disk", cookieCount.get());
         } catch (Exception e) {
             logger.error("Failed to load cookies", e);
         }
     }
     
+    private static String keyOf(JsonObject obj) {
+        return obj.get("domain").getAsString() + ":" + obj.get("path").getAsString() + ":" + obj.get("name").getAsString();
+    }
+    
+    private static JsonObject toJson(CookieData cookie) {
+        JsonObject obj = new JsonObject();
+        obj.addProperty("name", cookie.getName());
+        obj.addProperty("value", cookie.getValue());
+        obj.addProperty("domain", cookie.getDomain());
+        obj.addProperty("path", cookie.getPath());
+        obj.addProperty("secure", cookie.isSecure());
+        obj.addProperty("httpOnly", cookie.isHttpOnly());
+        obj.addProperty("sessionOnly", cookie.isSessionOnly());
+        obj.addProperty("expiryTime", cookie.getExpiryTime());
+        obj.addProperty("sameSite", cookie.getSameSite());
+        obj.addProperty("createdTime", cookie.getCreatedTime());
+        obj.addProperty("lastAccessedTime", cookie.getLastAccessedTime());
+        return obj;
+    }
+    
+    private static CookieData fromJson(JsonObject obj) {
+        CookieData cookie = new CookieData();
+        cookie.setName(obj.get("name").getAsString());
+        cookie.setValue(obj.get("value").getAsString());
+        cookie.setDomain(obj.get("domain").getAsString());
+        cookie.setPath(obj.get("path").getAsString());
+        cookie.setSecure(obj.get("secure").getAsBoolean());
+        cookie.setHttpOnly(obj.get("httpOnly").getAsBoolean());
+        cookie.setSessionOnly(obj.get("sessionOnly").getAsBoolean());
+        cookie.setExpiryTime(obj.get("expiryTime").getAsLong());
+        if (obj.has("sameSite")) {
+            cookie.setSameSite(obj.get("sameSite").getAsString());
+        }
+        if (obj.has("createdTime")) {
+            cookie.setCreatedTime(obj.get("createdTime").getAsLong());
+        }
+        if (obj.has("lastAccessedTime")) {
+            cookie.setLastAccessedTime(obj.get("lastAccessedTime").getAsLong());
+        }
+        return cookie;
+    }
+    
     private void saveCookiePolicy() {
         try {
             File file = new File(com.pinora.browser.util.ConfigManager.getConfigDirectory() + "/cookie_policy.json");
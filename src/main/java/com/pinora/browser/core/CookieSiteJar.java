@@ -0,0 +1,152 @@
+package com.pinora.browser.core;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Cookies of one site (registrable domain), the unit of locking in {@link CookieManager}.
+ *
+ * Writers synchronize on the jar and publish a fresh immutable {@link Snapshot}
+ * after every change; readers take the current snapshot without locking, so a
+ * lookup never waits for a writer and always sees a consistent set of cookies.
+ * The per-site quota keeps jars small, which makes copying on write cheap.
+ * A jar that becomes empty is retired and replaced by a new one on the next write.
+ */
+public class CookieSiteJar {
+
+    private final String site;
+    private final CookieHeaderCache.Stats headerStats;
+    private volatile Snapshot snapshot;
+    private boolean retired; // guarded by this
+
+    public CookieSiteJar(String site, CookieHeaderCache.Stats headerStats) {
+        this.site = site;
+        this.headerStats = headerStats;
+        this.snapshot = new Snapshot(Collections.emptyMap(), headerStats);
+    }
+
+    public String getSite() {
+        return site;
+    }
+
+    /**
+     * The cookies as of the last completed change
+     */
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
+    public int size() {
+        return snapshot.size();
+    }
+
+    /**
+     * Store a cookie under its key, returning the cookie it replaced
+     */
+    public synchronized CookieData put(String key, CookieData cookie) {
+        Map<String, CookieData> next = new LinkedHashMap<>(snapshot.cookies);
+        CookieData previous = next.put(key, cookie);
+        publish(next);
+        return previous;
+    }
+
+    /**
+     * Remove the cookie stored under a key, returning it
+     */
+    public synchronized CookieData remove(String key) {
+        if (!snapshot.cookies.containsKey(key)) {
+            return null;
+        }
+        Map<String, CookieData> next = new LinkedHashMap<>(snapshot.cookies);
+        CookieData removed = next.remove(key);
+        publish(next);
+        return removed;
+    }
+
+    /**
+     * Remove every cookie matching the filter in one change, returning the removed cookies by key
+     */
+    public synchronized Map<String, CookieData> removeIf(Predicate<CookieData> filter) {
+        Map<String, CookieData> removed = new LinkedHashMap<>();
+        Map<String, CookieData> next = new LinkedHashMap<>(snapshot.cookies);
+        next.entrySet().removeIf(entry -> {
+            if (filter.test(entry.getValue())) {
+                removed.put(entry.getKey(), entry.getValue());
+                return true;
+            }
+            return false;
+        });
+        if (!removed.isEmpty()) {
+            publish(next);
+        }
+        return removed;
+    }
+
+    synchronized boolean isRetired() {
+        return retired;
+    }
+
+    synchronized void retire() {
+        retired = true;
+    }
+
+    private void publish(Map<String, CookieData> cookies) {
+        snapshot = new Snapshot(Collections.unmodifiableMap(cookies), headerStats);
+    }
+
+    /**
+     * Immutable view of a site's cookies. The domain index and header cache are
+     * built on first use and belong to this snapshot, so any change to the site
+     * discards its memoized headers along with the snapshot. Thread-safe.
+     */
+    public static final class Snapshot {
+        private final Map<String, CookieData> cookies;
+        private final CookieHeaderCache.Stats headerStats;
+        private volatile CookieJarIndex index;
+        private volatile CookieHeaderCache headers;
+
+        private Snapshot(Map<String, CookieData> cookies, CookieHeaderCache.Stats headerStats) {
+            this.cookies = cookies;
+            this.headerStats = headerStats;
+        }
+
+        public CookieData get(String key) {
+            return cookies.get(key);
+        }
+
+        public Collection<CookieData> cookies() {
+            return cookies.values();
+        }
+
+        public int size() {
+            return cookies.size();
+        }
+
+        /**
+         * Domain and path index of the snapshot; racing readers may each build one, which is harmless
+         */
+        public CookieJarIndex index() {
+            CookieJarIndex built = index;
+            if (built == null) {
+                built = new CookieJarIndex();
+                for (CookieData cookie : cookies.values()) {
+                    built.add(cookie);
+                }
+                index = built;
+            }
+            return built;
+        }
+
+        public CookieHeaderCache headers() {
+            CookieHeaderCache built = headers;
+            if (built == null) {
+                built = new CookieHeaderCache(index(), headerStats);
+                headers = built;
+            }
+            return built;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.pinora.browser.core;
+
+import java.util.Arrays;
+
+/**
+ * Growable primitive columns split into fixed-size chunks that are shared
+ * with frozen copies and copied on the first write after a freeze.
+ *
+ * {@code freeze()} only copies the chunk pointer array, so taking a snapshot
+ * costs O(size / CHUNK_SIZE), and each later write copies at most the one
+ * chunk it touches. Frozen copies are read-only.
+ */
+public final class HistoryColumns {
+
+    static final int CHUNK_SHIFT = 10;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private HistoryColumns() {
+    }
+
+    public static final class IntColumn {
+        private final int fill;
+        private int[][] chunks;
+        private int[] owners;       // version each chunk was copied at; null when frozen
+        private int version;
+
+        public IntColumn(int fill) {
+            this.fill = fill;
+            this.chunks = new int[0][];
+            this.owners = new int[0];
+        }
+
+        private IntColumn(int fill, int[][] chunks) {
+            this.fill = fill;
+            this.chunks = chunks;
+        }
+
+        public int get(int index) {
+            return chunks[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+        }
+
+        public void set(int index, int value) {
+            int c = index >>> CHUNK_SHIFT;
+            if (owners[c] != version) {
+                chunks[c] = chunks[c].clone();
+                owners[c] = version;
+            }
+            chunks[c][index & CHUNK_MASK] = value;
+        }
+
+        public void ensureCapacity(int capacity) {
+            int needed = (capacity + CHUNK_MASK) >>> CHUNK_SHIFT;
+            if (needed <= chunks.length) {
+                return;
+            }
+            int old = chunks.length;
+            chunks = Arrays.copyOf(chunks, needed);
+            owners = Arrays.copyOf(owners, needed);
+            for (int c = old; c < needed; c++) {
+                chunks[c] = new int[CHUNK_SIZE];
+                if (fill != 0) {
+                    Arrays.fill(chunks[c], fill);
+                }
+                owners[c] = version;
+            }
+        }
+
+        public int capacity() {
+            return chunks.length << CHUNK_SHIFT;
+        }
+
+        /**
+         * Read-only copy sharing every chunk; this column copies a chunk before next writing to it
+         */
+        public IntColumn freeze() {
+            version++;
+            return new IntColumn(fill, chunks.clone());
+        }
+    }
+
+    public static final class LongColumn {
+        private long[][] chunks;
+        private int[] owners;
+        private int version;
+
+        public LongColumn() {
+            this.chunks = new long[0][];
+            this.owners = new int[0];
+        }
+
+        private LongColumn(long[][] chunks) {
+            this.chunks = chunks;
+        }
+
+        public long get(int index) {
+            return chunks[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+        }
+
+        public void set(int index, long value) {
+            int c = index >>> CHUNK_SHIFT;
+            if (owners[c] != version) {
+                chunks[c] = chunks[c].clone();
+                owners[c] = version;
+            }
+            chunks[c][index & CHUNK_MASK] = value;
+        }
+
+        public void ensureCapacity(int capacity) {
+            int needed = (capacity + CHUNK_MASK) >>> CHUNK_SHIFT;
+            if (needed <= chunks.length) {
+                return;
+            }
+            int old = chunks.length;
+            chunks = Arrays.copyOf(chunks, needed);
+            owners = Arrays.copyOf(owners, needed);
+            for (int c = old; c < needed; c++) {
+                chunks[c] = new long[CHUNK_SIZE];
+                owners[c] = version;
+            }
+        }
+
+        public int capacity() {
+            return chunks.length << CHUNK_SHIFT;
+        }
+
+        public LongColumn freeze() {
+            version++;
+            return new LongColumn(chunks.clone());
+        }
+    }
+}
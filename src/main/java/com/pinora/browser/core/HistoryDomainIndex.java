@@ -0,0 +1,119 @@
+package com.pinora.browser.core;
+
+import com.pinora.browser.util.DomainTrie;
+import com.pinora.browser.util.URLUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Index of history rows by host.
+ *
+ * Hosts are kept in a reversed-label {@link DomainTrie}, each mapping to the
+ * store origins (scheme and port variants) with that host. The rows of an
+ * origin are found through the store's per-origin lists, so a domain query
+ * touches only the matching entries and subdomains roll up naturally.
+ *
+ * {@link #snapshot} views share the trie with the live index and ignore
+ * origins their store snapshot does not know yet, so they need no copying.
+ */
+public class HistoryDomainIndex {
+
+    private static final int[] NO_ORIGINS = new int[0];
+
+    private final HistoryStore store;
+    private DomainTrie<int[]> hosts;
+    private final BitSet indexedOrigins;
+
+    public HistoryDomainIndex(HistoryStore store) {
+        this.store = store;
+        this.hosts = new DomainTrie<>();
+        this.indexedOrigins = new BitSet();
+    }
+
+    private HistoryDomainIndex(HistoryStore store, DomainTrie<int[]> hosts) {
+        this.store = store;
+        this.hosts = hosts;
+        this.indexedOrigins = null;
+    }
+
+    /**
+     * Read-only view over a snapshot of the store taken at the same time
+     */
+    public HistoryDomainIndex snapshot(HistoryStore frozenStore) {
+        return new HistoryDomainIndex(frozenStore, hosts);
+    }
+
+    /**
+     * Make sure the row's origin is reachable from its host
+     */
+    public void add(int row) {
+        checkWritable();
+        int origin = store.getOriginId(row);
+        if (indexedOrigins.get(origin)) {
+            return;
+        }
+        indexedOrigins.set(origin);
+        String host = URLUtil.getHost(store.getOriginName(origin));
+        if (host == null) {
+            return;
+        }
+        int[] origins = hosts.computeIfAbsent(host, h -> NO_ORIGINS);
+        int[] grown = Arrays.copyOf(origins, origins.length + 1);
+        grown[origins.length] = origin;
+        hosts.put(host, grown);
+    }
+
+    public void clear() {
+        checkWritable();
+        // Origin ids are reused after a clear, so views must keep the old trie
+        hosts = new DomainTrie<>();
+        indexedOrigins.clear();
+    }
+
+    /**
+     * Live rows whose host is {@code domain} or one of its subdomains, newest first
+     */
+    public int[] rowsUnder(String domain) {
+        List<int[]> matched = new ArrayList<>();
+        hosts.forEachUnder(domain, (host, origins) -> matched.add(origins));
+
+        int[] rows = new int[16];
+        int count = 0;
+        int originCount = store.getOriginCount();
+        for (int[] origins : matched) {
+            for (int origin : origins) {
+                if (origin >= originCount) {
+                    continue; // added after this view's store snapshot
+                }
+                for (int row = store.getFirstRowOfOrigin(origin); row != HistoryStore.NONE;
+                     row = store.getNextInOrigin(row)) {
+                    if (count == rows.length) {
+                        rows = Arrays.copyOf(rows, count * 2);
+                    }
+                    rows[count++] = row;
+                }
+            }
+        }
+        return Arrays.stream(rows, 0, count)
+            .boxed()
+            .sorted((a, b) -> Long.compare(store.getTime(b), store.getTime(a)))
+            .mapToInt(Integer::intValue)
+            .toArray();
+    }
+
+    /**
+     * Number of distinct hosts seen
+     */
+    public int getHostCount() {
+        return hosts.size();
+    }
+
+    private void checkWritable() {
+        if (indexedOrigins == null) {
+            throw new IllegalStateException("History snapshot is read-only");
+        }
+    }
+}
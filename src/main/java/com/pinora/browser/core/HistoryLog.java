@@ -0,0 +1,563 @@
+package com.pinora.browser.core;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Append-only, segmented log of history mutations.
+ *
+ * Every mutation is written as a single JSON line to the active segment, so a
+ * navigation costs one small sequential append instead of a full rewrite.
+ * Segments roll over at {@link #MAX_SEGMENT_BYTES}. Compaction writes the live
+ * state to a snapshot in the background and drops the segments it covers.
+ * On startup the newest snapshot is replayed, followed by every newer segment;
+ * a torn record at the end of a segment (crash mid-write) is truncated away.
+ *
+ * Appends, segment rolls and resets never touch the disk on the calling
+ * thread. They are queued, in order, for a dedicated writer thread that
+ * flushes once whenever the queue drains. When the queue is full, callers wait
+ * for the writer to catch up rather than letting memory grow. Call
+ * {@link #flush()} or {@link #close()} to make queued records durable.
+ */
+public class HistoryLog {
+
+    private static final Logger logger = LoggerFactory.getLogger(HistoryLog.class);
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String FILE_SUFFIX = ".log";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final long MAX_SEGMENT_BYTES = 1024 * 1024; // 1 MB
+    private static final long COMPACTION_THRESHOLD_BYTES = 4 * 1024 * 1024; // 4 MB
+    private static final int WRITE_QUEUE_CAPACITY = 1024;
+    private static final long CLOSE_TIMEOUT_SECONDS = 10;
+
+    private final Path directory;
+    private final BlockingQueue<Runnable> writeQueue = new ArrayBlockingQueue<>(WRITE_QUEUE_CAPACITY);
+    private final Runnable stopWriter = () -> { };
+    private final Thread writer;
+    private volatile boolean closed;
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "HistoryLog-Compactor");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Owned by the writer thread (and recovery before it has work), guarded by this
+    private OutputStream activeOut;
+    private long activeSegment = 1;
+    private long activeBytes;
+    private boolean dirty;       // written but not yet flushed
+    private int generation;      // bumped by reset() to abandon in-flight compactions
+
+    // Read without locking so callers never wait behind disk writes
+    private volatile long segmentBytes;   // bytes in segments not yet covered by a snapshot
+    private volatile long snapshotBytes;
+    private final AtomicBoolean compactionPending = new AtomicBoolean();
+    // Compaction asked for while one was running; started once that one is done
+    private final AtomicReference<Runnable> followUp = new AtomicReference<>();
+
+    public HistoryLog(String directory) {
+        this.directory = Paths.get(directory);
+        this.writer = new Thread(this::runWriter, "HistoryLog-Writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Replay the newest snapshot and all later segments into the consumer.
+     * Returns the number of records replayed.
+     */
+    public synchronized int recover(Consumer<JsonObject> consumer) {
+        int replayed = 0;
+        try {
+            Files.createDirectories(directory);
+            TreeMap<Long, Path> snapshots = new TreeMap<>();
+            TreeMap<Long, Path> segments = new TreeMap<>();
+            scanDirectory(snapshots, segments);
+
+            long base = 0;
+            if (!snapshots.isEmpty()) {
+                base = snapshots.lastKey();
+                Path snapshot = snapshots.lastEntry().getValue();
+                replayed += replayFile(snapshot, consumer, false);
+                snapshotBytes = Files.size(snapshot);
+            }
+
+            // Anything older than the snapshot was left behind by an interrupted compaction
+            for (Path stale : snapshots.headMap(base).values()) {
+                Files.deleteIfExists(stale);
+            }
+            for (Path stale : segments.headMap(base).values()) {
+                Files.deleteIfExists(stale);
+            }
+
+            long last = base;
+            for (var segment : segments.tailMap(base, true).entrySet()) {
+                replayed += replayFile(segment.getValue(), consumer, true);
+                segmentBytes += Files.size(segment.getValue());
+                last = segment.getKey();
+            }
+
+            // Always start a fresh segment so new records never follow a repaired tail
+            activeSegment = last + 1;
+            activeBytes = 0;
+            logger.info("Recovered {} history records from {}", replayed, directory);
+        } catch (Exception e) {
+            logger.error("Failed to recover history log", e);
+        }
+        return replayed;
+    }
+
+    /**
+     * Queue a single record for the active segment
+     */
+    public void append(JsonObject record) {
+        appendAll(List.of(record));
+    }
+
+    /**
+     * Queue several records to be written together, e.g. for a batch of imported entries
+     */
+    public void appendAll(List<JsonObject> records) {
+        enqueue(() -> writeRecords(records));
+    }
+
+    /**
+     * Whether enough has been appended since the last snapshot to make compaction worthwhile
+     */
+    public boolean shouldCompact() {
+        return !compactionPending.get()
+            && segmentBytes >= COMPACTION_THRESHOLD_BYTES
+            && segmentBytes > snapshotBytes;
+    }
+
+    /**
+     * Compact the log in the background. The active segment is rolled after the
+     * records queued so far; {@code liveState} must describe the state as of this
+     * call and is written to a snapshot that replaces every earlier segment.
+     *
+     * Callers hold {@code lock}, the monitor that orders their appends, and
+     * {@code liveState} is only built when a compaction actually starts. If one
+     * is already running, the request is remembered and replayed under
+     * {@code lock} once it finishes, so the latest state still reaches a
+     * snapshot; the returned future is then already done.
+     */
+    public Future<?> compact(Object lock, Supplier<? extends Iterable<JsonObject>> liveState) {
+        Runnable request = () -> {
+            synchronized (lock) {
+                compact(lock, liveState);
+            }
+        };
+        while (!compactionPending.compareAndSet(false, true)) {
+            followUp.set(request);
+            // Unless the running compaction finished before seeing the request, it will replay it
+            if (compactionPending.get() || !followUp.compareAndSet(request, null)) {
+                return CompletableFuture.completedFuture(null);
+            }
+        }
+        if (closed) {
+            compactionPending.set(false);
+            return CompletableFuture.completedFuture(null);
+        }
+        Iterable<JsonObject> state = liveState.get();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        boolean queued = enqueue(() -> {
+            closeActiveSegment();
+            final long covered = ++activeSegment;
+            final int startGeneration = generation;
+            try {
+                compactor.execute(() -> {
+                    writeSnapshot(covered, startGeneration, state);
+                    done.complete(null);
+                    startFollowUp();
+                });
+            } catch (RejectedExecutionException e) {
+                compactionPending.set(false);
+                done.complete(null);
+            }
+        });
+        if (!queued) {
+            compactionPending.set(false);
+            done.complete(null);
+        }
+        return done;
+    }
+
+    /**
+     * Replay a compaction requested while the last one ran. It runs on its own
+     * thread because it waits for the caller's lock, which may be held by a
+     * thread waiting for the compactor.
+     */
+    private void startFollowUp() {
+        if (compactionPending.get() || closed) {
+            return;
+        }
+        Runnable request = followUp.getAndSet(null);
+        if (request == null) {
+            return;
+        }
+        Thread t = new Thread(request, "HistoryLog-FollowUp");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Drop every segment and snapshot, e.g. when history is cleared.
+     * Records queued before this call are discarded with them.
+     */
+    public void reset() {
+        enqueue(() -> {
+            generation++;
+            compactionPending.set(false);
+            followUp.set(null);
+            closeActiveSegment();
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : files.toList()) {
+                    Files.deleteIfExists(file);
+                }
+            } catch (Exception e) {
+                logger.error("Failed to reset history log", e);
+            }
+            activeSegment = 1;
+            activeBytes = 0;
+            segmentBytes = 0;
+            snapshotBytes = 0;
+        });
+    }
+
+    /**
+     * Total size of the log on disk in bytes
+     */
+    public long getSizeOnDisk() {
+        return segmentBytes + snapshotBytes;
+    }
+
+    /**
+     * Wait until every record queued so far has been written and flushed
+     */
+    public void flush() {
+        CompletableFuture<Void> flushed = new CompletableFuture<>();
+        if (!enqueue(() -> flushed.complete(null))) {
+            return;
+        }
+        try {
+            flushed.get(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.warn("Timed out flushing history log");
+        }
+    }
+
+    /**
+     * Write out queued records, wait for any running compaction and close the active segment.
+     * Records appended afterwards are dropped.
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        enqueue(stopWriter);
+        closed = true;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(CLOSE_TIMEOUT_SECONDS));
+            if (writer.isAlive()) {
+                logger.warn("History writer did not finish before shutdown");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        compactor.shutdown();
+        try {
+            if (!compactor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                logger.warn("History compaction did not finish before shutdown");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            closeActiveSegment();
+        }
+    }
+
+    /**
+     * Hand a task to the writer thread, waiting for room when it has fallen behind.
+     * Returns false if the task was dropped.
+     */
+    private boolean enqueue(Runnable task) {
+        if (closed) {
+            logger.warn("History log is closed; dropping write");
+            return false;
+        }
+        if (writeQueue.offer(task)) {
+            return true;
+        }
+        logger.debug("History writer is behind; waiting for queue space");
+        try {
+            writeQueue.put(task);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted while queueing history write");
+            return false;
+        }
+    }
+
+    private void runWriter() {
+        while (true) {
+            Runnable task;
+            try {
+                task = writeQueue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            synchronized (this) {
+                if (task != stopWriter) {
+                    try {
+                        task.run();
+                    } catch (Exception e) {
+                        logger.error("History write failed", e);
+                    }
+                }
+                // Group commit: flush once the burst of queued work is done
+                if (dirty && (writeQueue.isEmpty() || task == stopWriter)) {
+                    flushActiveSegment();
+                }
+            }
+            if (task == stopWriter) {
+                return;
+            }
+        }
+    }
+
+    private void writeRecords(List<JsonObject> records) {
+        try {
+            for (JsonObject record : records) {
+                if (activeOut == null) {
+                    openActiveSegment();
+                }
+                byte[] line = (GSON.toJson(record) + "\n").getBytes(StandardCharsets.UTF_8);
+                activeOut.write(line);
+                activeBytes += line.length;
+                segmentBytes += line.length;
+                dirty = true;
+
+                if (activeBytes >= MAX_SEGMENT_BYTES) {
+                    closeActiveSegment();
+                    activeSegment++;
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Failed to append history records", e);
+        }
+    }
+
+    private void flushActiveSegment() {
+        dirty = false;
+        if (activeOut == null) {
+            return;
+        }
+        try {
+            activeOut.flush();
+        } catch (IOException e) {
+            logger.error("Failed to flush history segment", e);
+        }
+    }
+
+    private void writeSnapshot(long covered, int startGeneration, Iterable<JsonObject> liveState) {
+        Path temp = directory.resolve(fileName(SNAPSHOT_PREFIX, covered) + TEMP_SUFFIX);
+        Path target = directory.resolve(fileName(SNAPSHOT_PREFIX, covered));
+        try {
+            try (FileChannel channel = FileChannel.open(temp,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                 OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel))) {
+                for (JsonObject record : liveState) {
+                    out.write((GSON.toJson(record) + "\n").getBytes(StandardCharsets.UTF_8));
+                }
+                out.flush();
+                channel.force(true);
+            }
+
+            synchronized (this) {
+                if (generation != startGeneration) {
+                    // History was cleared while we were writing; the snapshot is obsolete
+                    Files.deleteIfExists(temp);
+                    return;
+                }
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+                TreeMap<Long, Path> snapshots = new TreeMap<>();
+                TreeMap<Long, Path> segments = new TreeMap<>();
+                scanDirectory(snapshots, segments);
+                for (Path old : snapshots.headMap(covered).values()) {
+                    Files.deleteIfExists(old);
+                }
+                for (Path old : segments.headMap(covered).values()) {
+                    Files.deleteIfExists(old);
+                }
+
+                long remaining = 0;
+                for (Path segment : segments.tailMap(covered, true).values()) {
+                    remaining += Files.size(segment);
+                }
+                segmentBytes = remaining;
+                snapshotBytes = Files.size(target);
+                compactionPending.set(false);
+            }
+            logger.info("History log compacted into {}", target.getFileName());
+        } catch (Exception e) {
+            logger.error("Failed to compact history log", e);
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+            }
+            synchronized (this) {
+                if (generation == startGeneration) {
+                    compactionPending.set(false);
+                }
+            }
+        }
+    }
+
+    /**
+     * Replay one file line by line. When {@code repairTail} is set, a trailing
+     * record without a terminating newline is treated as torn and truncated.
+     */
+    private int replayFile(Path file, Consumer<JsonObject> consumer, boolean repairTail) throws IOException {
+        int count = 0;
+        long position = 0;
+        long lastGood = 0;
+        ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            int b;
+            while ((b = in.read()) != -1) {
+                position++;
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                lastGood = position;
+                String text = line.toString(StandardCharsets.UTF_8);
+                line.reset();
+                if (text.isBlank()) {
+                    continue;
+                }
+                try {
+                    consumer.accept(JsonParser.parseString(text).getAsJsonObject());
+                    count++;
+                } catch (Exception e) {
+                    logger.warn("Skipping corrupt history record in {}: {}", file.getFileName(), e.getMessage());
+                }
+            }
+        }
+
+        if (line.size() > 0) {
+            if (repairTail) {
+                logger.warn("Truncating torn history record at end of {}", file.getFileName());
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    channel.truncate(lastGood);
+                }
+            } else {
+                logger.warn("Ignoring incomplete trailing record in {}", file.getFileName());
+            }
+        }
+        return count;
+    }
+
+    private void scanDirectory(TreeMap<Long, Path> snapshots, TreeMap<Long, Path> segments) throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(directory)) {
+            files = new ArrayList<>(stream.toList());
+        }
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            if (name.endsWith(TEMP_SUFFIX)) {
+                if (!compactionPending.get()) {
+                    Files.deleteIfExists(file);
+                }
+                continue;
+            }
+            if (!name.endsWith(FILE_SUFFIX)) {
+                continue;
+            }
+            try {
+                if (name.startsWith(SNAPSHOT_PREFIX)) {
+                    snapshots.put(parseNumber(name, SNAPSHOT_PREFIX), file);
+                } else if (name.startsWith(SEGMENT_PREFIX)) {
+                    segments.put(parseNumber(name, SEGMENT_PREFIX), file);
+                }
+            } catch (NumberFormatException e) {
+                logger.debug("Ignoring unexpected file in history log: {}", name);
+            }
+        }
+    }
+
+    private void openActiveSegment() throws IOException {
+        Files.createDirectories(directory);
+        Path file = directory.resolve(fileName(SEGMENT_PREFIX, activeSegment));
+        activeOut = new BufferedOutputStream(Files.newOutputStream(file,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND));
+        activeBytes = Files.size(file);
+    }
+
+    private void closeActiveSegment() {
+        if (activeOut == null) {
+            return;
+        }
+        try {
+            activeOut.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close history segment: {}", e.getMessage());
+        }
+        activeOut = null;
+        activeBytes = 0;
+        dirty = false;
+    }
+
+    private static String fileName(String prefix, long number) {
+        return String.format("%s%010d%s", prefix, number, FILE_SUFFIX);
+    }
+
+    private static long parseNumber(String name, String prefix) {
+        return Long.parseLong(name.substring(prefix.length(), name.length() - FILE_SUFFIX.length()));
+    }
+}
@@ -1,125 +1,379 @@
 package com.pinora.browser.core;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.pinora.browser.util.URLUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.DoubleSupplier;
 
 /**
- * Manages browsing history with persistence to disk
+ * Manages browsing history with persistence to disk.
+ * Mutations are appended to a segmented {@link HistoryLog} rather than
+ * rewriting the whole history file on every visit. Entries live column-wise
+ * in a {@link HistoryStore} and are handed out as lightweight views.
+ *
+ * All changes go through this class's synchronized methods, a single writer
+ * at a time. They only update memory and queue log records; the disk writes
+ * happen on the log's writer thread, so recording a visit does no I/O on the
+ * calling thread. After each change an immutable {@link HistorySnapshot} is
+ * published; readers use the latest one without locking or copying.
  */
-public class HistoryManager {
+public final class HistoryManager {
     
     private static final Logger logger = LoggerFactory.getLogger(HistoryManager.class);
     
     private static final String HISTORY_FILE = com.pinora.browser.util.ConfigManager.getHistoryFile();
-    private static final Gson GSON = new Gson();
     private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
     
-    private List<HistoryEntry> history;
-    private static final int MAX_HISTORY_ITEMS = 1000;
+    // Log record types
+    private static final String OP_VISIT = "visit";   // new visit, goes to the front
+    private static final String OP_ENTRY = "entry";   // existing entry, appended at the back
+    private static final String OP_DELETE = "delete";
+    
+    // Columnar entry storage with the recency list and URL lookup built in
+    private HistoryStore store = new HistoryStore();
+    private HistorySearchIndex searchIndex = new HistorySearchIndex(store);
+    private HistoryTimeIndex timeIndex = new HistoryTimeIndex(store);
+    private HistoryTopSites topSites = new HistoryTopSites(store);
+    private HistoryDomainIndex domainIndex = new HistoryDomainIndex(store);
+    private long totalVisits;
+    private volatile HistorySnapshot snapshot;
+    private final HistoryLog historyLog;
+    private static final int MAX_HISTORY_ITEMS = 1_000_000;
+    private static final int IMPORT_BATCH_SIZE = 1000;
+    // Dead rows tolerated before the store is compacted
+    private static final int STORE_COMPACTION_MIN_DEAD = 64 * 1024;
+    
+    // Frecency: each visit contributes 1, halving every FRECENCY_HALF_LIFE_DAYS
+    private static final double FRECENCY_HALF_LIFE_DAYS = 30;
+    private static final double FRECENCY_DECAY_PER_MILLI = Math.log(2) / (FRECENCY_HALF_LIFE_DAYS * 24 * 60 * 60 * 1000);
     
     public HistoryManager() {
-        this.history = new ArrayList<>();
+        this.historyLog = new HistoryLog(com.pinora.browser.util.ConfigManager.getHistoryDirectory());
         loadHistory();
     }
     
-    public void addToHistory(String url) {
+    /**
+     * Latest published state of history. Cheap to take and safe to read from any thread.
+     */
+    public HistorySnapshot snapshot() {
+        return snapshot;
+    }
+    
+    /**
+     * Make the current state visible to readers
+     */
+    private void publish() {
+        if (topSites.needsRebuild()) {
+            topSites.rebuild();
+        }
+        HistoryStore frozen = store.snapshot();
+        snapshot = new HistorySnapshot(frozen, timeIndex.snapshot(frozen), searchIndex.snapshot(frozen),
+            domainIndex.snapshot(frozen), topSites.top(HistoryTopSites.CAPACITY), totalVisits);
+    }
+    
+    public synchronized void addToHistory(String url) {
         // Validate input
         if (url == null || url.trim().isEmpty()) {
             logger.warn("Cannot add empty URL to history");
             return;
         }
         
-        HistoryEntry entry = new HistoryEntry(url, LocalDateTime.now());
-        history.addFirst(entry);
+        int row = recordVisit(url, System.currentTimeMillis(), null);
         
-        // Remove duplicates (keep most recent)
-        history.removeIf(e -> e.url.equals(url) && e != entry);
+        // Persist as a single appended record
+        appendRecord(OP_VISIT, row);
+        compactStoreIfNeeded();
+        publish();
         
-        if (history.size() > MAX_HISTORY_ITEMS) {
-            history.removeLast();
+        logger.debug("Added to history: {}", url);
+    }
+    
+    /**
+     * Move the URL to the front of the recency list, creating its row if needed
+     */
+    private int recordVisit(String url, long time, String title) {
+        int row = store.find(url);
+        if (row != HistoryStore.NONE) {
+            store.unlink(row);
+            timeIndex.remove(row);
+            topSites.detach(row);
+            if (title != null && !title.equals(store.getTitle(row))) {
+                // Move to a fresh row so search postings stay append-only
+                int previous = row;
+                store.kill(previous);
+                searchIndex.remove(previous);
+                row = store.add(url, time, title);
+                store.setVisitCount(row, store.getVisitCount(previous));
+                store.setFrecency(row, store.getFrecency(previous));
+                searchIndex.add(row);
+                domainIndex.add(row);
+            }
+            store.setTime(row, time);
+        } else {
+            row = store.add(url, time, title);
+            searchIndex.add(row);
+            domainIndex.add(row);
         }
+        store.setVisitCount(row, store.getVisitCount(row) + 1);
+        store.setFrecency(row, addVisit(store.getFrecency(row), time));
+        totalVisits++;
+        timeIndex.add(row);
+        topSites.offer(row);
+        store.linkFirst(row);
         
-        // Save to disk
-        saveHistory();
-        
-        logger.debug("Added to history: {}", url);
+        if (store.getLiveCount() > MAX_HISTORY_ITEMS) {
+            removeRow(store.getOldest());
+        }
+        return row;
+    }
+    
+    /**
+     * Add an entry at the old end of the list. Returns its row, or
+     * {@link HistoryStore#NONE} when the URL is already known or history is full.
+     * A visit count of 0 stands for a single visit at {@code time}.
+     */
+    private int appendEntry(String url, long time, String title, int visits, double frecency) {
+        if (store.getLiveCount() >= MAX_HISTORY_ITEMS || store.find(url) != HistoryStore.NONE) {
+            return HistoryStore.NONE;
+        }
+        int row = store.add(url, time, title);
+        if (visits <= 0) {
+            visits = 1;
+            frecency = addVisit(Double.NEGATIVE_INFINITY, time);
+        }
+        store.setVisitCount(row, visits);
+        store.setFrecency(row, frecency);
+        totalVisits += visits;
+        searchIndex.add(row);
+        timeIndex.add(row);
+        topSites.offer(row);
+        domainIndex.add(row);
+        store.linkLast(row);
+        return row;
+    }
+    
+    private void removeRow(int row) {
+        store.unlink(row);
+        store.kill(row);
+        searchIndex.remove(row);
+        timeIndex.remove(row);
+        topSites.remove(row);
+        totalVisits -= store.getVisitCount(row);
+    }
+    
+    /**
+     * Once dead rows outnumber live ones, copy the live rows into a fresh store
+     * and rebuild the indexes over the new row numbers
+     */
+    private void compactStoreIfNeeded() {
+        if (store.getDeadCount() < STORE_COMPACTION_MIN_DEAD || store.getDeadCount() < store.getLiveCount()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        store = store.compact();
+        searchIndex = new HistorySearchIndex(store);
+        timeIndex = new HistoryTimeIndex(store);
+        topSites = new HistoryTopSites(store);
+        domainIndex = new HistoryDomainIndex(store);
+        for (int row = 0; row < store.size(); row++) {
+            searchIndex.add(row);
+            timeIndex.add(row);
+            topSites.offer(row);
+            domainIndex.add(row);
+        }
+        logger.debug("Compacted history store to {} rows in {} ms", store.size(), System.currentTimeMillis() - start);
+    }
+    
+    /**
+     * Fold one visit at {@code time} into a log-space frecency score.
+     * The score is stored as log(sum(exp(decay * visitTime))), so comparing two
+     * scores does not depend on the current time and entries only need
+     * re-ranking when they are visited.
+     */
+    private static double addVisit(double frecencyLog, long time) {
+        return logAddExp(frecencyLog, time * FRECENCY_DECAY_PER_MILLI);
+    }
+    
+    /**
+     * log(exp(a) + exp(b)) without overflow
+     */
+    private static double logAddExp(double a, double b) {
+        if (a == Double.NEGATIVE_INFINITY) {
+            return b;
+        }
+        if (b == Double.NEGATIVE_INFINITY) {
+            return a;
+        }
+        return Math.max(a, b) + Math.log1p(Math.exp(-Math.abs(a - b)));
     }
     
     /**
      * Get all history entries
      */
     public List<HistoryEntry> getHistory() {
-        return new ArrayList<>(history);
+        return snapshot.getHistory();
     }
     
     /**
-     * Get history for a specific domain
+     * Get the entry for a URL, or null if it was never visited
+     */
+    public HistoryEntry getEntry(String url) {
+        return snapshot.getEntry(url);
+    }
+    
+    /**
+     * Check whether a URL is in history
+     */
+    public boolean hasVisited(String url) {
+        return snapshot.hasVisited(url);
+    }
+    
+    /**
+     * Get history for a host and its subdomains, newest first.
+     * Accepts a bare host name or a URL.
      */
     public List<HistoryEntry> getHistoryForDomain(String domain) {
-        return history.stream()
-            .filter(e -> e.url.contains(domain))
-            .toList();
+        return snapshot.getEntriesUnder(toHost(domain));
+    }
+    
+    /**
+     * Get history for the whole site a host or URL belongs to, i.e. its
+     * registrable domain and every subdomain of it
+     */
+    public List<HistoryEntry> getHistoryForSite(String hostOrUrl) {
+        return snapshot.getEntriesUnder(URLUtil.getRegistrableDomain(toHost(hostOrUrl)));
+    }
+    
+    /**
+     * Remove every entry of the site a host or URL belongs to ("forget this site").
+     * Returns the number of entries removed.
+     */
+    public synchronized int forgetSite(String hostOrUrl) {
+        String site = URLUtil.getRegistrableDomain(toHost(hostOrUrl));
+        if (site == null) {
+            return 0;
+        }
+        int[] rows = domainIndex.rowsUnder(site);
+        if (rows.length == 0) {
+            return 0;
+        }
+        
+        List<JsonObject> records = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            JsonObject record = new JsonObject();
+            record.addProperty("op", OP_DELETE);
+            record.addProperty("url", store.getUrl(row));
+            records.add(record);
+            removeRow(row);
+        }
+        historyLog.appendAll(records);
+        // Compact right away so the site does not linger in older segments
+        historyLog.compact(this, this::snapshotRecords);
+        compactStoreIfNeeded();
+        publish();
+        logger.info("Forgot {} history entries for {}", rows.length, site);
+        return rows.length;
+    }
+    
+    private static String toHost(String hostOrUrl) {
+        if (hostOrUrl == null) {
+            return null;
+        }
+        return hostOrUrl.contains("://") ? URLUtil.getHost(hostOrUrl) : URLUtil.normalizeHost(hostOrUrl.trim());
     }
     
     /**
      * Search history by URL or title
      */
     public List<HistoryEntry> searchHistory(String query) {
-        if (query == null || query.isEmpty()) {
-            return new ArrayList<>();
-        }
-        String lowerQuery = query.toLowerCase();
-        return history.stream()
-            .filter(e -> e.url.toLowerCase().contains(lowerQuery) || 
-                        (e.title != null && e.title.toLowerCase().contains(lowerQuery)))
-            .toList();
+        return searchHistory(query, Integer.MAX_VALUE);
+    }
+    
+    /**
+     * Search history by URL or title, returning at most {@code limit} of the best matches.
+     * Words are matched against URL components and title words; the last word
+     * matches as a prefix.
+     */
+    public List<HistoryEntry> searchHistory(String query, int limit) {
+        return snapshot.search(query, limit);
     }
     
     /**
      * Clear all history
      */
-    public void clearHistory() {
-        history.clear();
-        saveHistory();
+    public synchronized void clearHistory() {
+        topSites.clear();
+        searchIndex.clear();
+        timeIndex.clear();
+        domainIndex.clear();
+        store.clear();
+        totalVisits = 0;
+        historyLog.reset();
+        publish();
         logger.info("History cleared");
     }
     
     /**
      * Delete a specific history entry
      */
-    public void deleteEntry(String url) {
-        history.removeIf(e -> e.url.equals(url));
-        saveHistory();
+    public synchronized void deleteEntry(String url) {
+        int row = url != null ? store.find(url) : HistoryStore.NONE;
+        if (row == HistoryStore.NONE) {
+            return;
+        }
+        removeRow(row);
+        JsonObject record = new JsonObject();
+        record.addProperty("op", OP_DELETE);
+        record.addProperty("url", url);
+        historyLog.append(record);
+        // Compact right away so the deleted URL does not linger in older segments
+        historyLog.compact(this, this::snapshotRecords);
+        compactStoreIfNeeded();
+        publish();
     }
     
     /**
      * Get history count
      */
     public int getHistoryCount() {
-        return history.size();
+        return snapshot.size();
     }
     
     /**
      * Get history entries for a specific date
      */
     public List<HistoryEntry> getHistoryForDate(LocalDateTime date) {
-        return history.stream()
-            .filter(e -> e.timestamp.toLocalDate().equals(date.toLocalDate()))
-            .toList();
+        LocalDateTime start = date.toLocalDate().atStartOfDay();
+        return snapshot.getRange(toEpochMillis(start), toEpochMillis(start.plusDays(1)));
     }
     
     /**
@@ -127,58 +381,87 @@ public class HistoryManager {
      */
     public List<HistoryEntry> getHistoryLastNDays(int days) {
         LocalDateTime cutoff = LocalDateTime.now().minusDays(days);
-        return history.stream()
-            .filter(e -> e.timestamp.isAfter(cutoff))
-            .toList();
+        return snapshot.getRange(toEpochMillis(cutoff), Long.MAX_VALUE);
     }
     
     /**
-     * Get most visited URLs
+     * Get one page of history, newest first. Pass null to start from the
+     * most recent entry, then the cursor of the previous page to continue.
+     */
+    public HistoryPage getHistoryPage(HistoryCursor cursor, int pageSize) {
+        return getHistoryPage(null, null, cursor, pageSize);
+    }
+    
+    /**
+     * Get one page of history with {@code from <= timestamp < to}, newest first.
+     * Either bound may be null for an open range.
+     */
+    public HistoryPage getHistoryPage(LocalDateTime from, LocalDateTime to, HistoryCursor cursor, int pageSize) {
+        long low = from != null ? toEpochMillis(from) : Long.MIN_VALUE;
+        long high = to != null ? toEpochMillis(to) : Long.MAX_VALUE;
+        return snapshot.getPage(low, high, cursor, pageSize);
+    }
+    
+    /**
+     * Get most visited URLs, ranked by frecency
      */
     public List<String> getMostVisited(int limit) {
-        return history.stream()
-            .map(e -> e.url)
-            .distinct()
-            .limit(limit)
+        return getTopSites(limit).stream()
+            .map(HistoryEntry::getUrl)
             .toList();
     }
     
     /**
-     * Export history to HTML file
+     * Get the highest-frecency entries, best first, e.g. for the new tab page.
+     * Requests up to {@link HistoryTopSites#CAPACITY} are served from the online ranking.
+     */
+    public List<HistoryEntry> getTopSites(int limit) {
+        return snapshot.getTopSites(limit);
+    }
+    
+    /**
+     * Number of recorded visits to a URL, or 0 if it is not in history
+     */
+    public int getVisitCount(String url) {
+        return snapshot.getVisitCount(url);
+    }
+    
+    /**
+     * Export history to HTML file, streaming entries straight to disk
      */
     public void exportToHTML(String filePath) {
-        try {
-            StringBuilder html = new StringBuilder();
-            html.append("<!DOCTYPE html>\n");
-            html.append("<html>\n");
-            html.append("<head>\n");
-            html.append("<title>Pinora Browser History</title>\n");
-            html.append("<meta charset=\"utf-8\" />\n");
-            html.append("<style>\n");
-            html.append("body { font-family: Arial, sans-serif; margin: 20px; }\n");
-            html.append("h1 { color: #333; }\n");
-            html.append("ul { list-style-type: none; padding: 0; }\n");
-            html.append("li { margin: 10px 0; padding: 8px; border-left: 4px solid #007bff; padding-left: 12px; }\n");
-            html.append("a { color: #007bff; text-decoration: none; }\n");
-            html.append("a:hover { text-decoration: underline; }\n");
-            html.append(".timestamp { color: #666; font-size: 0.9em; margin-left: 10px; }\n");
-            html.append("</style>\n");
-            html.append("</head>\n");
-            html.append("<body>\n");
-            html.append("<h1>Pinora Browser Browsing History</h1>\n");
-            html.append(String.format("<p>Total entries: %d</p>\n", history.size()));
-            html.append("<ul>\n");
+        HistorySnapshot history = snapshot;
+        try (BufferedWriter html = Files.newBufferedWriter(Paths.get(filePath), StandardCharsets.UTF_8)) {
+            html.write("<!DOCTYPE html>\n");
+            html.write("<html>\n");
+            html.write("<head>\n");
+            html.write("<title>Pinora Browser History</title>\n");
+            html.write("<meta charset=\"utf-8\" />\n");
+            html.write("<style>\n");
+            html.write("body { font-family: Arial, sans-serif; margin: 20px; }\n");
+            html.write("h1 { color: #333; }\n");
+            html.write("ul { list-style-type: none; padding: 0; }\n");
+            html.write("li { margin: 10px 0; padding: 8px; border-left: 4px solid #007bff; padding-left: 12px; }\n");
+            html.write("a { color: #007bff; text-decoration: none; }\n");
+            html.write("a:hover { text-decoration: underline; }\n");
+            html.write(".timestamp { color: #666; font-size: 0.9em; margin-left: 10px; }\n");
+            html.write("</style>\n");
+            html.write("</head>\n");
+            html.write("<body>\n");
+            html.write("<h1>Pinora Browser Browsing History</h1>\n");
+            html.write(String.format("<p>Total entries: %d</p>\n", history.size()));
+            html.write("<ul>\n");
             
-            for (HistoryEntry entry : history) {
-                html.append(String.format("<li><a href=\"%s\">%s</a><span class=\"timestamp\">%s</span></li>\n",
-                    entry.url, entry.title != null ? entry.title : entry.url, entry.timestamp));
+            for (HistoryEntry entry : history.entries()) {
+                String url = entry.getUrl();
+                String title = entry.getTitle();
+                html.write(String.format("<li><a href=\"%s\">%s</a><span class=\"timestamp\">%s</span></li>\n",
+                    url, title != null ? title : url, entry.getTimestamp()));
             }
             
-            html.append("</ul>\n");
-            html.append("</body>\n");
-            html.append("</html>\n");
-            
-            Files.write(Paths.get(filePath), html.toString().getBytes());
+            html.write("</ul>\n");
+            html.write("</body>\n");
+            html.write("</html>\n");
             logger.info("History exported to {}", filePath);
         } catch (Exception e) {
             logger.error("Failed to export history to HTML", e);
@@ -189,24 +472,20 @@ public class HistoryManager {
      * Get history statistics
      */
     public String getStatistics() {
+        HistorySnapshot history = snapshot;
         StringBuilder sb = new StringBuilder();
         sb.append(String.format("Total History Entries: %d\n", history.size()));
         sb.append(String.format("Max History Items: %d\n", MAX_HISTORY_ITEMS));
+        sb.append(String.format("Total Visits: %d\n", history.getTotalVisits()));
+        sb.append(String.format("Memory Used: %.2f MB\n", history.getMemoryUsage() / (1024.0 * 1024.0)));
         
-        if (!history.isEmpty()) {
-            // Get unique domains
-            int uniqueUrls = (int) history.stream()
-                .map(e -> e.url)
-                .distinct()
-                .count();
-            sb.append(String.format("Unique URLs: %d\n", uniqueUrls));
+        if (history.size() > 0) {
+            // Entries are unique per URL
+            sb.append(String.format("Unique URLs: %d\n", history.size()));
             
             // Get most recent and oldest
-            LocalDateTime newest = history.get(0).timestamp;
-            LocalDateTime oldest = history.get(history.size() - 1).timestamp;
-            
-            sb.append(String.format("Most Recent: %s\n", newest));
-            sb.append(String.format("Oldest: %s\n", oldest));
+            sb.append(String.format("Most Recent: %s\n", history.getNewest().getTimestamp()));
+            sb.append(String.format("Oldest: %s\n", history.getOldest().getTimestamp()));
         }
         
         return sb.toString();
@@ -216,79 +495,333 @@ public class HistoryManager {
      * Export history to JSON
      */
     public String exportToJSON() {
-        JsonArray array = new JsonArray();
-        for (HistoryEntry entry : history) {
-            JsonObject obj = new JsonObject();
-            obj.addProperty("url", entry.url);
-            obj.addProperty("timestamp", entry.timestamp.format(FORMATTER));
-            if (entry.title != null) {
-                obj.addProperty("title", entry.title);
-            }
-            array.add(obj);
+        StringWriter out = new StringWriter();
+        try (JsonWriter writer = new JsonWriter(out)) {
+            writeEntries(writer);
+        } catch (IOException e) {
+            logger.error("Failed to export history to JSON", e);
+        }
+        return out.toString();
+    }
+    
+    /**
+     * Export history to a JSON file, streaming entries straight to disk
+     */
+    public void exportToJSONFile(String filePath) {
+        try (JsonWriter writer = new JsonWriter(Files.newBufferedWriter(Paths.get(filePath), StandardCharsets.UTF_8))) {
+            writeEntries(writer);
+            logger.info("History exported to {}", filePath);
+        } catch (Exception e) {
+            logger.error("Failed to export history to JSON", e);
         }
-        return GSON.toJson(array);
     }
     
     /**
      * Import history from JSON
      */
     public int importFromJSON(String json) {
-        int imported = 0;
-        JsonArray array = GSON.fromJson(json, JsonArray.class);
+        try (JsonReader reader = new JsonReader(new StringReader(json))) {
+            return importEntries(reader, null, null, true);
+        } catch (Exception e) {
+            logger.error("Failed to import history from JSON", e);
+            return 0;
+        }
+    }
+    
+    /**
+     * Import history from a JSON file in bounded memory. Entries are read one at a time
+     * and merged in batches; URLs already in history have their visits combined.
+     * Returns the number of entries added or merged.
+     */
+    public int importFromJSONFile(String filePath, ImportProgressListener listener) {
+        Path path = Paths.get(filePath);
+        try (CountingInputStream in = new CountingInputStream(new BufferedInputStream(Files.newInputStream(path)));
+             JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            long total = Math.max(1, Files.size(path));
+            int imported = importEntries(reader, () -> (double) in.getCount() / total, listener, true);
+            logger.info("Imported {} history entries from {}", imported, filePath);
+            return imported;
+        } catch (Exception e) {
+            logger.error("Failed to import history from {}", filePath, e);
+            return 0;
+        }
+    }
+    
+    /**
+     * Write every entry, newest first, as a JSON array
+     */
+    private void writeEntries(JsonWriter writer) throws IOException {
+        writer.beginArray();
+        for (HistoryEntry entry : snapshot.entries()) {
+            writer.beginObject();
+            writer.name("url").value(entry.getUrl());
+            writer.name("timestamp").value(entry.getTimestamp().format(FORMATTER));
+            String title = entry.getTitle();
+            if (title != null) {
+                writer.name("title").value(title);
+            }
+            writer.name("visits").value(entry.getVisitCount());
+            writer.endObject();
+        }
+        writer.endArray();
+    }
+    
+    /**
+     * Stream entries from a JSON array and merge them in batches of {@link #IMPORT_BATCH_SIZE}.
+     * When {@code persist} is set, new entries are appended to the log batch by batch.
+     * Reading and parsing happen outside the lock, which is only held to merge a parsed
+     * batch, so visits recorded meanwhile never wait for the disk.
+     */
+    private int importEntries(JsonReader reader, DoubleSupplier fraction, ImportProgressListener listener,
+                              boolean persist) throws IOException {
+        Map<String, ImportedEntry> batch = new LinkedHashMap<>();
+        ImportStats stats = new ImportStats();
+        int processed = 0;
         
-        for (JsonElement element : array) {
-            JsonObject obj = element.getAsJsonObject();
-            String url = obj.get("url").getAsString();
-            String timestampStr = obj.get("timestamp").getAsString();
-            LocalDateTime timestamp = LocalDateTime.parse(timestampStr, FORMATTER);
-            
-            HistoryEntry entry = new HistoryEntry(url, timestamp);
-            if (obj.has("title")) {
-                entry.title = obj.get("title").getAsString();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            ImportedEntry entry = readEntry(reader);
+            processed++;
+            if (entry != null) {
+                batch.merge(entry.url, entry, ImportedEntry::combine);
+            }
+            if (batch.size() >= IMPORT_BATCH_SIZE || !reader.hasNext()) {
+                synchronized (this) {
+                    mergeBatch(batch.values(), persist, stats);
+                    // Let readers see the import as it progresses
+                    publish();
+                }
+                batch.clear();
+                if (listener != null) {
+                    listener.onProgress(processed, stats.added + stats.merged,
+                        fraction != null ? fraction.getAsDouble() : -1);
+                }
             }
-            
-            history.add(entry);
-            imported++;
         }
+        reader.endArray();
         
-        // Trim to max size
-        while (history.size() > MAX_HISTORY_ITEMS) {
-            history.removeLast();
+        // Merged counts have no log record of their own; capture them in a snapshot
+        if (persist) {
+            synchronized (this) {
+                if (stats.merged > 0 || historyLog.shouldCompact()) {
+                    historyLog.compact(this, this::snapshotRecords);
+                }
+            }
+        }
+        return stats.added + stats.merged;
+    }
+    
+    /**
+     * Read one exported entry; returns null if it lacks a URL or timestamp
+     */
+    private static ImportedEntry readEntry(JsonReader reader) throws IOException {
+        String url = null;
+        String timestamp = null;
+        String title = null;
+        int visits = 1;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "url" -> url = reader.nextString();
+                case "timestamp" -> timestamp = reader.nextString();
+                case "title" -> title = reader.nextString();
+                case "visits" -> visits = readVisits(reader);
+                default -> reader.skipValue();
+            }
         }
+        reader.endObject();
         
-        saveHistory();
-        return imported;
+        if (url == null || url.isEmpty() || timestamp == null) {
+            return null;
+        }
+        try {
+            return new ImportedEntry(url, toEpochMillis(LocalDateTime.parse(timestamp, FORMATTER)), title, visits);
+        } catch (Exception e) {
+            logger.debug("Skipping history entry with bad timestamp: {}", timestamp);
+            return null;
+        }
     }
     
     /**
-     * Save history to disk
+     * Visit count of an imported entry; a malformed value counts as a single visit
      */
-    private void saveHistory() {
+    private static int readVisits(JsonReader reader) throws IOException {
         try {
-            Files.createDirectories(Paths.get(com.pinora.browser.util.ConfigManager.getConfigDirectory()));
-            try (FileWriter writer = new FileWriter(HISTORY_FILE)) {
-                JsonArray array = new JsonArray();
-                for (HistoryEntry entry : history) {
-                    JsonObject obj = new JsonObject();
-                    obj.addProperty("url", entry.url);
-                    obj.addProperty("timestamp", entry.timestamp.format(FORMATTER));
-                    if (entry.title != null) {
-                        obj.addProperty("title", entry.title);
+            return Math.max(1, reader.nextInt());
+        } catch (NumberFormatException | IllegalStateException e) {
+            // The reader leaves the offending value in place
+            reader.skipValue();
+            logger.debug("Ignoring malformed visit count in imported history: {}", e.getMessage());
+            return 1;
+        }
+    }
+    
+    /**
+     * Add new entries and fold the rest into existing ones
+     */
+    private void mergeBatch(Collection<ImportedEntry> batch, boolean persist, ImportStats stats) {
+        List<JsonObject> records = new ArrayList<>();
+        for (ImportedEntry entry : batch) {
+            // Without individual visit times, decay them all as if made at the last visit
+            double frecency = addVisit(Double.NEGATIVE_INFINITY, entry.time) + Math.log(entry.visits);
+            int row = store.find(entry.url);
+            if (row == HistoryStore.NONE) {
+                row = appendEntry(entry.url, entry.time, entry.title, entry.visits, frecency);
+                if (row != HistoryStore.NONE) {
+                    stats.added++;
+                    if (persist) {
+                        records.add(toRecord(OP_ENTRY, store, row));
                     }
-                    array.add(obj);
                 }
-                GSON.toJson(array, writer);
+                continue;
             }
-            logger.debug("History saved to {}", HISTORY_FILE);
-        } catch (Exception e) {
-            logger.error("Failed to save history", e);
+            // Existing entries keep their place in the recency list
+            topSites.detach(row);
+            store.setVisitCount(row, store.getVisitCount(row) + entry.visits);
+            store.setFrecency(row, logAddExp(store.getFrecency(row), frecency));
+            totalVisits += entry.visits;
+            if (entry.time > store.getTime(row)) {
+                timeIndex.remove(row);
+                store.setTime(row, entry.time);
+                timeIndex.add(row);
+            }
+            topSites.offer(row);
+            stats.merged++;
+        }
+        if (!records.isEmpty()) {
+            historyLog.appendAll(records);
         }
     }
     
+    /**
+     * Wait until every change made so far has been written to disk
+     */
+    public void flush() {
+        historyLog.flush();
+    }
+    
+    /**
+     * Flush the history log and wait for background compaction
+     */
+    public synchronized void close() {
+        historyLog.close();
+    }
+    
+    /**
+     * Append a record for the given row and compact the log when it has grown enough
+     */
+    private void appendRecord(String op, int row) {
+        historyLog.append(toRecord(op, store, row));
+        if (historyLog.shouldCompact()) {
+            historyLog.compact(this, this::snapshotRecords);
+        }
+    }
+    
+    /**
+     * Records describing the current state, newest first. They are produced
+     * lazily from a store snapshot, so the compactor thread never sees later
+     * mutations.
+     */
+    private Iterable<JsonObject> snapshotRecords() {
+        HistoryStore copy = store.snapshot();
+        return () -> new Iterator<>() {
+            private int next = copy.getNewest();
+            
+            @Override
+            public boolean hasNext() {
+                return next != HistoryStore.NONE;
+            }
+            
+            @Override
+            public JsonObject next() {
+                if (next == HistoryStore.NONE) {
+                    throw new NoSuchElementException();
+                }
+                int row = next;
+                next = copy.getOlder(row);
+                return toRecord(OP_ENTRY, copy, row);
+            }
+        };
+    }
+    
+    private static JsonObject toRecord(String op, HistoryStore store, int row) {
+        JsonObject record = new JsonObject();
+        record.addProperty("op", op);
+        record.addProperty("url", store.getUrl(row));
+        record.addProperty("time", store.getTime(row));
+        String title = store.getTitle(row);
+        if (title != null) {
+            record.addProperty("title", title);
+        }
+        if (OP_ENTRY.equals(op)) {
+            // Visit records rebuild counts on replay; snapshots carry them explicitly
+            record.addProperty("visits", store.getVisitCount(row));
+            record.addProperty("frecency", store.getFrecency(row));
+        }
+        return record;
+    }
+    
+    /**
+     * Apply a replayed log record to the in-memory history
+     */
+    private void applyRecord(JsonObject record) {
+        String op = record.get("op").getAsString();
+        String url = record.get("url").getAsString();
+        if (OP_DELETE.equals(op)) {
+            int row = store.find(url);
+            if (row != HistoryStore.NONE) {
+                removeRow(row);
+            }
+            return;
+        }
+        
+        long time = record.get("time").getAsLong();
+        String title = record.has("title") ? record.get("title").getAsString() : null;
+        if (OP_VISIT.equals(op)) {
+            recordVisit(url, time, title);
+        } else if (OP_ENTRY.equals(op)) {
+            int visits = 0;
+            double frecency = Double.NEGATIVE_INFINITY;
+            if (record.has("visits") && record.has("frecency")) {
+                visits = record.get("visits").getAsInt();
+                frecency = record.get("frecency").getAsDouble();
+            }
+            appendEntry(url, time, title, visits, frecency);
+        } else {
+            logger.debug("Ignoring unknown history record type: {}", op);
+        }
+    }
+    
+    private static long toEpochMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+    
+    private static LocalDateTime fromEpochMillis(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+    
     /**
      * Load history from disk
      */
     private void loadHistory() {
+        int replayed = historyLog.recover(this::applyRecord);
+        if (replayed == 0) {
+            migrateLegacyHistory();
+        }
+        compactStoreIfNeeded();
+        publish();
+        logger.info("Loaded {} history entries from disk", store.getLiveCount());
+    }
+    
+    /**
+     * One-time migration of the old history.json into the history log
+     */
+    private void migrateLegacyHistory() {
         try {
             File file = new File(HISTORY_FILE);
             if (!file.exists()) {
@@ -296,59 +829,185 @@ public class HistoryManager {
                 return;
             }
             
-            try (FileReader reader = new FileReader(file)) {
-                JsonArray array = GSON.fromJson(reader, JsonArray.class);
-                
-                if (array != null) {
-                    for (JsonElement element : array) {
-                        JsonObject obj = element.getAsJsonObject();
-                        String url = obj.get("url").getAsString();
-                        String timestampStr = obj.get("timestamp").getAsString();
-                        LocalDateTime timestamp = LocalDateTime.parse(timestampStr, FORMATTER);
-                        
-                        HistoryEntry entry = new HistoryEntry(url, timestamp);
-                        if (obj.has("title")) {
-                            entry.title = obj.get("title").getAsString();
-                        }
-                        
-                        history.add(entry);
-                    }
-                }
+            try (JsonReader reader = new JsonReader(Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8))) {
+                importEntries(reader, null, null, false);
             }
             
-            logger.info("Loaded {} history entries from disk", history.size());
+            // Write the snapshot before retiring the old file so nothing is lost on a crash
+            historyLog.compact(this, this::snapshotRecords).get();
+            Files.move(file.toPath(), Paths.get(HISTORY_FILE + ".migrated"),
+                java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+            logger.info("Migrated {} history entries from {}", store.getLiveCount(), HISTORY_FILE);
         } catch (Exception e) {
-            logger.error("Failed to load history", e);
+            logger.error("Failed to migrate history", e);
+        }
+    }
+    
+    /**
+     * Receives progress while a history import runs
+     */
+    public interface ImportProgressListener {
+        /**
+         * @param processed entries read so far
+         * @param imported  entries added or merged so far
+         * @param fraction  share of the input consumed, or -1 when unknown
+         */
+        void onProgress(int processed, int imported, double fraction);
+    }
+    
+    /**
+     * One entry read from an export, before it is merged
+     */
+    private record ImportedEntry(String url, long time, String title, int visits) {
+        ImportedEntry combine(ImportedEntry other) {
+            ImportedEntry latest = other.time > time ? other : this;
+            return new ImportedEntry(url, latest.time, latest.title != null ? latest.title : title, visits + other.visits);
+        }
+    }
+    
+    private static final class ImportStats {
+        private int added;
+        private int merged;
+    }
+    
+    /**
+     * Counts bytes read, for import progress
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+        
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+        
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+        
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+        
+        long getCount() {
+            return count;
+        }
+    }
+    
+    /**
+     * Position within a paged walk over history
+     */
+    public static final class HistoryCursor {
+        final long time;
+        final int row;
+        
+        HistoryCursor(long time, int row) {
+            this.time = time;
+            this.row = row;
         }
     }
     
     /**
-     * History entry class
+     * A page of history entries plus the cursor for the next page
+     */
+    public static final class HistoryPage {
+        private final List<HistoryEntry> entries;
+        private final HistoryCursor nextCursor;
+        
+        HistoryPage(List<HistoryEntry> entries, HistoryCursor nextCursor) {
+            this.entries = entries;
+            this.nextCursor = nextCursor;
+        }
+        
+        public List<HistoryEntry> getEntries() {
+            return entries;
+        }
+        
+        /**
+         * Cursor for the following page, or null if this is the last one
+         */
+        public HistoryCursor getNextCursor() {
+            return nextCursor;
+        }
+        
+        public boolean hasMore() {
+            return nextCursor != null;
+        }
+    }
+    
+    /**
+     * History entry, a lightweight view of one row of a {@link HistoryStore} snapshot.
+     * Values are read from the snapshot on access, so they never change.
      */
     public static class HistoryEntry {
-        public String url;
-        public LocalDateTime timestamp;
-        public String title;
+        private final HistoryStore store;
+        private final int row;
         
-        public HistoryEntry(String url, LocalDateTime timestamp) {
-            this.url = url;
-            this.timestamp = timestamp;
+        HistoryEntry(HistoryStore store, int row) {
+            this.store = store;
+            this.row = row;
         }
         
         public String getUrl() {
-            return url;
+            return store.getUrl(row);
         }
         
         public LocalDateTime getTimestamp() {
-            return timestamp;
+            return fromEpochMillis(store.getTime(row));
         }
         
         public String getTitle() {
-            return title;
+            return store.getTitle(row);
+        }
+        
+        public int getVisitCount() {
+            return store.getVisitCount(row);
+        }
+        
+        /**
+         * Time of the most recent visit
+         */
+        public LocalDateTime getLastVisit() {
+            return getTimestamp();
+        }
+        
+        /**
+         * Frecency as of now: the number of visits, each decayed by its age
+         */
+        public double getFrecency() {
+            double frecencyLog = store.getFrecency(row);
+            if (frecencyLog == Double.NEGATIVE_INFINITY) {
+                return 0;
+            }
+            return Math.exp(frecencyLog - System.currentTimeMillis() * FRECENCY_DECAY_PER_MILLI);
+        }
+        
+        /**
+         * Entries are unique per URL, so views of the same URL taken from different snapshots are equal
+         */
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof HistoryEntry other)) {
+                return false;
+            }
+            return other.store == store ? other.row == row : other.getUrl().equals(getUrl());
         }
         
-        public void setTitle(String title) {
-            this.title = title;
+        @Override
+        public int hashCode() {
+            return getUrl().hashCode();
         }
     }
 }
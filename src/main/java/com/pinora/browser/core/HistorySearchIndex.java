@@ -0,0 +1,598 @@
+package com.pinora.browser.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Inverted full-text index over history URLs and titles.
+ *
+ * URLs are split into host and path/query tokens, titles into words. Each
+ * token maps to a posting list of {@link HistoryStore} rows stored as
+ * delta-encoded varints, with the fields the token appeared in packed into the
+ * low bits. Rows only ever grow, so postings are append-only; dead rows are
+ * skipped lazily. Once a quarter of a term's postings are dead the term is
+ * queued for reclaiming, and each removal copies a bounded number of postings
+ * of queued terms into fresh lists, so no single call pays for the whole index.
+ *
+ * One thread writes; {@link #snapshot} hands out read-only views that share
+ * the term map and postings. Posting lists publish their length last, and a
+ * view ignores rows beyond its store snapshot, so views can be searched from
+ * any thread without locking. Reclaimed lists replace the old ones in the
+ * map whole, so a view taken before a removal may stop matching the removed
+ * entry; {@link #clear} switches to a fresh map, leaving views on the old one
+ * intact.
+ */
+public class HistorySearchIndex {
+
+    // Field flags packed into each posting
+    private static final int FIELD_HOST = 1;
+    private static final int FIELD_PATH = 2;
+    private static final int FIELD_TITLE = 4;
+    private static final int FIELD_BITS = 3;
+
+    private static final int MAX_TOKEN_LENGTH = 64;
+    private static final int MAX_PREFIX_EXPANSIONS = 256;
+    // Postings copied while reclaiming, per dead posting a removal creates
+    private static final int RECLAIM_WORK_PER_POSTING = 8;
+    private static final int RECLAIM_MIN_WORK = 64;
+
+    private final HistoryStore store;
+    private ConcurrentSkipListMap<String, Postings> terms = new ConcurrentSkipListMap<>();
+    private final boolean frozen;
+    private int lastRow = -1;
+    // Writer-only bookkeeping of postings that point at dead rows
+    private final Map<String, Integer> deadByTerm = new HashMap<>();
+    private final LinkedHashSet<String> reclaimQueue = new LinkedHashSet<>();
+    private Reclaim reclaiming;
+
+    public HistorySearchIndex(HistoryStore store) {
+        this.store = store;
+        this.frozen = false;
+    }
+
+    private HistorySearchIndex(HistoryStore store, ConcurrentSkipListMap<String, Postings> terms) {
+        this.store = store;
+        this.terms = terms;
+        this.frozen = true;
+    }
+
+    /**
+     * Read-only view over a snapshot of the store taken at the same time
+     */
+    public HistorySearchIndex snapshot(HistoryStore frozenStore) {
+        return new HistorySearchIndex(frozenStore, terms);
+    }
+
+    /**
+     * Index a live row; rows must be added in increasing order
+     */
+    public void add(int row) {
+        checkWritable();
+        for (Map.Entry<String, Integer> token : tokenizeRow(row).entrySet()) {
+            terms.computeIfAbsent(token.getKey(), k -> new Postings()).add(row, token.getValue());
+        }
+        lastRow = row;
+    }
+
+    /**
+     * Account for a row that has been killed in the store, and reclaim a
+     * bounded share of the dead postings queued so far
+     */
+    public void remove(int row) {
+        checkWritable();
+        Map<String, Integer> tokens = tokenizeRow(row);
+        for (String term : tokens.keySet()) {
+            int dead = deadByTerm.merge(term, 1, Integer::sum);
+            queueIfWasteful(term, dead);
+        }
+        reclaim(Math.max(RECLAIM_MIN_WORK, tokens.size() * RECLAIM_WORK_PER_POSTING));
+    }
+
+    public void clear() {
+        checkWritable();
+        // Views may still be reading the old map
+        terms = new ConcurrentSkipListMap<>();
+        lastRow = -1;
+        deadByTerm.clear();
+        reclaimQueue.clear();
+        reclaiming = null;
+    }
+
+    /**
+     * Find entries matching every word of the query, best matches first.
+     * The last word is matched as a prefix so results update as the user types.
+     */
+    public int[] search(String query, int limit) {
+        List<String> words = new ArrayList<>();
+        tokenize(query, words);
+        if (words.isEmpty() || limit <= 0) {
+            return new int[0];
+        }
+
+        List<DocIterator> iterators = new ArrayList<>(words.size());
+        for (int i = 0; i < words.size() - 1; i++) {
+            DocIterator it = exactIterator(words.get(i));
+            if (it == null) {
+                return new int[0];
+            }
+            iterators.add(it);
+        }
+        // A short prefix can expand to thousands of terms; when other words already
+        // narrow the candidates, check the prefix against each candidate instead
+        String prefix = words.get(words.size() - 1);
+        SortedMap<String, Postings> expansions = terms.subMap(prefix, prefix + Character.MAX_VALUE);
+        int expansionCount = countUpTo(expansions, MAX_PREFIX_EXPANSIONS + 1);
+        if (expansionCount == 0) {
+            return new int[0];
+        }
+        String verifyPrefix = null;
+        if (iterators.isEmpty() || expansionCount <= MAX_PREFIX_EXPANSIONS) {
+            iterators.add(unionIterator(expansions));
+        } else {
+            verifyPrefix = prefix;
+        }
+        // Drive the intersection from the rarest term
+        iterators.sort(Comparator.comparingInt(DocIterator::cost));
+
+        Comparator<Scored> ranking = Comparator.<Scored>comparingInt(s -> s.score)
+            .thenComparingLong(s -> store.getTime(s.row));
+        PriorityQueue<Scored> top = new PriorityQueue<>(ranking);
+
+        DocIterator lead = iterators.get(0);
+        int target = -1;
+        while (lead.advanceTo(target + 1)) {
+            int doc = lead.doc();
+            int score = weight(lead.mask());
+            boolean matched = true;
+            for (int i = 1; i < iterators.size(); i++) {
+                DocIterator other = iterators.get(i);
+                if (!other.advanceTo(doc)) {
+                    matched = false;
+                    doc = Integer.MAX_VALUE;
+                    break;
+                }
+                if (other.doc() != doc) {
+                    matched = false;
+                    doc = other.doc() - 1;
+                    break;
+                }
+                score += weight(other.mask());
+            }
+            if (doc == Integer.MAX_VALUE) {
+                break;
+            }
+            target = doc;
+            if (!matched) {
+                continue;
+            }
+            if (!store.isLive(doc)) {
+                continue; // removed, not yet reclaimed
+            }
+            if (verifyPrefix != null) {
+                int mask = prefixMask(doc, verifyPrefix);
+                if (mask == 0) {
+                    continue;
+                }
+                score += weight(mask);
+            }
+            top.add(new Scored(doc, score));
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+
+        int[] results = new int[top.size()];
+        for (int i = results.length - 1; i >= 0; i--) {
+            results[i] = top.poll().row;
+        }
+        return results;
+    }
+
+    /**
+     * Size of the map, counting no further than {@code max}; skip list sizes are not cached
+     */
+    private static int countUpTo(SortedMap<String, Postings> map, int max) {
+        int count = 0;
+        for (Postings ignored : map.values()) {
+            if (++count >= max) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    private DocIterator exactIterator(String word) {
+        Postings postings = terms.get(word);
+        return postings == null ? null : new PostingsIterator(postings);
+    }
+
+    /**
+     * Union of the postings of several terms
+     */
+    private DocIterator unionIterator(SortedMap<String, Postings> range) {
+        if (countUpTo(range, 2) == 1) {
+            return new PostingsIterator(range.values().iterator().next());
+        }
+
+        long[] packed = new long[16];
+        int size = 0;
+        for (Postings postings : range.values()) {
+            PostingsIterator it = new PostingsIterator(postings);
+            while (it.next()) {
+                if (size == packed.length) {
+                    packed = Arrays.copyOf(packed, size * 2);
+                }
+                packed[size++] = ((long) it.doc() << FIELD_BITS) | it.mask();
+            }
+        }
+        Arrays.sort(packed, 0, size);
+
+        int[] docs = new int[size];
+        int[] masks = new int[size];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            int doc = (int) (packed[i] >>> FIELD_BITS);
+            int mask = (int) (packed[i] & ((1 << FIELD_BITS) - 1));
+            if (count > 0 && docs[count - 1] == doc) {
+                masks[count - 1] |= mask;
+            } else {
+                docs[count] = doc;
+                masks[count] = mask;
+                count++;
+            }
+        }
+        return new ArrayIterator(docs, masks, count);
+    }
+
+    /**
+     * Fields of the entry containing a token that starts with the prefix, or 0.
+     * Scans the raw text so candidates can be checked without re-tokenizing.
+     */
+    private int prefixMask(int row, String prefix) {
+        String origin = store.getOrigin(row);
+        String path = store.getPath(row);
+        String title = store.getTitle(row);
+        int mask = 0;
+        if (containsWordPrefix(origin, prefix)) mask |= FIELD_HOST;
+        if (containsWordPrefix(path, prefix)) mask |= FIELD_PATH;
+        if (title != null && containsWordPrefix(title, prefix)) mask |= FIELD_TITLE;
+        return mask;
+    }
+
+    private static boolean containsWordPrefix(String text, String prefix) {
+        int last = text.length() - prefix.length();
+        for (int i = 0; i <= last; i++) {
+            if ((i == 0 || !Character.isLetterOrDigit(text.charAt(i - 1)))
+                    && text.regionMatches(true, i, prefix, 0, prefix.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void queueIfWasteful(String term, int dead) {
+        Postings postings = terms.get(term);
+        if (postings != null && dead * 4 > postings.count
+                && (reclaiming == null || !reclaiming.term.equals(term))) {
+            reclaimQueue.add(term);
+        }
+    }
+
+    /**
+     * Copy up to {@code budget} postings of queued terms into fresh lists without
+     * their dead rows, swapping each list in once it has been copied in full
+     */
+    private void reclaim(int budget) {
+        while (budget > 0) {
+            if (reclaiming == null) {
+                if (reclaimQueue.isEmpty()) {
+                    return;
+                }
+                String term = reclaimQueue.iterator().next();
+                reclaimQueue.remove(term);
+                Postings source = terms.get(term);
+                if (source == null) {
+                    deadByTerm.remove(term);
+                    continue;
+                }
+                reclaiming = new Reclaim(term, source);
+            }
+            Reclaim r = reclaiming;
+            // Rows appended since the last step are copied too
+            r.cursor.catchUp(r.source);
+            while (budget > 0 && r.cursor.next()) {
+                if (store.isLive(r.cursor.doc())) {
+                    r.fresh.add(r.cursor.doc(), r.cursor.mask());
+                }
+                budget--;
+            }
+            if (r.cursor.index < r.source.count) {
+                return;
+            }
+            reclaiming = null;
+            int dead = deadByTerm.getOrDefault(r.term, 0) - (r.source.count - r.fresh.count);
+            if (r.fresh.count == 0) {
+                terms.remove(r.term);
+            } else {
+                terms.put(r.term, r.fresh);
+            }
+            if (dead > 0) {
+                deadByTerm.put(r.term, dead);
+                queueIfWasteful(r.term, dead);
+            } else {
+                deadByTerm.remove(r.term);
+            }
+        }
+    }
+
+    private void checkWritable() {
+        if (frozen) {
+            throw new IllegalStateException("History snapshot is read-only");
+        }
+    }
+
+    private static int weight(int mask) {
+        if ((mask & FIELD_TITLE) != 0) return 3;
+        if ((mask & FIELD_HOST) != 0) return 2;
+        return 1;
+    }
+
+    /**
+     * Distinct tokens of an entry with the fields they occur in
+     */
+    private Map<String, Integer> tokenizeRow(int row) {
+        Map<String, Integer> tokens = new HashMap<>();
+
+        List<String> words = new ArrayList<>();
+        tokenize(store.getOrigin(row), words);
+        for (String w : words) tokens.merge(w, FIELD_HOST, (a, b) -> a | b);
+        words.clear();
+        tokenize(store.getPath(row), words);
+        for (String w : words) tokens.merge(w, FIELD_PATH, (a, b) -> a | b);
+        String title = store.getTitle(row);
+        if (title != null) {
+            words.clear();
+            tokenize(title, words);
+            for (String w : words) tokens.merge(w, FIELD_TITLE, (a, b) -> a | b);
+        }
+        return tokens;
+    }
+
+    /**
+     * Split text into lower-cased runs of letters and digits
+     */
+    static void tokenize(String text, List<String> out) {
+        if (text == null) {
+            return;
+        }
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                if (word.length() < MAX_TOKEN_LENGTH) {
+                    word.append(Character.toLowerCase(c));
+                }
+            } else if (word.length() > 0) {
+                out.add(word.toString());
+                word.setLength(0);
+            }
+        }
+    }
+
+    private record Scored(int row, int score) {
+    }
+
+    /**
+     * A posting list being copied into a fresh one without its dead rows
+     */
+    private static final class Reclaim {
+        final String term;
+        final Postings source;
+        final PostingsIterator cursor;
+        final Postings fresh = new Postings();
+
+        Reclaim(String term, Postings source) {
+            this.term = term;
+            this.source = source;
+            this.cursor = new PostingsIterator(source);
+        }
+    }
+
+    /**
+     * Append-only posting list: varint((idDelta << FIELD_BITS) | fields),
+     * with a skip entry every {@link #SKIP_INTERVAL} postings.
+     *
+     * Bytes and skip entries are written before {@code count} is bumped, and
+     * grown arrays are published before they are written to, so a reader that
+     * reads {@code count} first sees every posting up to it.
+     */
+    private static final class Postings {
+        private static final int SKIP_INTERVAL = 64;
+
+        private volatile byte[] data = new byte[8];
+        private int length;
+        private volatile int count;
+        private int lastId = -1;
+        // Slot k points at posting (k + 1) * SKIP_INTERVAL
+        private volatile int[] skipBase = new int[0];    // id of the posting just before it
+        private volatile int[] skipOffset = new int[0];  // byte offset where it starts
+
+        void add(int id, int fields) {
+            if (count % SKIP_INTERVAL == 0 && count > 0) {
+                int slot = count / SKIP_INTERVAL - 1;
+                if (slot == skipBase.length) {
+                    int grown = Math.max(4, slot * 2);
+                    skipBase = Arrays.copyOf(skipBase, grown);
+                    skipOffset = Arrays.copyOf(skipOffset, grown);
+                }
+                skipBase[slot] = lastId;
+                skipOffset[slot] = length;
+            }
+            int value = ((id - lastId) << FIELD_BITS) | fields;
+            byte[] bytes = data;
+            if (length + 5 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + 5));
+                data = bytes;
+            }
+            while ((value & ~0x7F) != 0) {
+                bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+            lastId = id;
+            count = count + 1;
+        }
+
+        static int skips(int count) {
+            return count == 0 ? 0 : (count - 1) / SKIP_INTERVAL;
+        }
+    }
+
+    private interface DocIterator {
+        /** Move to the first doc >= target; false when exhausted */
+        boolean advanceTo(int target);
+
+        int doc();
+
+        int mask();
+
+        int cost();
+    }
+
+    private static final class PostingsIterator implements DocIterator {
+        // Bounded by the postings published when the iterator was created
+        private int count;
+        private byte[] data;
+        private int[] skipBase;
+        private int[] skipOffset;
+        private int offset;
+        private int index;
+        private int doc = -1;
+        private int mask;
+
+        PostingsIterator(Postings postings) {
+            catchUp(postings);
+        }
+
+        /**
+         * Extend the bound to postings appended since; grown arrays keep the bytes already read
+         */
+        void catchUp(Postings postings) {
+            this.count = postings.count;
+            this.data = postings.data;
+            this.skipBase = postings.skipBase;
+            this.skipOffset = postings.skipOffset;
+        }
+
+        boolean next() {
+            if (index >= count) {
+                return false;
+            }
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[offset++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            doc += value >>> FIELD_BITS;
+            mask = value & ((1 << FIELD_BITS) - 1);
+            index++;
+            return true;
+        }
+
+        @Override
+        public boolean advanceTo(int target) {
+            if (index > 0 && doc >= target) {
+                return true;
+            }
+            // Jump to the furthest block boundary ahead of us whose preceding id is still below the target
+            int lo = index / Postings.SKIP_INTERVAL;
+            int hi = Postings.skips(count) - 1;
+            int best = -1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (skipBase[mid] < target) {
+                    best = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            if (best >= 0) {
+                offset = skipOffset[best];
+                doc = skipBase[best];
+                index = (best + 1) * Postings.SKIP_INTERVAL;
+            }
+            while (next()) {
+                if (doc >= target) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public int doc() {
+            return doc;
+        }
+
+        @Override
+        public int mask() {
+            return mask;
+        }
+
+        @Override
+        public int cost() {
+            return count;
+        }
+    }
+
+    private static final class ArrayIterator implements DocIterator {
+        private final int[] docs;
+        private final int[] masks;
+        private final int size;
+        private int index = -1;
+
+        ArrayIterator(int[] docs, int[] masks, int size) {
+            this.docs = docs;
+            this.masks = masks;
+            this.size = size;
+        }
+
+        @Override
+        public boolean advanceTo(int target) {
+            if (index >= 0 && index < size && docs[index] >= target) {
+                return true;
+            }
+            int from = Math.max(index, 0);
+            int pos = Arrays.binarySearch(docs, from, size, target);
+            index = pos >= 0 ? pos : -pos - 1;
+            return index < size;
+        }
+
+        @Override
+        public int doc() {
+            return docs[index];
+        }
+
+        @Override
+        public int mask() {
+            return masks[index];
+        }
+
+        @Override
+        public int cost() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.pinora.browser.core;
+
+import com.pinora.browser.core.HistoryManager.HistoryCursor;
+import com.pinora.browser.core.HistoryManager.HistoryEntry;
+import com.pinora.browser.core.HistoryManager.HistoryPage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable, point-in-time view of browsing history.
+ *
+ * {@link HistoryManager} publishes a new snapshot after every change. Taking
+ * one is lock-free, and reading it never blocks or copies the history, so the
+ * UI and background tasks can query a consistent state while the writer moves
+ * on. Entries handed out by a snapshot keep showing the values it captured.
+ */
+public class HistorySnapshot {
+
+    private final HistoryStore store;
+    private final HistoryTimeIndex timeIndex;
+    private final HistorySearchIndex searchIndex;
+    private final HistoryDomainIndex domainIndex;
+    private final int[] topRows;
+    private final long totalVisits;
+
+    HistorySnapshot(HistoryStore store, HistoryTimeIndex timeIndex, HistorySearchIndex searchIndex,
+                    HistoryDomainIndex domainIndex, int[] topRows, long totalVisits) {
+        this.store = store;
+        this.timeIndex = timeIndex;
+        this.searchIndex = searchIndex;
+        this.domainIndex = domainIndex;
+        this.topRows = topRows;
+        this.totalVisits = totalVisits;
+    }
+
+    /**
+     * Number of entries
+     */
+    public int size() {
+        return store.getLiveCount();
+    }
+
+    public long getTotalVisits() {
+        return totalVisits;
+    }
+
+    /**
+     * Approximate heap used by the underlying store, in bytes
+     */
+    public long getMemoryUsage() {
+        return store.getMemoryUsage();
+    }
+
+    /**
+     * Walk the entries newest first without materialising a list
+     */
+    public Iterable<HistoryEntry> entries() {
+        return () -> new Iterator<>() {
+            private int next = store.getNewest();
+
+            @Override
+            public boolean hasNext() {
+                return next != HistoryStore.NONE;
+            }
+
+            @Override
+            public HistoryEntry next() {
+                if (next == HistoryStore.NONE) {
+                    throw new NoSuchElementException();
+                }
+                int row = next;
+                next = store.getOlder(row);
+                return view(row);
+            }
+        };
+    }
+
+    /**
+     * All entries, newest first
+     */
+    public List<HistoryEntry> getHistory() {
+        List<HistoryEntry> result = new ArrayList<>(store.getLiveCount());
+        for (HistoryEntry entry : entries()) {
+            result.add(entry);
+        }
+        return result;
+    }
+
+    /**
+     * Most recent entry, or null when history is empty
+     */
+    public HistoryEntry getNewest() {
+        int row = store.getNewest();
+        return row != HistoryStore.NONE ? view(row) : null;
+    }
+
+    /**
+     * Least recent entry, or null when history is empty
+     */
+    public HistoryEntry getOldest() {
+        int row = store.getOldest();
+        return row != HistoryStore.NONE ? view(row) : null;
+    }
+
+    /**
+     * Entry for a URL, or null if it is not in history
+     */
+    public HistoryEntry getEntry(String url) {
+        int row = url != null ? store.find(url) : HistoryStore.NONE;
+        return row != HistoryStore.NONE ? view(row) : null;
+    }
+
+    public boolean hasVisited(String url) {
+        return url != null && store.find(url) != HistoryStore.NONE;
+    }
+
+    /**
+     * Number of recorded visits to a URL, or 0 if it is not in history
+     */
+    public int getVisitCount(String url) {
+        int row = url != null ? store.find(url) : HistoryStore.NONE;
+        return row != HistoryStore.NONE ? store.getVisitCount(row) : 0;
+    }
+
+    /**
+     * Best matches for a query, see {@link HistoryManager#searchHistory(String, int)}
+     */
+    public List<HistoryEntry> search(String query, int limit) {
+        if (query == null || query.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return views(searchIndex.search(query, limit));
+    }
+
+    /**
+     * Entries of a normalized host and its subdomains, newest first
+     */
+    public List<HistoryEntry> getEntriesUnder(String domain) {
+        return domain != null ? views(domainIndex.rowsUnder(domain)) : new ArrayList<>();
+    }
+
+    /**
+     * Entries with {@code from <= time < to} (epoch millis), newest first
+     */
+    public List<HistoryEntry> getRange(long from, long to) {
+        return views(timeIndex.range(from, to, 0, HistoryStore.NONE, Integer.MAX_VALUE));
+    }
+
+    /**
+     * One page of entries with {@code from <= time < to} (epoch millis), newest first,
+     * continuing after the cursor when it is not null
+     */
+    public HistoryPage getPage(long from, long to, HistoryCursor cursor, int pageSize) {
+        int[] rows = cursor != null
+            ? timeIndex.range(from, to, cursor.time, cursor.row, pageSize + 1)
+            : timeIndex.range(from, to, 0, HistoryStore.NONE, pageSize + 1);
+        HistoryCursor next = null;
+        if (rows.length > pageSize) {
+            rows = Arrays.copyOf(rows, pageSize);
+            int last = rows[pageSize - 1];
+            next = new HistoryCursor(store.getTime(last), last);
+        }
+        return new HistoryPage(views(rows), next);
+    }
+
+    /**
+     * Highest-frecency entries, best first
+     */
+    public List<HistoryEntry> getTopSites(int limit) {
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+        if (limit > HistoryTopSites.CAPACITY) {
+            return views(HistoryTopSites.select(store, limit));
+        }
+        return views(Arrays.copyOf(topRows, Math.min(limit, topRows.length)));
+    }
+
+    private HistoryEntry view(int row) {
+        return new HistoryEntry(store, row);
+    }
+
+    private List<HistoryEntry> views(int[] rows) {
+        List<HistoryEntry> result = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            result.add(view(row));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,573 @@
+package com.pinora.browser.core;
+
+import com.pinora.browser.core.HistoryColumns.IntColumn;
+import com.pinora.browser.core.HistoryColumns.LongColumn;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Columnar, primitive-backed storage for history entries.
+ *
+ * Each entry is a row number into parallel columns: visit time as epoch
+ * millis, a dictionary-coded origin (scheme, host and port), and offsets of
+ * the UTF-8 path and title in a shared byte arena. Rows are only ever
+ * appended, so row numbers grow monotonically and double as search document
+ * ids; removed rows are marked dead and reclaimed by {@link #compact()}.
+ * The recency list, the per-origin row lists and the URL lookup table are
+ * threaded through the same columns, so no per-entry objects are kept.
+ *
+ * Columns are copy-on-write chunks (see {@link HistoryColumns}), so
+ * {@link #snapshot()} is cheap. A snapshot is immutable and may be read from
+ * any thread while a single writer keeps modifying the live store.
+ */
+public class HistoryStore {
+
+    public static final int NONE = -1;
+
+    private static final int FLAG_LIVE = 1;
+    private static final int FLAG_TOP_RANKED = 2;
+    private static final int TOMBSTONE = -2;
+
+    // Row columns
+    private final LongColumn times;
+    private final IntColumn origins;
+    private final IntColumn textOffsets;
+    private final IntColumn pathLengths;
+    private final IntColumn titleLengths;   // -1 when there is no title
+    private final IntColumn urlHashes;
+    private final IntColumn visitCounts;
+    private final LongColumn frecencies;    // raw double bits
+    private final IntColumn newer;
+    private final IntColumn older;
+    private final IntColumn flags;
+    private final IntColumn nextInOrigin;
+    private final IntColumn prevInOrigin;
+    private int rows;
+    private int liveRows;
+
+    // Origin dictionary; names are append-only so snapshots can share the array
+    private String[] originNames;
+    private int originCount;
+    private final Map<String, Integer> originIds;   // null in snapshots
+    private final IntColumn originFirstRow;         // head of each origin's live row list
+
+    // UTF-8 path and title bytes, appended in row order and never rewritten
+    private byte[] arena;
+    private int arenaLength;
+
+    // Open-addressing URL -> row table
+    private IntColumn table;
+    private int tableCapacity;
+    private int tableUsed;   // live rows plus tombstones
+
+    private int newest = NONE;
+    private int oldest = NONE;
+
+    private final boolean frozen;
+
+    public HistoryStore() {
+        times = new LongColumn();
+        origins = new IntColumn(0);
+        textOffsets = new IntColumn(0);
+        pathLengths = new IntColumn(0);
+        titleLengths = new IntColumn(0);
+        urlHashes = new IntColumn(0);
+        visitCounts = new IntColumn(0);
+        frecencies = new LongColumn();
+        newer = new IntColumn(NONE);
+        older = new IntColumn(NONE);
+        flags = new IntColumn(0);
+        nextInOrigin = new IntColumn(NONE);
+        prevInOrigin = new IntColumn(NONE);
+        originNames = new String[64];
+        originIds = new HashMap<>();
+        originFirstRow = new IntColumn(NONE);
+        arena = new byte[1024];
+        tableCapacity = 64;
+        table = newTable(tableCapacity);
+        frozen = false;
+    }
+
+    private HistoryStore(HistoryStore source) {
+        times = source.times.freeze();
+        origins = source.origins.freeze();
+        textOffsets = source.textOffsets.freeze();
+        pathLengths = source.pathLengths.freeze();
+        titleLengths = source.titleLengths.freeze();
+        urlHashes = source.urlHashes.freeze();
+        visitCounts = source.visitCounts.freeze();
+        frecencies = source.frecencies.freeze();
+        newer = source.newer.freeze();
+        older = source.older.freeze();
+        flags = source.flags.freeze();
+        nextInOrigin = source.nextInOrigin.freeze();
+        prevInOrigin = source.prevInOrigin.freeze();
+        rows = source.rows;
+        liveRows = source.liveRows;
+        originNames = source.originNames;
+        originCount = source.originCount;
+        originIds = null;
+        originFirstRow = source.originFirstRow.freeze();
+        arena = source.arena;
+        arenaLength = source.arenaLength;
+        table = source.table.freeze();
+        tableCapacity = source.tableCapacity;
+        tableUsed = source.tableUsed;
+        newest = source.newest;
+        oldest = source.oldest;
+        frozen = true;
+    }
+
+    /**
+     * Read-only view of the current state that later writes do not affect.
+     * Costs one pointer copy per column chunk; writes then copy only the chunks they touch.
+     */
+    public HistoryStore snapshot() {
+        return frozen ? this : new HistoryStore(this);
+    }
+
+    /**
+     * Append a live row for the URL. The caller must ensure it is not already present.
+     */
+    public int add(String url, long time, String title) {
+        checkWritable();
+        int row = rows;
+        ensureRowCapacity(row + 1);
+        int originEnd = originEnd(url);
+        byte[] path = url.substring(originEnd).getBytes(StandardCharsets.UTF_8);
+        byte[] titleBytes = title != null ? title.getBytes(StandardCharsets.UTF_8) : null;
+
+        times.set(row, time);
+        origins.set(row, originId(url.substring(0, originEnd)));
+        textOffsets.set(row, arenaLength);
+        pathLengths.set(row, path.length);
+        titleLengths.set(row, titleBytes != null ? titleBytes.length : -1);
+        urlHashes.set(row, url.hashCode());
+        visitCounts.set(row, 0);
+        frecencies.set(row, Double.doubleToRawLongBits(Double.NEGATIVE_INFINITY));
+        newer.set(row, NONE);
+        older.set(row, NONE);
+        flags.set(row, FLAG_LIVE);
+        rows++;
+        linkToOrigin(row);
+
+        appendToArena(path);
+        if (titleBytes != null) {
+            appendToArena(titleBytes);
+        }
+        insertIntoTable(row);
+        liveRows++;
+        return row;
+    }
+
+    /**
+     * Live row for the URL, or {@link #NONE}
+     */
+    public int find(String url) {
+        int hash = url.hashCode();
+        int mask = tableCapacity - 1;
+        byte[] path = null;
+        for (int i = mix(hash) & mask; ; i = (i + 1) & mask) {
+            int row = table.get(i);
+            if (row == NONE) {
+                return NONE;
+            }
+            if (row == TOMBSTONE || urlHashes.get(row) != hash) {
+                continue;
+            }
+            String origin = getOrigin(row);
+            if (!url.startsWith(origin) || originEnd(url) != origin.length()) {
+                continue;
+            }
+            if (path == null) {
+                path = url.substring(origin.length()).getBytes(StandardCharsets.UTF_8);
+            }
+            int offset = textOffsets.get(row);
+            if (Arrays.equals(arena, offset, offset + pathLengths.get(row), path, 0, path.length)) {
+                return row;
+            }
+        }
+    }
+
+    /**
+     * Mark a row dead and drop it from the URL table. Its data stays readable
+     * until the next compaction, so indexes can still look it up to remove it.
+     */
+    public void kill(int row) {
+        checkWritable();
+        if (!isLive(row)) {
+            return;
+        }
+        int mask = tableCapacity - 1;
+        for (int i = mix(urlHashes.get(row)) & mask; table.get(i) != NONE; i = (i + 1) & mask) {
+            if (table.get(i) == row) {
+                table.set(i, TOMBSTONE);
+                break;
+            }
+        }
+        flags.set(row, flags.get(row) & ~FLAG_LIVE);
+        liveRows--;
+        unlinkFromOrigin(row);
+    }
+
+    public void linkFirst(int row) {
+        checkWritable();
+        newer.set(row, NONE);
+        older.set(row, newest);
+        if (newest != NONE) {
+            newer.set(newest, row);
+        } else {
+            oldest = row;
+        }
+        newest = row;
+    }
+
+    public void linkLast(int row) {
+        checkWritable();
+        older.set(row, NONE);
+        newer.set(row, oldest);
+        if (oldest != NONE) {
+            older.set(oldest, row);
+        } else {
+            newest = row;
+        }
+        oldest = row;
+    }
+
+    public void unlink(int row) {
+        checkWritable();
+        int n = newer.get(row);
+        int o = older.get(row);
+        if (n != NONE) {
+            older.set(n, o);
+        } else if (newest == row) {
+            newest = o;
+        }
+        if (o != NONE) {
+            newer.set(o, n);
+        } else if (oldest == row) {
+            oldest = n;
+        }
+        newer.set(row, NONE);
+        older.set(row, NONE);
+    }
+
+    /**
+     * Copy the live rows, in row order, into a fresh store without dead rows
+     * or arena garbage. Existing rows of this store are left untouched.
+     */
+    public HistoryStore compact() {
+        HistoryStore compacted = new HistoryStore();
+        compacted.ensureRowCapacity(liveRows);
+        int[] remap = new int[rows];
+        for (int row = 0; row < rows; row++) {
+            if (!isLive(row)) {
+                remap[row] = NONE;
+                continue;
+            }
+            int copy = compacted.add(getUrl(row), getTime(row), getTitle(row));
+            compacted.setVisitCount(copy, getVisitCount(row));
+            compacted.setFrecency(copy, getFrecency(row));
+            remap[row] = copy;
+        }
+        for (int row = oldest; row != NONE; row = newer.get(row)) {
+            if (remap[row] != NONE) {
+                compacted.linkFirst(remap[row]);
+            }
+        }
+        return compacted;
+    }
+
+    public void clear() {
+        checkWritable();
+        // Columns are overwritten as rows are added again; snapshots keep their own chunks
+        rows = 0;
+        liveRows = 0;
+        originNames = new String[64];
+        originCount = 0;
+        originIds.clear();
+        arena = new byte[1024];
+        arenaLength = 0;
+        tableCapacity = 64;
+        table = newTable(tableCapacity);
+        tableUsed = 0;
+        newest = NONE;
+        oldest = NONE;
+    }
+
+    /**
+     * Whether this is a read-only snapshot
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    public int getNewest() {
+        return newest;
+    }
+
+    public int getOldest() {
+        return oldest;
+    }
+
+    public int getNewer(int row) {
+        return newer.get(row);
+    }
+
+    public int getOlder(int row) {
+        return older.get(row);
+    }
+
+    /**
+     * Number of rows ever allocated, live or dead; valid rows are {@code 0..size()-1}
+     */
+    public int size() {
+        return rows;
+    }
+
+    public int getLiveCount() {
+        return liveRows;
+    }
+
+    public int getDeadCount() {
+        return rows - liveRows;
+    }
+
+    public boolean isLive(int row) {
+        return row >= 0 && row < rows && (flags.get(row) & FLAG_LIVE) != 0;
+    }
+
+    public boolean isTopRanked(int row) {
+        return (flags.get(row) & FLAG_TOP_RANKED) != 0;
+    }
+
+    public void setTopRanked(int row, boolean ranked) {
+        checkWritable();
+        int value = flags.get(row);
+        flags.set(row, ranked ? value | FLAG_TOP_RANKED : value & ~FLAG_TOP_RANKED);
+    }
+
+    public long getTime(int row) {
+        return times.get(row);
+    }
+
+    public void setTime(int row, long time) {
+        checkWritable();
+        times.set(row, time);
+    }
+
+    public int getVisitCount(int row) {
+        return visitCounts.get(row);
+    }
+
+    public void setVisitCount(int row, int count) {
+        checkWritable();
+        visitCounts.set(row, count);
+    }
+
+    public double getFrecency(int row) {
+        return Double.longBitsToDouble(frecencies.get(row));
+    }
+
+    public void setFrecency(int row, double frecency) {
+        checkWritable();
+        frecencies.set(row, Double.doubleToRawLongBits(frecency));
+    }
+
+    /**
+     * Dictionary id of the row's origin
+     */
+    public int getOriginId(int row) {
+        return origins.get(row);
+    }
+
+    /**
+     * Number of distinct origins ever stored; ids are {@code 0..getOriginCount()-1}
+     */
+    public int getOriginCount() {
+        return originCount;
+    }
+
+    public String getOriginName(int originId) {
+        return originNames[originId];
+    }
+
+    /**
+     * First live row of an origin, or {@link #NONE}; continue with {@link #getNextInOrigin}
+     */
+    public int getFirstRowOfOrigin(int originId) {
+        return originFirstRow.get(originId);
+    }
+
+    public int getNextInOrigin(int row) {
+        return nextInOrigin.get(row);
+    }
+
+    public String getUrl(int row) {
+        return getOrigin(row) + getPath(row);
+    }
+
+    /**
+     * Scheme, host and port of the URL, e.g. {@code https://example.com:8080}
+     */
+    public String getOrigin(int row) {
+        return originNames[origins.get(row)];
+    }
+
+    /**
+     * Everything after the origin: path, query and fragment
+     */
+    public String getPath(int row) {
+        return new String(arena, textOffsets.get(row), pathLengths.get(row), StandardCharsets.UTF_8);
+    }
+
+    public String getTitle(int row) {
+        int length = titleLengths.get(row);
+        if (length < 0) {
+            return null;
+        }
+        return new String(arena, textOffsets.get(row) + pathLengths.get(row), length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Approximate heap used by the columns, dictionary and arena, in bytes
+     */
+    public long getMemoryUsage() {
+        long perRow = 8L + 4 + 4 + 4 + 4 + 4 + 4 + 8 + 4 + 4 + 4 + 4 + 4;
+        long dictionary = 0;
+        for (int i = 0; i < originCount; i++) {
+            dictionary += 64 + originNames[i].length();
+        }
+        return perRow * times.capacity() + 4L * tableCapacity + arena.length + dictionary;
+    }
+
+    /**
+     * Index just past the origin (scheme and authority) of a URL
+     */
+    public static int originEnd(String url) {
+        int start = url.indexOf("://");
+        int end = start < 0 ? 0 : start + 3;
+        while (end < url.length() && "/?#".indexOf(url.charAt(end)) < 0) {
+            end++;
+        }
+        return end;
+    }
+
+    private void checkWritable() {
+        if (frozen) {
+            throw new IllegalStateException("History snapshot is read-only");
+        }
+    }
+
+    private int originId(String origin) {
+        Integer id = originIds.get(origin);
+        if (id == null) {
+            id = originCount;
+            if (originCount == originNames.length) {
+                // Snapshots keep the old array; slots they can see are never rewritten
+                originNames = Arrays.copyOf(originNames, originCount * 2);
+            }
+            originNames[originCount++] = origin;
+            originIds.put(origin, id);
+            originFirstRow.ensureCapacity(originCount);
+            originFirstRow.set(id, NONE);
+        }
+        return id;
+    }
+
+    private void linkToOrigin(int row) {
+        int origin = origins.get(row);
+        int first = originFirstRow.get(origin);
+        prevInOrigin.set(row, NONE);
+        nextInOrigin.set(row, first);
+        if (first != NONE) {
+            prevInOrigin.set(first, row);
+        }
+        originFirstRow.set(origin, row);
+    }
+
+    private void unlinkFromOrigin(int row) {
+        int next = nextInOrigin.get(row);
+        int prev = prevInOrigin.get(row);
+        if (prev != NONE) {
+            nextInOrigin.set(prev, next);
+        } else {
+            originFirstRow.set(origins.get(row), next);
+        }
+        if (next != NONE) {
+            prevInOrigin.set(next, prev);
+        }
+    }
+
+    private void appendToArena(byte[] bytes) {
+        if (arenaLength + bytes.length > arena.length) {
+            // Snapshots keep the old array; bytes they can see are never rewritten
+            arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaLength + bytes.length));
+        }
+        System.arraycopy(bytes, 0, arena, arenaLength, bytes.length);
+        arenaLength += bytes.length;
+    }
+
+    private void insertIntoTable(int row) {
+        if ((tableUsed + 1) * 2 > tableCapacity) {
+            rehash(liveRows * 4 > tableCapacity ? tableCapacity * 2 : tableCapacity);
+        }
+        int mask = tableCapacity - 1;
+        int i = mix(urlHashes.get(row)) & mask;
+        while (table.get(i) != NONE) {
+            i = (i + 1) & mask;
+        }
+        table.set(i, row);
+        tableUsed++;
+    }
+
+    /**
+     * Rebuild the table at the given capacity, dropping tombstones
+     */
+    private void rehash(int capacity) {
+        tableCapacity = Math.max(64, capacity);
+        table = newTable(tableCapacity);
+        tableUsed = 0;
+        int mask = tableCapacity - 1;
+        for (int row = 0; row < rows; row++) {
+            if (!isLive(row)) {
+                continue;
+            }
+            int i = mix(urlHashes.get(row)) & mask;
+            while (table.get(i) != NONE) {
+                i = (i + 1) & mask;
+            }
+            table.set(i, row);
+            tableUsed++;
+        }
+    }
+
+    private void ensureRowCapacity(int capacity) {
+        times.ensureCapacity(capacity);
+        origins.ensureCapacity(capacity);
+        textOffsets.ensureCapacity(capacity);
+        pathLengths.ensureCapacity(capacity);
+        titleLengths.ensureCapacity(capacity);
+        urlHashes.ensureCapacity(capacity);
+        visitCounts.ensureCapacity(capacity);
+        frecencies.ensureCapacity(capacity);
+        newer.ensureCapacity(capacity);
+        older.ensureCapacity(capacity);
+        flags.ensureCapacity(capacity);
+        nextInOrigin.ensureCapacity(capacity);
+        prevInOrigin.ensureCapacity(capacity);
+    }
+
+    private static IntColumn newTable(int capacity) {
+        IntColumn table = new IntColumn(NONE);
+        table.ensureCapacity(capacity);
+        return table;
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,272 @@
+package com.pinora.browser.core;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Navigable index of history rows bucketed by epoch day and hour.
+ *
+ * Range queries only visit the buckets overlapping the range, and results are
+ * produced newest first so callers can page through them with a cursor instead
+ * of materialising the whole history. Each bucket is a sorted {@code int[]} of
+ * rows ordered by (visit time, row).
+ *
+ * Buckets are grouped into chunks of {@value #HOURS_PER_CHUNK} hours. Chunks
+ * and buckets are copied on their first write after a {@link #snapshot}, so a
+ * snapshot only copies the chunk map and stays valid while the live index
+ * keeps changing.
+ */
+public class HistoryTimeIndex {
+
+    private static final long MILLIS_PER_HOUR = 60L * 60 * 1000;
+    private static final int CHUNK_SHIFT = 8;
+    private static final int HOURS_PER_CHUNK = 1 << CHUNK_SHIFT;
+
+    private final HistoryStore store;
+    private final TreeMap<Long, Chunk> chunks;
+    private final boolean frozen;
+    private int version;
+    private int bucketCount;
+
+    public HistoryTimeIndex(HistoryStore store) {
+        this.store = store;
+        this.chunks = new TreeMap<>();
+        this.frozen = false;
+    }
+
+    private HistoryTimeIndex(HistoryStore store, HistoryTimeIndex source) {
+        this.store = store;
+        this.chunks = new TreeMap<>(source.chunks);
+        this.frozen = true;
+        this.bucketCount = source.bucketCount;
+    }
+
+    /**
+     * Read-only copy over a snapshot of the store taken at the same time
+     */
+    public HistoryTimeIndex snapshot(HistoryStore frozenStore) {
+        version++;
+        return new HistoryTimeIndex(frozenStore, this);
+    }
+
+    /**
+     * Add a row; its visit time must not change until it is removed
+     */
+    public void add(int row) {
+        long time = store.getTime(row);
+        long hour = bucketKey(time);
+        Chunk chunk = writableChunk(hour >> CHUNK_SHIFT, true);
+        int slot = (int) (hour & (HOURS_PER_CHUNK - 1));
+        Bucket bucket = chunk.buckets[slot];
+        if (bucket == null) {
+            bucket = new Bucket(new int[4], 0, version);
+            chunk.buckets[slot] = bucket;
+            bucketCount++;
+        } else if (bucket.version != version) {
+            bucket = new Bucket(Arrays.copyOf(bucket.rows, bucket.size + 4), bucket.size, version);
+            chunk.buckets[slot] = bucket;
+        }
+        bucket.insert(store, time, row);
+        chunk.used++;
+    }
+
+    public void remove(int row) {
+        long time = store.getTime(row);
+        long hour = bucketKey(time);
+        Chunk chunk = writableChunk(hour >> CHUNK_SHIFT, false);
+        if (chunk == null) {
+            return;
+        }
+        int slot = (int) (hour & (HOURS_PER_CHUNK - 1));
+        Bucket bucket = chunk.buckets[slot];
+        if (bucket == null || !bucket.contains(store, time, row)) {
+            return;
+        }
+        if (bucket.size == 1) {
+            chunk.buckets[slot] = null;
+            bucketCount--;
+        } else {
+            if (bucket.version != version) {
+                bucket = new Bucket(bucket.rows.clone(), bucket.size, version);
+                chunk.buckets[slot] = bucket;
+            }
+            bucket.delete(store, time, row);
+        }
+        if (--chunk.used == 0) {
+            chunks.remove(hour >> CHUNK_SHIFT);
+        }
+    }
+
+    public void clear() {
+        checkWritable();
+        chunks.clear();
+        bucketCount = 0;
+    }
+
+    /**
+     * Collect up to {@code limit} rows with {@code from <= time < to} (epoch millis), newest first,
+     * continuing strictly after the row ({@code afterTime}, {@code afterRow}) when
+     * {@code afterRow} is not {@link HistoryStore#NONE}.
+     */
+    public int[] range(long from, long to, long afterTime, int afterRow, int limit) {
+        if (limit <= 0 || chunks.isEmpty() || from >= to) {
+            return new int[0];
+        }
+
+        long low = bucketKey(from);
+        long high = bucketKey(to - 1);
+        if (afterRow != HistoryStore.NONE) {
+            high = Math.min(high, bucketKey(afterTime));
+        }
+        if (low > high) {
+            return new int[0];
+        }
+        int[] result = new int[Math.min(limit, 64)];
+        int count = 0;
+        NavigableMap<Long, Chunk> window = chunks.subMap(low >> CHUNK_SHIFT, true, high >> CHUNK_SHIFT, true);
+
+        for (Map.Entry<Long, Chunk> entry : window.descendingMap().entrySet()) {
+            long base = entry.getKey() << CHUNK_SHIFT;
+            Bucket[] buckets = entry.getValue().buckets;
+            int top = (int) Math.min(HOURS_PER_CHUNK - 1, high - base);
+            int bottom = (int) Math.max(0, low - base);
+            for (int slot = top; slot >= bottom; slot--) {
+                Bucket bucket = buckets[slot];
+                if (bucket == null) {
+                    continue;
+                }
+                int i = bucket.size - 1;
+                if (afterRow != HistoryStore.NONE) {
+                    i = bucket.position(store, afterTime, afterRow) - 1;
+                }
+                for (; i >= 0; i--) {
+                    int row = bucket.rows[i];
+                    long time = store.getTime(row);
+                    if (time >= to) {
+                        continue;
+                    }
+                    if (time < from) {
+                        return Arrays.copyOf(result, count);
+                    }
+                    if (count == result.length) {
+                        result = Arrays.copyOf(result, Math.min(limit, count * 2));
+                    }
+                    result[count++] = row;
+                    if (count >= limit) {
+                        return result;
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Number of non-empty hour buckets
+     */
+    public int getBucketCount() {
+        return bucketCount;
+    }
+
+    private static long bucketKey(long time) {
+        return Math.floorDiv(time, MILLIS_PER_HOUR);
+    }
+
+    private void checkWritable() {
+        if (frozen) {
+            throw new IllegalStateException("History snapshot is read-only");
+        }
+    }
+
+    /**
+     * Chunk owned by the current version, copying one shared with a snapshot
+     */
+    private Chunk writableChunk(long key, boolean create) {
+        checkWritable();
+        Chunk chunk = chunks.get(key);
+        if (chunk == null) {
+            if (!create) {
+                return null;
+            }
+            chunk = new Chunk(new Bucket[HOURS_PER_CHUNK], 0, version);
+            chunks.put(key, chunk);
+        } else if (chunk.version != version) {
+            chunk = new Chunk(chunk.buckets.clone(), chunk.used, version);
+            chunks.put(key, chunk);
+        }
+        return chunk;
+    }
+
+    /**
+     * Hour buckets of one chunk and the number of rows in them
+     */
+    private static final class Chunk {
+        private final Bucket[] buckets;
+        private int used;
+        private final int version;
+
+        Chunk(Bucket[] buckets, int used, int version) {
+            this.buckets = buckets;
+            this.used = used;
+            this.version = version;
+        }
+    }
+
+    /**
+     * Rows of one hour, sorted by (time, row). Only modified while its
+     * version is current, i.e. before any snapshot could have seen it.
+     * Shared with snapshots, so times are read from the caller's store.
+     */
+    private static final class Bucket {
+        private int[] rows;
+        private int size;
+        private final int version;
+
+        Bucket(int[] rows, int size, int version) {
+            this.rows = rows;
+            this.size = size;
+            this.version = version;
+        }
+
+        void insert(HistoryStore store, long time, int row) {
+            int at = position(store, time, row);
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+            }
+            System.arraycopy(rows, at, rows, at + 1, size - at);
+            rows[at] = row;
+            size++;
+        }
+
+        boolean contains(HistoryStore store, long time, int row) {
+            int at = position(store, time, row);
+            return at < size && rows[at] == row;
+        }
+
+        void delete(HistoryStore store, long time, int row) {
+            int at = position(store, time, row);
+            System.arraycopy(rows, at + 1, rows, at, size - at - 1);
+            size--;
+        }
+
+        /**
+         * Index of the first row not ordered before (time, row)
+         */
+        int position(HistoryStore store, long time, int row) {
+            int lo = 0;
+            int hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                long t = store.getTime(rows[mid]);
+                if (t < time || (t == time && rows[mid] < row)) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.pinora.browser.core;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+
+/**
+ * Bounded, online-maintained set of the highest-frecency history rows.
+ *
+ * Frecency scores are kept in a time-invariant log form (see
+ * {@link HistoryManager.HistoryEntry#getFrecency()}), so the relative order of
+ * entries only changes when they are visited. That lets the top entries be
+ * kept sorted incrementally instead of ranking the whole history per query.
+ *
+ * The ranking keeps {@link #BUFFER} candidates, more than it reports, so
+ * entries leaving history are replaced from the spare candidates; the whole
+ * history is rescanned only once removals eat into the reported top.
+ */
+public class HistoryTopSites {
+
+    public static final int CAPACITY = 64;
+    static final int BUFFER = CAPACITY * 4;
+
+    private final HistoryStore store;
+    private final Comparator<Integer> ranking;
+    // The best ranked.size() live rows; every other live row ranks below them
+    private final TreeSet<Integer> ranked;
+    // Whether every live row is ranked, so any offered row belongs in the ranking
+    private boolean exhaustive = true;
+
+    public HistoryTopSites(HistoryStore store) {
+        this.store = store;
+        this.ranking = ranking(store);
+        this.ranked = new TreeSet<>(ranking);
+    }
+
+    private static Comparator<Integer> ranking(HistoryStore store) {
+        return Comparator.<Integer>comparingDouble(store::getFrecency)
+            .reversed()
+            .thenComparingInt(row -> row);
+    }
+
+    /**
+     * Take the row out of the ranking before its score changes;
+     * follow up with {@link #offer} once the update is done.
+     */
+    public void detach(int row) {
+        if (store.isTopRanked(row)) {
+            ranked.remove(row);
+            store.setTopRanked(row, false);
+        }
+    }
+
+    /**
+     * Consider a row for the ranking
+     */
+    public void offer(int row) {
+        if (ranked.size() >= BUFFER) {
+            int lowest = ranked.last();
+            if (ranking.compare(row, lowest) >= 0) {
+                exhaustive = false;
+                return;
+            }
+            ranked.pollLast();
+            store.setTopRanked(lowest, false);
+            // Anything displaced can only come back through a visit, so no rescan is needed
+            exhaustive = false;
+        } else if (!exhaustive && !ranked.isEmpty() && ranking.compare(row, ranked.last()) >= 0) {
+            // Unranked rows may outrank this one; it waits for the next rescan
+            return;
+        }
+        ranked.add(row);
+        store.setTopRanked(row, true);
+    }
+
+    /**
+     * Drop a row that is leaving history
+     */
+    public void remove(int row) {
+        detach(row);
+    }
+
+    public void clear() {
+        for (int row : ranked) {
+            store.setTopRanked(row, false);
+        }
+        ranked.clear();
+        exhaustive = true;
+    }
+
+    /**
+     * Whether removals have used up the spare candidates, leaving fewer ranked
+     * rows than history could supply
+     */
+    public boolean needsRebuild() {
+        return !exhaustive && ranked.size() < Math.min(CAPACITY, store.getLiveCount());
+    }
+
+    /**
+     * Rank every live row from scratch
+     */
+    public void rebuild() {
+        clear();
+        for (int row = 0; row < store.size(); row++) {
+            if (store.isLive(row)) {
+                offer(row);
+            }
+        }
+    }
+
+    /**
+     * Up to {@code limit} (at most {@link #CAPACITY}) rows, best first
+     */
+    public int[] top(int limit) {
+        int[] result = new int[Math.min(Math.min(limit, CAPACITY), ranked.size())];
+        int count = 0;
+        for (int row : ranked) {
+            if (count >= result.length) {
+                break;
+            }
+            result[count++] = row;
+        }
+        return result;
+    }
+
+    /**
+     * Select the best {@code limit} live rows of a store (or store snapshot) with
+     * a bounded heap, for requests larger than the online ranking holds
+     */
+    public static int[] select(HistoryStore store, int limit) {
+        Comparator<Integer> ranking = ranking(store);
+        PriorityQueue<Integer> heap = new PriorityQueue<>(ranking.reversed());
+        for (int row = 0; row < store.size(); row++) {
+            if (!store.isLive(row)) {
+                continue;
+            }
+            if (heap.size() < limit) {
+                heap.add(row);
+            } else if (ranking.compare(row, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(row);
+            }
+        }
+        int[] result = new int[heap.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = heap.poll();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,306 @@
+package com.pinora.browser.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Metadata of one stored HTTP response: status, headers, the request header
+ * values it varies on and when it was fetched. The body lives in the
+ * {@link CacheBlobStore} of {@link CacheManager}. Freshness follows RFC 9111 for a
+ * private cache. Instances are immutable once stored; revalidation produces
+ * a new entry.
+ */
+public class HttpCacheEntry {
+
+    /** Status codes a response may be stored for without explicit freshness (RFC 9110 section 15.1) */
+    static final Set<Integer> HEURISTICALLY_CACHEABLE = Set.of(200, 203, 204, 300, 301, 308, 404, 405, 410, 414, 501);
+    private static final long MAX_HEURISTIC_LIFETIME = 24L * 60 * 60 * 1000;
+
+    private String key;
+    private String method;                          // GET, or HEAD for a header-only entry
+    private String statusLine;
+    private int statusCode;
+    private Map<String, List<String>> headers;      // response headers, without the status line
+    private Map<String, String> varyValues;         // lower-case request header name -> value sent
+    private long requestTime;
+    private long responseTime;
+    private long bodyLength;                        // -1 for a header-only entry
+    private int blobSlab;                           // where the body lives in the blob store
+    private long blobOffset;
+    private String cipherSuite;                     // HTTPS only
+    private List<String> serverCertificates;        // HTTPS only, Base64 DER
+    private transient CacheBlobStore.Blob blob;     // set while the entry is in the cache
+
+    HttpCacheEntry() {
+        // For Gson
+    }
+
+    public HttpCacheEntry(String key, String method, String statusLine, int statusCode,
+                          Map<String, List<String>> headers, Map<String, String> varyValues,
+                          long requestTime, long responseTime) {
+        this.key = key;
+        this.method = method;
+        this.statusLine = statusLine;
+        this.statusCode = statusCode;
+        this.headers = copyHeaders(headers);
+        this.varyValues = varyValues != null ? new LinkedHashMap<>(varyValues) : Collections.emptyMap();
+        this.requestTime = requestTime;
+        this.responseTime = responseTime;
+        this.bodyLength = -1;
+    }
+
+    public String getKey() { return key; }
+    public String getMethod() { return method; }
+    public String getStatusLine() { return statusLine; }
+    public int getStatusCode() { return statusCode; }
+    public Map<String, List<String>> getHeaders() { return Collections.unmodifiableMap(headers); }
+    public Map<String, String> getVaryValues() { return Collections.unmodifiableMap(varyValues); }
+    public long getRequestTime() { return requestTime; }
+    public long getResponseTime() { return responseTime; }
+    public long getBodyLength() { return bodyLength; }
+    public String getCipherSuite() { return cipherSuite; }
+    public List<String> getServerCertificates() { return serverCertificates; }
+
+    int getBlobSlab() { return blobSlab; }
+    long getBlobOffset() { return blobOffset; }
+    CacheBlobStore.Blob getBlob() { return blob; }
+
+    boolean hasBody() {
+        return bodyLength >= 0;
+    }
+
+    /**
+     * Copy whose body is held in the given blob, or is empty if it is null
+     */
+    HttpCacheEntry withBody(CacheBlobStore.Blob blob, long length) {
+        HttpCacheEntry copy = copy();
+        copy.blob = blob;
+        copy.blobSlab = blob != null ? blob.getSlab() : -1;
+        copy.blobOffset = blob != null ? blob.getOffset() : 0;
+        copy.bodyLength = length;
+        return copy;
+    }
+
+    /**
+     * Attach the blob reserved for this entry's body after a restart
+     */
+    void attachBlob(CacheBlobStore.Blob blob) {
+        this.blob = blob;
+    }
+
+    /**
+     * Copy carrying the TLS session details an HTTPS response was received over
+     */
+    public HttpCacheEntry withSecurity(String cipherSuite, List<String> serverCertificates) {
+        HttpCacheEntry copy = copy();
+        copy.cipherSuite = cipherSuite;
+        copy.serverCertificates = serverCertificates != null ? new ArrayList<>(serverCertificates) : null;
+        return copy;
+    }
+
+    /**
+     * Copy updated by a 304 Not Modified response: its headers replace the stored ones (RFC 9111 section 4.3.4)
+     */
+    public HttpCacheEntry revalidated(Map<String, List<String>> notModifiedHeaders, long requestTime, long responseTime) {
+        HttpCacheEntry copy = copy();
+        for (Map.Entry<String, List<String>> header : notModifiedHeaders.entrySet()) {
+            String name = header.getKey();
+            if (name == null || name.equalsIgnoreCase("Content-Length")) {
+                continue;
+            }
+            copy.headers.keySet().removeIf(existing -> existing.equalsIgnoreCase(name));
+            copy.headers.put(name, new ArrayList<>(header.getValue()));
+        }
+        copy.requestTime = requestTime;
+        copy.responseTime = responseTime;
+        return copy;
+    }
+
+    /**
+     * First value of a response header, ignoring the name's case
+     */
+    public String getHeader(String name) {
+        List<String> values = getHeaderValues(name);
+        return values.isEmpty() ? null : values.get(0);
+    }
+
+    public List<String> getHeaderValues(String name) {
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey())) {
+                return header.getValue();
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    public String getETag() {
+        return getHeader("ETag");
+    }
+
+    public String getLastModified() {
+        return getHeader("Last-Modified");
+    }
+
+    public boolean hasValidators() {
+        return getETag() != null || getLastModified() != null;
+    }
+
+    /**
+     * Whether the response may be served without revalidation at {@code now}
+     */
+    public boolean isFresh(long now) {
+        return getFreshnessLifetime() > getCurrentAge(now);
+    }
+
+    /**
+     * How long the response stays fresh after it was generated, in milliseconds (RFC 9111 section 4.2.1)
+     */
+    public long getFreshnessLifetime() {
+        List<String> cacheControl = getHeaderValues("Cache-Control");
+        if (hasDirective(cacheControl, "no-cache") || hasDirective(cacheControl, "no-store")) {
+            return 0;
+        }
+        long maxAge = directiveSeconds(cacheControl, "max-age");
+        if (maxAge >= 0) {
+            return maxAge * 1000;
+        }
+        long date = getDate();
+        String expires = getHeader("Expires");
+        if (expires != null) {
+            long time = parseHttpDate(expires);
+            return time == Long.MIN_VALUE ? 0 : Math.max(0, time - date);
+        }
+        long lastModified = getLastModified() != null ? parseHttpDate(getLastModified()) : Long.MIN_VALUE;
+        if (lastModified != Long.MIN_VALUE && HEURISTICALLY_CACHEABLE.contains(statusCode)) {
+            return Math.min(MAX_HEURISTIC_LIFETIME, Math.max(0, date - lastModified) / 10);
+        }
+        return 0;
+    }
+
+    /**
+     * Age of the response at {@code now}, in milliseconds (RFC 9111 section 4.2.3)
+     */
+    public long getCurrentAge(long now) {
+        long apparentAge = Math.max(0, responseTime - getDate());
+        long ageValue = Math.max(0, parseSeconds(getHeader("Age"))) * 1000;
+        long correctedAge = Math.max(apparentAge, ageValue + (responseTime - requestTime));
+        return correctedAge + Math.max(0, now - responseTime);
+    }
+
+    /**
+     * Whether this response applies to a request with the given headers, per the Vary values it was stored with
+     */
+    public boolean matchesVary(Map<String, List<String>> requestHeaders) {
+        for (Map.Entry<String, String> vary : varyValues.entrySet()) {
+            if (!vary.getValue().equals(requestHeaderValue(requestHeaders, vary.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long getDate() {
+        String date = getHeader("Date");
+        long time = date != null ? parseHttpDate(date) : Long.MIN_VALUE;
+        return time != Long.MIN_VALUE ? time : responseTime;
+    }
+
+    private HttpCacheEntry copy() {
+        HttpCacheEntry copy = new HttpCacheEntry(key, method, statusLine, statusCode, headers, varyValues, requestTime, responseTime);
+        copy.bodyLength = bodyLength;
+        copy.blobSlab = blobSlab;
+        copy.blobOffset = blobOffset;
+        copy.blob = blob;
+        copy.cipherSuite = cipherSuite;
+        copy.serverCertificates = serverCertificates;
+        return copy;
+    }
+
+    /**
+     * All values of a request header joined with commas, or "" when absent
+     */
+    static String requestHeaderValue(Map<String, List<String>> requestHeaders, String name) {
+        if (requestHeaders == null) {
+            return "";
+        }
+        for (Map.Entry<String, List<String>> header : requestHeaders.entrySet()) {
+            if (header.getKey() != null && header.getKey().equalsIgnoreCase(name)) {
+                return String.join(",", header.getValue());
+            }
+        }
+        return "";
+    }
+
+    /**
+     * Whether a Cache-Control header list contains a directive, ignoring case
+     */
+    static boolean hasDirective(List<String> cacheControl, String name) {
+        return directive(cacheControl, name) != null;
+    }
+
+    /**
+     * Seconds given to a Cache-Control directive such as max-age, or -1 when absent or malformed
+     */
+    static long directiveSeconds(List<String> cacheControl, String name) {
+        String value = directive(cacheControl, name);
+        return value != null ? parseSeconds(value) : -1;
+    }
+
+    /**
+     * Argument of a directive ("" when it has none), or null when absent
+     */
+    private static String directive(List<String> cacheControl, String name) {
+        if (cacheControl == null) {
+            return null;
+        }
+        for (String header : cacheControl) {
+            if (header == null) {
+                continue;
+            }
+            for (String part : header.split(",")) {
+                String token = part.trim();
+                int eq = token.indexOf('=');
+                String directive = (eq < 0 ? token : token.substring(0, eq)).trim();
+                if (directive.toLowerCase(Locale.ROOT).equals(name)) {
+                    return eq < 0 ? "" : token.substring(eq + 1).trim().replace("\"", "");
+                }
+            }
+        }
+        return null;
+    }
+
+    private static long parseSeconds(String value) {
+        if (value == null || value.isEmpty()) {
+            return -1;
+        }
+        try {
+            return Math.min(Long.parseLong(value.trim()), Long.MAX_VALUE / 2000);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Epoch millis of an HTTP date in any of the three RFC 9110 forms, or {@link Long#MIN_VALUE}
+     */
+    static long parseHttpDate(String value) {
+        return SetCookieParser.parseDate(value, 0, value.length());
+    }
+
+    private static Map<String, List<String>> copyHeaders(Map<String, List<String>> headers) {
+        Map<String, List<String>> copy = new LinkedHashMap<>();
+        if (headers != null) {
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                if (header.getKey() != null) {
+                    copy.put(header.getKey(), new ArrayList<>(header.getValue()));
+                }
+            }
+        }
+        return copy;
+    }
+}
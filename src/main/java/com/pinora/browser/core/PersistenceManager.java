@@ -85,7 +85,9 @@ public class PersistenceManager {
      */
     public synchronized void saveAll() {
         try {
-            // Managers save themselves, but we can add housekeeping here
+            // Managers save themselves; history and cookie writes are queued, so wait for them
+            historyManager.flush();
+            cookieManager.flush();
             logger.info("Saved all browser data");
         } catch (Exception e) {
             logger.error("Error saving all data: {}", e.getMessage());
@@ -104,11 +106,11 @@ public class PersistenceManager {
                 logger.warn("Bookmark file is not readable: {}", bookmarkFile);
             }
             
-            // Check if history file exists and is readable
-            String historyFile = com.pinora.browser.util.ConfigManager.getHistoryFile();
-            File hf = new File(historyFile);
-            if (hf.exists() && !hf.canRead()) {
-                logger.warn("History file is not readable: {}", historyFile);
+            // Check if history log directory exists and is readable
+            String historyDir = com.pinora.browser.util.ConfigManager.getHistoryDirectory();
+            File hd = new File(historyDir);
+            if (hd.exists() && !hd.canRead()) {
+                logger.warn("History log directory is not readable: {}", historyDir);
             }
             
             logger.info("Data integrity check passed");
@@ -136,13 +138,17 @@ public class PersistenceManager {
                     StandardCopyOption.REPLACE_EXISTING);
             }
             
-            // Copy history file
-            String historyFile = com.pinora.browser.util.ConfigManager.getHistoryFile();
-            File hf = new File(historyFile);
-            if (hf.exists()) {
-                Files.copy(Paths.get(historyFile),
-                    Paths.get(backupSubDir + "/history.json"),
-                    StandardCopyOption.REPLACE_EXISTING);
+            // Copy history log segments and snapshots
+            Path historyDir = Paths.get(com.pinora.browser.util.ConfigManager.getHistoryDirectory());
+            if (Files.isDirectory(historyDir)) {
+                Path historyBackup = Paths.get(backupSubDir, "history");
+                Files.createDirectories(historyBackup);
+                try (java.util.stream.Stream<Path> files = Files.list(historyDir)) {
+                    for (Path file : files.toList()) {
+                        Files.copy(file, historyBackup.resolve(file.getFileName()),
+                            StandardCopyOption.REPLACE_EXISTING);
+                    }
+                }
             }
             
             logger.info("Backup created: {}", backupSubDir);
@@ -196,9 +202,14 @@ public class PersistenceManager {
                 sb.append(String.format("  Bookmark File Size: %.2f KB\n", bookmarkFile.length() / 1024.0));
             }
             
-            File historyFile = new File(com.pinora.browser.util.ConfigManager.getHistoryFile());
-            if (historyFile.exists()) {
-                sb.append(String.format("  History File Size: %.2f KB\n", historyFile.length() / 1024.0));
+            File historyDir = new File(com.pinora.browser.util.ConfigManager.getHistoryDirectory());
+            File[] historyFiles = historyDir.listFiles();
+            if (historyFiles != null) {
+                long historyBytes = 0;
+                for (File f : historyFiles) {
+                    historyBytes += f.length();
+                }
+                sb.append(String.format("  History Log Size: %.2f KB\n", historyBytes / 1024.0));
             }
         } catch (Exception e) {
             logger.error("Error getting persistence stats: {}", e.getMessage());
@@ -216,6 +227,8 @@ public class PersistenceManager {
             if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
                 scheduler.shutdownNow();
             }
+            historyManager.close();
+            cookieManager.close();
             logger.info("PersistenceManager shutdown complete");
         } catch (Exception e) {
             logger.error("Error during shutdown: {}", e.getMessage());
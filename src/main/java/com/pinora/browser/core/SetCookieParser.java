@@ -0,0 +1,320 @@
+package com.pinora.browser.core;
+
+import com.pinora.browser.util.URLUtil;
+
+import java.text.ParsePosition;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.SignStyle;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.util.Locale;
+
+/**
+ * Parser for {@code Set-Cookie} response headers (RFC 6265 section 5.2).
+ *
+ * The header is walked once by index: no splitting, regular expressions or
+ * intermediate strings, only the substrings that end up stored in the cookie.
+ * Expires dates in the fixed-width RFC 1123 form are decoded in place; the
+ * obsolete RFC 850, Netscape and asctime forms still sent by some servers go
+ * to one shared, immutable {@link DateTimeFormatter}. Thread-safe.
+ */
+public final class SetCookieParser {
+
+    /**
+     * Cookie dates after the optional day-of-week, always in GMT:
+     * {@code 09 Jun 2021 10:18:14 GMT}, {@code 09-Jun-2021 10:18:14 GMT},
+     * {@code 09-Jun-21 10:18:14 GMT} and asctime's {@code Jun  9 10:18:14 2021}.
+     * Two-digit years are 1970-2069, as RFC 6265 prescribes.
+     */
+    private static final DateTimeFormatter COOKIE_DATE = new DateTimeFormatterBuilder()
+        .parseCaseInsensitive()
+        .optionalStart()
+            .appendValue(ChronoField.DAY_OF_MONTH, 1, 2, SignStyle.NOT_NEGATIVE)
+            .appendPattern("[ ][-]MMM[ ][-]")
+            .appendValueReduced(ChronoField.YEAR, 2, 4, 1970)
+            .appendPattern(" HH:mm:ss")
+        .optionalEnd()
+        .optionalStart()
+            .appendPattern("MMM ")
+            .optionalStart().appendLiteral(' ').optionalEnd()
+            .appendValue(ChronoField.DAY_OF_MONTH, 1, 2, SignStyle.NOT_NEGATIVE)
+            .appendPattern(" HH:mm:ss yyyy")
+        .optionalEnd()
+        .appendPattern("[ 'GMT'][ 'UTC']")
+        .toFormatter(Locale.US);
+
+    private static final String MONTHS = "janfebmaraprmayjunjulaugsepoctnovdec";
+
+    private SetCookieParser() {
+    }
+
+    /**
+     * Parse a Set-Cookie header received from {@code requestHost}.
+     * Returns null when the header is malformed or names a Domain the host may not set cookies for.
+     * A cookie whose Expires or Max-Age lies in the past comes back already expired.
+     */
+    public static CookieData parse(String header, String requestHost, long now) {
+        if (header == null || requestHost == null) {
+            return null;
+        }
+        int length = header.length();
+        int pairEnd = indexOf(header, ';', 0, length);
+        int eq = indexOf(header, '=', 0, pairEnd);
+        if (eq == pairEnd) {
+            return null;
+        }
+        int nameStart = skipSpaces(header, 0, eq);
+        int nameEnd = trimEnd(header, nameStart, eq);
+        if (nameStart == nameEnd) {
+            return null;
+        }
+        int valueStart = skipSpaces(header, eq + 1, pairEnd);
+        int valueEnd = trimEnd(header, valueStart, pairEnd);
+
+        CookieData cookie = new CookieData();
+        cookie.setName(header.substring(nameStart, nameEnd));
+        cookie.setValue(header.substring(valueStart, valueEnd));
+        cookie.setDomain(requestHost);
+        cookie.setPath("/");
+        cookie.setSessionOnly(true);
+
+        long expires = 0;
+        boolean hasExpires = false;
+        long maxAge = 0;
+        boolean hasMaxAge = false;
+
+        int pos = pairEnd + 1;
+        while (pos < length) {
+            int attrEnd = indexOf(header, ';', pos, length);
+            int start = skipSpaces(header, pos, attrEnd);
+            int end = trimEnd(header, start, attrEnd);
+            int sep = indexOf(header, '=', start, end);
+            int keyEnd = trimEnd(header, start, sep);
+            int valStart = sep < end ? skipSpaces(header, sep + 1, end) : end;
+            int keyLength = keyEnd - start;
+            pos = attrEnd + 1;
+
+            if (is(header, start, keyLength, "Secure")) {
+                cookie.setSecure(true);
+            } else if (is(header, start, keyLength, "HttpOnly")) {
+                cookie.setHttpOnly(true);
+            } else if (is(header, start, keyLength, "Path")) {
+                // A missing or relative path falls back to the default
+                if (valStart < end && header.charAt(valStart) == '/') {
+                    cookie.setPath(header.substring(valStart, end));
+                }
+            } else if (is(header, start, keyLength, "Domain")) {
+                if (valStart < end) {
+                    String domain = header.substring(header.charAt(valStart) == '.' ? valStart + 1 : valStart, end);
+                    if (!domainMatches(requestHost, domain) || isForeignPublicSuffix(requestHost, domain)) {
+                        return null;
+                    }
+                    if (!domain.isEmpty()) {
+                        cookie.setDomain("." + domain);
+                    }
+                }
+            } else if (is(header, start, keyLength, "Expires")) {
+                long time = parseDate(header, valStart, end);
+                if (time != Long.MIN_VALUE) {
+                    expires = time;
+                    hasExpires = true;
+                }
+            } else if (is(header, start, keyLength, "Max-Age")) {
+                long seconds = parseSeconds(header, valStart, end);
+                if (seconds != Long.MIN_VALUE) {
+                    maxAge = seconds;
+                    hasMaxAge = true;
+                }
+            } else if (is(header, start, keyLength, "SameSite")) {
+                cookie.setSameSite(header.substring(valStart, end));
+            }
+        }
+
+        // Max-Age wins over Expires wherever it appears
+        if (hasMaxAge) {
+            cookie.setSessionOnly(false);
+            cookie.setExpiryTime(maxAge <= 0 ? now - 1 : now + Math.min(maxAge, Long.MAX_VALUE / 2000) * 1000);
+        } else if (hasExpires) {
+            cookie.setSessionOnly(false);
+            cookie.setExpiryTime(expires > 0 ? expires : now - 1);
+        }
+        return cookie;
+    }
+
+    /**
+     * Parse a cookie date in {@code text[start, end)}, returning epoch millis
+     * or {@link Long#MIN_VALUE} if it is not a date
+     */
+    public static long parseDate(CharSequence text, int start, int end) {
+        int pos = skipDayOfWeek(text, start, end);
+        long fixed = parseFixedDate(text, pos, end);
+        if (fixed != Long.MIN_VALUE) {
+            return fixed;
+        }
+        try {
+            ParsePosition position = new ParsePosition(pos);
+            TemporalAccessor parsed = COOKIE_DATE.parse(text, position);
+            if (skipSpaces(text, position.getIndex(), end) != end) {
+                return Long.MIN_VALUE;
+            }
+            return LocalDateTime.from(parsed).toEpochSecond(ZoneOffset.UTC) * 1000;
+        } catch (Exception e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Fast path for the fixed-width form nearly every server sends,
+     * {@code 09 Jun 2021 10:18:14 GMT} (or with dashes in the date);
+     * {@link Long#MIN_VALUE} for anything else, which goes to the formatter
+     */
+    private static long parseFixedDate(CharSequence text, int pos, int end) {
+        int tail = skipSpaces(text, pos + 20, end);
+        if (pos + 20 > end || !(tail == end || (tail + 3 == end && isGmt(text, tail)))) {
+            return Long.MIN_VALUE;
+        }
+        char sep = text.charAt(pos + 2);
+        if ((sep != ' ' && sep != '-') || text.charAt(pos + 6) != sep || text.charAt(pos + 11) != ' '
+                || text.charAt(pos + 14) != ':' || text.charAt(pos + 17) != ':') {
+            return Long.MIN_VALUE;
+        }
+        int day = digits(text, pos, 2);
+        int month = month(text, pos + 3);
+        int year = digits(text, pos + 7, 4);
+        int hour = digits(text, pos + 12, 2);
+        int minute = digits(text, pos + 15, 2);
+        int second = digits(text, pos + 18, 2);
+        if ((day | month | year | hour | minute | second) < 0 || hour > 23 || minute > 59 || second > 59) {
+            return Long.MIN_VALUE;
+        }
+        try {
+            long days = LocalDate.of(year, month, day).toEpochDay();
+            return ((days * 24 + hour) * 60 + minute) * 60_000 + second * 1000L;
+        } catch (DateTimeException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    private static boolean isGmt(CharSequence text, int pos) {
+        return (text.charAt(pos) | 0x20) == 'g' && (text.charAt(pos + 1) | 0x20) == 'm' && (text.charAt(pos + 2) | 0x20) == 't';
+    }
+
+    /**
+     * Value of {@code count} decimal digits, or -1 if any is not a digit
+     */
+    private static int digits(CharSequence text, int pos, int count) {
+        int value = 0;
+        for (int i = pos; i < pos + count; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Month number of a three-letter English month name, ignoring case, or -1
+     */
+    private static int month(CharSequence text, int pos) {
+        char a = (char) (text.charAt(pos) | 0x20);
+        char b = (char) (text.charAt(pos + 1) | 0x20);
+        char c = (char) (text.charAt(pos + 2) | 0x20);
+        for (int i = 0; i < MONTHS.length(); i += 3) {
+            if (MONTHS.charAt(i) == a && MONTHS.charAt(i + 1) == b && MONTHS.charAt(i + 2) == c) {
+                return i / 3 + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Skip a leading day name ("Wed, ", "Wednesday, " or asctime's "Wed ") but not a leading month
+     */
+    private static int skipDayOfWeek(CharSequence text, int start, int end) {
+        int pos = start;
+        while (pos < end && Character.isLetter(text.charAt(pos))) {
+            pos++;
+        }
+        if (pos == start) {
+            return start;
+        }
+        if (pos < end && text.charAt(pos) == ',') {
+            return skipSpaces(text, pos + 1, end);
+        }
+        int next = skipSpaces(text, pos, end);
+        // "Wed Jun  9 ..." starts with a day name; "Jun 9 ..." starts with the month
+        return next < end && Character.isLetter(text.charAt(next)) ? next : start;
+    }
+
+    /**
+     * Whether a response from {@code host} may set a cookie for {@code domain} (no leading dot)
+     */
+    static boolean domainMatches(String host, String domain) {
+        String h = URLUtil.normalizeHost(host);
+        String d = URLUtil.normalizeHost(domain);
+        if (h == null || d == null) {
+            return d == null;
+        }
+        return h.equals(d) || (h.endsWith(d) && h.charAt(h.length() - d.length() - 1) == '.');
+    }
+
+    /**
+     * Whether {@code domain} is a public suffix such as {@code co.uk} that the host is not itself;
+     * a cookie there would be sent to every site under it
+     */
+    private static boolean isForeignPublicSuffix(String host, String domain) {
+        return URLUtil.isPublicSuffix(domain) && !domain.equalsIgnoreCase(URLUtil.normalizeHost(host));
+    }
+
+    /**
+     * Parse an optionally negative decimal number of seconds, clamping overflow;
+     * {@link Long#MIN_VALUE} if malformed
+     */
+    private static long parseSeconds(CharSequence text, int start, int end) {
+        boolean negative = start < end && text.charAt(start) == '-';
+        int pos = negative ? start + 1 : start;
+        if (pos == end) {
+            return Long.MIN_VALUE;
+        }
+        long value = 0;
+        for (; pos < end; pos++) {
+            char c = text.charAt(pos);
+            if (c < '0' || c > '9') {
+                return Long.MIN_VALUE;
+            }
+            int digit = c - '0';
+            value = value > (Long.MAX_VALUE - digit) / 10 ? Long.MAX_VALUE : value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    private static boolean is(String text, int start, int length, String name) {
+        return length == name.length() && text.regionMatches(true, start, name, 0, length);
+    }
+
+    private static int indexOf(String text, char c, int from, int to) {
+        int i = text.indexOf(c, from);
+        return i < 0 || i > to ? to : i;
+    }
+
+    private static int skipSpaces(CharSequence text, int from, int to) {
+        while (from < to && (text.charAt(from) == ' ' || text.charAt(from) == '\t')) {
+            from++;
+        }
+        return from;
+    }
+
+    private static int trimEnd(CharSequence text, int from, int to) {
+        while (to > from && (text.charAt(to - 1) == ' ' || text.charAt(to - 1) == '\t')) {
+            to--;
+        }
+        return to;
+    }
+}
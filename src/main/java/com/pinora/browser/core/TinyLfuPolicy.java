@@ -0,0 +1,326 @@
+package com.pinora.browser.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * W-TinyLFU admission and eviction over weighted keys, with O(1) operations.
+ *
+ * New keys enter a small LRU window (1% of the maximum weight). Keys pushed
+ * out of the window must win against the main region's eviction victim on
+ * estimated access frequency to be admitted; a frequency sketch of all recent
+ * accesses, hits and misses alike, supplies the estimates. The main region is
+ * a segmented LRU: keys accessed again while on probation move to the
+ * protected segment (80% of the main region). This keeps one-off responses,
+ * such as a large download fetched once, from flushing out resources that
+ * are used on every visit.
+ *
+ * Not thread-safe; {@link CacheManager} calls it under its own lock.
+ */
+public class TinyLfuPolicy<K> {
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+    private static final double WINDOW_FRACTION = 0.01;
+    private static final double PROTECTED_FRACTION = 0.80;
+
+    private final Map<K, Node<K>> nodes = new HashMap<>();
+    // Insertion-ordered: the first key of each region is its least recently used
+    private final LinkedHashMap<K, Node<K>> window = new LinkedHashMap<>();
+    private final LinkedHashMap<K, Node<K>> probation = new LinkedHashMap<>();
+    private final LinkedHashMap<K, Node<K>> protectedRegion = new LinkedHashMap<>();
+    private final FrequencySketch sketch = new FrequencySketch();
+    private long maximum;
+    private long windowMaximum;
+    private long protectedMaximum;
+    private long windowWeight;
+    private long protectedWeight;
+    private long weightedSize;
+
+    public TinyLfuPolicy(long maximum) {
+        setMaximumWeight(maximum);
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    public long weightedSize() {
+        return weightedSize;
+    }
+
+    public long getMaximum() {
+        return maximum;
+    }
+
+    public boolean contains(K key) {
+        return nodes.containsKey(key);
+    }
+
+    /**
+     * Record a lookup of a key, present or not
+     */
+    public void recordAccess(K key) {
+        sketch.increment(key);
+        Node<K> node = nodes.get(key);
+        if (node == null) {
+            return;
+        }
+        switch (node.region) {
+            case WINDOW -> moveToEnd(window, node);
+            case PROTECTED -> moveToEnd(protectedRegion, node);
+            default -> {
+                probation.remove(key);
+                node.region = PROTECTED;
+                protectedRegion.put(key, node);
+                protectedWeight += node.weight;
+                demoteProtected();
+            }
+        }
+    }
+
+    /**
+     * Add a key, or update the weight of one already present, and return the
+     * keys to evict as a result; the new key itself is among them if it was not admitted
+     */
+    public List<K> add(K key, long weight) {
+        List<K> evicted = new ArrayList<>();
+        Node<K> node = nodes.get(key);
+        if (node != null) {
+            long delta = weight - node.weight;
+            node.weight = weight;
+            weightedSize += delta;
+            if (node.region == WINDOW) {
+                windowWeight += delta;
+            } else if (node.region == PROTECTED) {
+                protectedWeight += delta;
+            }
+            recordAccess(key);
+        } else if (weight > maximum) {
+            evicted.add(key);
+            return evicted;
+        } else {
+            sketch.increment(key);
+            node = new Node<>(key, weight);
+            nodes.put(key, node);
+            window.put(key, node);
+            windowWeight += weight;
+            weightedSize += weight;
+            sketch.ensureCapacity(nodes.size());
+        }
+        evict(evicted);
+        return evicted;
+    }
+
+    /**
+     * Forget a key that the cache dropped for its own reasons
+     */
+    public void remove(K key) {
+        Node<K> node = nodes.remove(key);
+        if (node != null) {
+            unlink(node);
+        }
+    }
+
+    /**
+     * Change the maximum weight, returning the keys evicted to fit it
+     */
+    public List<K> setMaximum(long maximum) {
+        setMaximumWeight(maximum);
+        List<K> evicted = new ArrayList<>();
+        evict(evicted);
+        return evicted;
+    }
+
+    private void setMaximumWeight(long maximum) {
+        this.maximum = Math.max(0, maximum);
+        this.windowMaximum = (long) (this.maximum * WINDOW_FRACTION);
+        this.protectedMaximum = (long) ((this.maximum - windowMaximum) * PROTECTED_FRACTION);
+    }
+
+    private void evict(List<K> evicted) {
+        long mainMaximum = maximum - windowMaximum;
+        while (windowWeight > windowMaximum && !window.isEmpty()) {
+            Node<K> candidate = pollFirst(window);
+            windowWeight -= candidate.weight;    // now counted in the main region
+            candidate.region = PROBATION;
+            // Make room in the main region only if the candidate is used more often than each victim
+            boolean admitted = true;
+            while (mainWeight() > mainMaximum) {
+                Node<K> victim = firstOf(probation, protectedRegion);
+                if (victim == null) {
+                    break;
+                }
+                if (sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+                    evictNode(victim, evicted);
+                } else {
+                    admitted = false;
+                    break;
+                }
+            }
+            if (admitted) {
+                probation.put(candidate.key, candidate);
+            } else {
+                nodes.remove(candidate.key);
+                weightedSize -= candidate.weight;
+                evicted.add(candidate.key);
+            }
+        }
+        // The maximum shrank, or a single key outweighs the window: evict in LRU order
+        while (weightedSize > maximum) {
+            Node<K> victim = firstOf(probation, protectedRegion);
+            if (victim == null) {
+                victim = firstOf(window, window);
+            }
+            if (victim == null) {
+                break;
+            }
+            evictNode(victim, evicted);
+        }
+    }
+
+    private long mainWeight() {
+        return weightedSize - windowWeight;
+    }
+
+    private void demoteProtected() {
+        while (protectedWeight > protectedMaximum && !protectedRegion.isEmpty()) {
+            Node<K> demoted = pollFirst(protectedRegion);
+            protectedWeight -= demoted.weight;
+            demoted.region = PROBATION;
+            probation.put(demoted.key, demoted);
+        }
+    }
+
+    private void evictNode(Node<K> node, List<K> evicted) {
+        nodes.remove(node.key);
+        unlink(node);
+        evicted.add(node.key);
+    }
+
+    private void unlink(Node<K> node) {
+        weightedSize -= node.weight;
+        switch (node.region) {
+            case WINDOW -> {
+                window.remove(node.key);
+                windowWeight -= node.weight;
+            }
+            case PROTECTED -> {
+                protectedRegion.remove(node.key);
+                protectedWeight -= node.weight;
+            }
+            default -> probation.remove(node.key);
+        }
+    }
+
+    private static <K> void moveToEnd(LinkedHashMap<K, Node<K>> region, Node<K> node) {
+        region.remove(node.key);
+        region.put(node.key, node);
+    }
+
+    private static <K> Node<K> pollFirst(LinkedHashMap<K, Node<K>> region) {
+        Iterator<Node<K>> iterator = region.values().iterator();
+        Node<K> first = iterator.next();
+        iterator.remove();
+        return first;
+    }
+
+    private static <K> Node<K> firstOf(LinkedHashMap<K, Node<K>> preferred, LinkedHashMap<K, Node<K>> fallback) {
+        if (!preferred.isEmpty()) {
+            return preferred.values().iterator().next();
+        }
+        return fallback.isEmpty() ? null : fallback.values().iterator().next();
+    }
+
+    private static final class Node<K> {
+        final K key;
+        long weight;
+        int region = WINDOW;
+
+        Node(K key, long weight) {
+            this.key = key;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Count-min sketch of 4-bit counters, four per key, sixteen to a long.
+     * All counters are halved once the number of increments reaches ten times
+     * the table size, so old popularity fades and the counters never overflow.
+     */
+    static final class FrequencySketch {
+        private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+        private static final long RESET_MASK = 0x7777777777777777L;
+        private static final int MIN_CAPACITY = 64;
+
+        private long[] table = new long[MIN_CAPACITY];
+        private int sampleSize = 10 * MIN_CAPACITY;
+        private int additions;
+
+        /**
+         * Grow the table to track about {@code keys} distinct keys accurately; counts restart when it grows
+         */
+        void ensureCapacity(int keys) {
+            if (keys <= table.length) {
+                return;
+            }
+            int capacity = Integer.highestOneBit(Math.min(keys, 1 << 24) - 1) << 1;
+            table = new long[capacity];
+            sampleSize = 10 * capacity;
+            additions = 0;
+        }
+
+        int frequency(Object key) {
+            int hash = spread(key.hashCode());
+            int start = (hash & 3) << 2;
+            int frequency = Integer.MAX_VALUE;
+            for (int i = 0; i < 4; i++) {
+                int index = indexOf(hash, i);
+                int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xF);
+                frequency = Math.min(frequency, count);
+            }
+            return frequency;
+        }
+
+        void increment(Object key) {
+            int hash = spread(key.hashCode());
+            int start = (hash & 3) << 2;
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                int index = indexOf(hash, i);
+                int offset = (start + i) << 2;
+                if (((table[index] >>> offset) & 0xF) != 0xF) {
+                    table[index] += 1L << offset;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        private void reset() {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (table[i] >>> 1) & RESET_MASK;
+            }
+            additions /= 2;
+        }
+
+        private int indexOf(int hash, int i) {
+            long h = (hash + SEEDS[i]) * SEEDS[i];
+            h += h >>> 32;
+            return (int) h & (table.length - 1);
+        }
+
+        private static int spread(int hash) {
+            hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+            hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+            return (hash >>> 16) ^ hash;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.pinora.browser.extensions.webext.installer;
 
+import com.pinora.browser.core.BrowserHttpClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -7,11 +8,12 @@ import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.InputStream;
-import java.net.HttpURLConnection;
 import java.net.URI;
-import java.net.URL;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.UUID;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
@@ -24,8 +26,10 @@ public class WebExtensionInstaller {
     private static final Logger logger = LoggerFactory.getLogger(WebExtensionInstaller.class);
 
     private final Path webExtRoot;
+    private final BrowserHttpClient httpClient;
 
-    public WebExtensionInstaller() {
+    public WebExtensionInstaller(BrowserHttpClient httpClient) {
+        this.httpClient = httpClient;
         this.webExtRoot = detectDefaultWebExtensionsFolder();
         try {
             if (!Files.exists(webExtRoot)) Files.createDirectories(webExtRoot);
@@ -73,17 +77,18 @@ public class WebExtensionInstaller {
     public String installFromURL(String urlStr) throws Exception {
         if (urlStr == null || urlStr.isEmpty()) throw new IllegalArgumentException("URL is empty");
         // Download to temp file
-        URL url = URI.create(urlStr).toURL();
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setInstanceFollowRedirects(true);
-        conn.setConnectTimeout(15000);
-        conn.setReadTimeout(30000);
-        conn.connect();
-        int code = conn.getResponseCode();
-        if (code >= 400) throw new RuntimeException("Download failed: HTTP " + code);
+        HttpRequest request = httpClient.newRequest(URI.create(urlStr))
+            .timeout(Duration.ofSeconds(30))
+            .build();
+        HttpResponse<InputStream> response = httpClient.sendStreaming(request);
+        int code = response.statusCode();
+        if (code >= 400) {
+            response.body().close();
+            throw new RuntimeException("Download failed: HTTP " + code);
+        }
 
         Path tmp = Files.createTempFile("we-download", ".zip");
-        try (InputStream in = new BufferedInputStream(conn.getInputStream()); FileOutputStream out = new FileOutputStream(tmp.toFile())) {
+        try (InputStream in = new BufferedInputStream(response.body()); FileOutputStream out = new FileOutputStream(tmp.toFile())) {
             byte[] buf = new byte[8192];
             int r;
             while ((r = in.read(buf)) != -1) out.write(buf, 0, r);
@@ -0,0 +1,220 @@
+package com.pinora.browser.test;
+
+import com.pinora.browser.core.CookieData;
+import com.pinora.browser.core.CookieManager;
+
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrency stress test for {@link CookieManager}.
+ *
+ * Network-like threads store, replace, expire and delete cookies across many
+ * sites while others build Cookie headers, and a UI-like thread lists the jar
+ * and its statistics. Runs against a throwaway profile directory. Afterwards it
+ * checks the quotas and that every cached header matches the stored cookies,
+ * and reports throughput and header lookup latency. Exits with status 1 on failure.
+ * Usage: {@code CookieManagerStressTest [seconds] [threads]}
+ */
+public class CookieManagerStressTest {
+
+    private static final int SITES = 200;
+    private static final int MAX_COOKIES = 2000;
+    private static final int MAX_COOKIES_PER_SITE = 20;
+    private static final String[] PATHS = {"/", "/a", "/a/", "/a/b", "/static/", "/static/app.js", "/index.html"};
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Math.max(4, Runtime.getRuntime().availableProcessors());
+
+        // Keep the real profile out of it; must happen before the config directory is first resolved
+        System.setProperty("user.home", Files.createTempDirectory("pinora-cookie-stress").toString());
+        CookieManager manager = new CookieManager();
+        manager.setBlockTrackingCookies(false);
+        manager.setCookieLimits(MAX_COOKIES, MAX_COOKIES_PER_SITE);
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        LongAdder writes = new LongAdder();
+        LongAdder reads = new LongAdder();
+        AtomicLongArray latency = new AtomicLongArray(64); // log2(nanos) histogram of header lookups
+
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            boolean writer = t % 2 == 0;
+            workers.add(new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    while (running.get()) {
+                        if (writer) {
+                            write(manager, random);
+                            writes.increment();
+                        } else {
+                            long start = System.nanoTime();
+                            manager.getCookieHeader(host(random), PATHS[random.nextInt(PATHS.length)], random.nextBoolean(), random.nextBoolean());
+                            latency.incrementAndGet(63 - Long.numberOfLeadingZeros(Math.max(1, System.nanoTime() - start)));
+                            reads.increment();
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }, (writer ? "Writer-" : "Reader-") + t));
+        }
+        workers.add(new Thread(() -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            try {
+                while (running.get()) {
+                    manager.getAllCookies();
+                    manager.getCookieStatistics();
+                    manager.getCookiesForDomain(host(random));
+                    manager.deleteAllCookiesForDomain("." + site(random.nextInt(SITES)));
+                    Thread.sleep(5);
+                }
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            }
+        }, "UI"));
+
+        long start = System.nanoTime();
+        workers.forEach(Thread::start);
+        Thread.sleep(seconds * 1000L);
+        running.set(false);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        // Let the short-lived cookies expire, so the sweeper does not change the jar while it is checked
+        Thread.sleep(2100);
+        manager.deleteExpiredCookies();
+
+        List<String> problems = new ArrayList<>();
+        if (failure.get() != null) {
+            failure.get().printStackTrace();
+            problems.add("worker failed: " + failure.get());
+        }
+        problems.addAll(checkJar(manager));
+
+        System.out.printf("%d threads, %.1f s: %,.0f writes/s, %,.0f header lookups/s%n",
+            threads, elapsed, writes.sum() / elapsed, reads.sum() / elapsed);
+        System.out.printf("header lookup latency: p50 < %s, p99 < %s, max < %s%n",
+            percentile(latency, 0.50), percentile(latency, 0.99), percentile(latency, 1.0));
+        System.out.println("statistics: " + manager.getCookieStatistics());
+        manager.close();
+
+        if (problems.isEmpty()) {
+            System.out.println("OK");
+        } else {
+            problems.forEach(problem -> System.out.println("FAILED: " + problem));
+            System.exit(1);
+        }
+    }
+
+    /**
+     * One network-like change: mostly new or replaced cookies, some short-lived, some deletions
+     */
+    private static void write(CookieManager manager, ThreadLocalRandom random) {
+        int site = random.nextInt(SITES);
+        String domain = random.nextBoolean() ? "." + site(site) : "www." + site(site);
+        String path = PATHS[random.nextInt(PATHS.length)];
+        String name = "c" + random.nextInt(40);
+        if (random.nextInt(10) == 0) {
+            manager.deleteCookie(domain, path, name);
+            return;
+        }
+        CookieData cookie = new CookieData(name, Long.toHexString(random.nextLong()), domain, path);
+        cookie.setSecure(random.nextInt(4) == 0);
+        cookie.setHttpOnly(random.nextInt(4) == 0);
+        if (random.nextInt(5) == 0) {
+            cookie.setSessionOnly(false);
+            cookie.setExpiryTime(System.currentTimeMillis() + random.nextInt(1, 2000));
+        }
+        manager.setCookie(cookie);
+    }
+
+    private static List<String> checkJar(CookieManager manager) {
+        List<String> problems = new ArrayList<>();
+        List<CookieData> all = manager.getAllCookies();
+        if (all.size() > MAX_COOKIES) {
+            problems.add("jar holds " + all.size() + " cookies, limit " + MAX_COOKIES);
+        }
+        Map<String, Integer> perSite = new HashMap<>();
+        for (CookieData cookie : all) {
+            String domain = cookie.getDomain();
+            perSite.merge(domain.substring(domain.indexOf("site")), 1, Integer::sum);
+        }
+        perSite.forEach((site, count) -> {
+            if (count > MAX_COOKIES_PER_SITE) {
+                problems.add(site + " holds " + count + " cookies, limit " + MAX_COOKIES_PER_SITE);
+            }
+        });
+        for (int site = 0; site < SITES; site++) {
+            for (String host : new String[] {site(site), "www." + site(site)}) {
+                for (String path : PATHS) {
+                    for (boolean secure : new boolean[] {false, true}) {
+                        for (boolean httpOnly : new boolean[] {false, true}) {
+                            String cached = manager.getCookieHeader(host, path, secure, httpOnly);
+                            String expected = header(manager.getCookiesFor(host, path), secure, httpOnly);
+                            if (!Objects.equals(cached, expected)) {
+                                problems.add("stale header for " + host + path + ": " + cached + " != " + expected);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return problems;
+    }
+
+    private static String header(List<CookieData> cookies, boolean secure, boolean includeHttpOnly) {
+        StringBuilder header = new StringBuilder();
+        for (CookieData cookie : cookies) {
+            if ((cookie.isSecure() && !secure) || (cookie.isHttpOnly() && !includeHttpOnly)) {
+                continue;
+            }
+            if (header.length() > 0) {
+                header.append("; ");
+            }
+            header.append(cookie.getName()).append('=').append(cookie.getValue());
+        }
+        return header.length() > 0 ? header.toString() : null;
+    }
+
+    private static String host(ThreadLocalRandom random) {
+        String site = site(random.nextInt(SITES));
+        return random.nextBoolean() ? site : "www." + site;
+    }
+
+    private static String site(int n) {
+        return "site" + n + ".test";
+    }
+
+    /**
+     * Upper bound of the histogram bucket holding the given fraction of lookups
+     */
+    private static String percentile(AtomicLongArray histogram, double fraction) {
+        long total = 0;
+        for (int i = 0; i < histogram.length(); i++) {
+            total += histogram.get(i);
+        }
+        long seen = 0;
+        for (int i = 0; i < histogram.length(); i++) {
+            seen += histogram.get(i);
+            if (seen >= Math.ceil(total * fraction) && seen > 0) {
+                long nanos = 1L << (i + 1);
+                return nanos < 10_000 ? nanos + " ns" : nanos / 1000 + " us";
+            }
+        }
+        return "-";
+    }
+}
@@ -1,5 +1,6 @@
 package com.pinora.browser.ui;
 
+import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.scene.control.*;
 import javafx.scene.layout.VBox;
@@ -7,6 +8,8 @@ import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
 import com.pinora.browser.core.BookmarkManager;
 import com.pinora.browser.core.HistoryManager;
+import com.pinora.browser.core.HistorySnapshot;
+import com.pinora.browser.util.URLUtil;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
@@ -30,6 +33,15 @@ public class BookmarkHistoryPanel extends VBox {
     private Label bookmarkStats;
     private Label historyStats;
     
+    private static final int MAX_HISTORY_SEARCH_RESULTS = 500;
+    private static final int HISTORY_PAGE_SIZE = 200;
+    
+    // Cursor for the next history page while browsing (null when searching or at the end)
+    private HistoryManager.HistoryCursor historyCursor;
+    // State being paged through, so pages stay consistent while new visits arrive
+    private HistorySnapshot historySnapshot;
+    private boolean historyPageRequested;
+    
     public BookmarkHistoryPanel(BookmarkManager bookmarkManager, HistoryManager historyManager, BrowserWindow browserWindow) {
         this.bookmarkManager = bookmarkManager;
         this.historyManager = historyManager;
@@ -178,7 +190,21 @@ public class BookmarkHistoryPanel extends VBox {
     
     private void refreshHistoryList() {
         historyList.getItems().clear();
-        for (HistoryManager.HistoryEntry entry : historyManager.getHistory()) {
+        historyCursor = null;
+        historyPageRequested = false;
+        historySnapshot = historyManager.snapshot();
+        loadNextHistoryPage();
+        updateHistoryStats();
+    }
+    
+    /**
+     * Append the next page of history; further pages load as the list is scrolled
+     */
+    private void loadNextHistoryPage() {
+        historyPageRequested = false;
+        HistoryManager.HistoryPage page = historySnapshot.getPage(Long.MIN_VALUE, Long.MAX_VALUE,
+            historyCursor, HISTORY_PAGE_SIZE);
+        for (HistoryManager.HistoryEntry entry : page.getEntries()) {
             String title = entry.getTitle() != null ? entry.getTitle() : extractDomainFromUrl(entry.getUrl());
             BookmarkHistoryItem item = new BookmarkHistoryItem(
                 title,
@@ -187,7 +213,23 @@ public class BookmarkHistoryPanel extends VBox {
             );
             historyList.getItems().add(item);
         }
-        updateHistoryStats();
+        historyCursor = page.getNextCursor();
+    }
+    
+    /**
+     * Called by cells as they are shown, to load more history near the end of the list
+     */
+    void onCellShown(ListView<BookmarkHistoryItem> listView, int index) {
+        if (listView == historyList && historyCursor != null && !historyPageRequested
+                && index >= historyList.getItems().size() - 1) {
+            historyPageRequested = true;
+            Platform.runLater(() -> {
+                // The list may have been refreshed or filtered in the meantime
+                if (historyPageRequested) {
+                    loadNextHistoryPage();
+                }
+            });
+        }
     }
     
     private void filterBookmarks(String query) {
@@ -204,7 +246,9 @@ public class BookmarkHistoryPanel extends VBox {
     
     private void filterHistory(String query) {
         historyList.getItems().clear();
-        for (HistoryManager.HistoryEntry entry : historyManager.searchHistory(query)) {
+        historyCursor = null;
+        historyPageRequested = false;
+        for (HistoryManager.HistoryEntry entry : historyManager.searchHistory(query, MAX_HISTORY_SEARCH_RESULTS)) {
             String title = entry.getTitle() != null ? entry.getTitle() : extractDomainFromUrl(entry.getUrl());
             BookmarkHistoryItem item = new BookmarkHistoryItem(
                 title,
@@ -260,6 +304,27 @@ public class BookmarkHistoryPanel extends VBox {
         }
     }
     
+    /**
+     * Remove all history for the item's site after confirmation
+     */
+    private void forgetSiteConfirm(BookmarkHistoryItem item) {
+        String site = URLUtil.getRegistrableDomain(URLUtil.getHost(item.url));
+        if (site == null) {
+            return;
+        }
+        Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
+        alert.setTitle("Forget This Site");
+        alert.setHeaderText("Remove all history for " + site + "?");
+        alert.setContentText("Every visited page on " + site + " and its subdomains will be removed.");
+        
+        alert.showAndWait().ifPresent(response -> {
+            if (response == ButtonType.OK) {
+                historyManager.forgetSite(site);
+                refreshHistoryList();
+            }
+        });
+    }
+    
     private void clearHistoryConfirm() {
         Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
         alert.setTitle("Clear History");
@@ -385,6 +450,10 @@ public class BookmarkHistoryPanel extends VBox {
                 return;
             }
             
+            if (panel != null) {
+                panel.onCellShown(getListView(), getIndex());
+            }
+            
             VBox cell = new VBox(2);
             cell.setPadding(new Insets(5));
             cell.setStyle("-fx-border-color: #f0f0f0; -fx-border-width: 0 0 1 0; -fx-padding: 5;");
@@ -433,6 +502,17 @@ public class BookmarkHistoryPanel extends VBox {
             
             actionBox.getChildren().addAll(openBtn, deleteBtn);
             
+            if (panel != null && getListView() == panel.historyList) {
+                Button forgetBtn = new Button("Forget Site");
+                forgetBtn.setStyle("-fx-font-size: 9; -fx-padding: 2 5;");
+                forgetBtn.setFocusTraversable(false);
+                forgetBtn.setOnAction(e -> {
+                    panel.forgetSiteConfirm(item);
+                    e.consume();
+                });
+                actionBox.getChildren().add(forgetBtn);
+            }
+            
             cell.getChildren().addAll(titleLabel, urlLabel, timeLabel, actionBox);
             
             setGraphic(cell);
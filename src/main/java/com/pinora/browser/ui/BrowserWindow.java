@@ -16,7 +16,6 @@ import javafx.scene.web.WebView;
 import javafx.scene.image.Image;
 import javafx.application.Platform;
 import com.pinora.browser.core.BrowserEngine;
-import com.pinora.browser.core.CookieInterceptor;
 import com.pinora.browser.util.ConfigManager;
 import com.pinora.browser.util.SearchEngine;
 import com.pinora.browser.util.SessionManager;
@@ -47,7 +46,6 @@ public class BrowserWindow {
     private SplitPane mainSplitPane;
     private CheckMenuItem showDeveloperConsoleMenuItem;
     private ExtensionManager extensionManager;
-    private CookieInterceptor cookieInterceptor;
     private YouTubeExternalPlayerHandler youtubePlayer;
     private Button backButton;
     private Button forwardButton;
@@ -56,7 +54,7 @@ public class BrowserWindow {
     private Stage bookmarksPanelStage;
     private Stage historyPanelStage;
     private com.pinora.browser.extensions.webext.WebExtensionLoader webExtensionLoader;
-    private DownloadManager downloadManager = new DownloadManager();
+    private DownloadManager downloadManager;
     private double zoomLevel = 1.0; // Track current zoom level
     private static final double ZOOM_INCREMENT = 0.1; // 10% per zoom step
     private static final double MIN_ZOOM = 0.5;
@@ -72,9 +70,9 @@ public class BrowserWindow {
     public BrowserWindow() {
         this.browserEngine = new BrowserEngine();
         this.extensionManager = new ExtensionManager();
-        this.cookieInterceptor = new CookieInterceptor(browserEngine.getCookieManager());
         this.suggestionsManager = new SearchSuggestionsManager();
-        this.developerConsole = new DeveloperConsole();
+        this.developerConsole = new DeveloperConsole(browserEngine.getCacheManager());
+        this.downloadManager = new DownloadManager(browserEngine.getHttpClient());
         this.youtubePlayer = new YouTubeExternalPlayerHandler();
     }
 
@@ -136,6 +134,15 @@ public class BrowserWindow {
             }
         });
         
+        // Flush queued history writes however the window goes away (File > Exit skips close requests)
+        primaryStage.setOnHidden(event -> {
+            try {
+                browserEngine.shutdown();
+            } catch (Exception e) {
+                logger.error("Error during shutdown: {}", e.getMessage());
+            }
+        });
+        
         // Load extensions after the UI is visible
         try {
             extensionManager.loadExtensions(this);
@@ -262,7 +269,7 @@ public class BrowserWindow {
         MenuItem manageExtensions = new MenuItem("Manage Extensions...");
         manageExtensions.setOnAction(e -> {
             try {
-                new WebExtensionsManagerDialog(stage, extensionManager, new WebExtensionInstaller()).showAndWait();
+                new WebExtensionsManagerDialog(stage, extensionManager, new WebExtensionInstaller(browserEngine.getHttpClient())).showAndWait();
             } catch (Exception ex) {
                 logger.warn("Failed to open Extensions manager: {}", ex.getMessage());
             }
@@ -427,6 +434,9 @@ public class BrowserWindow {
      * Initialize WebEngine with proper settings for image/video rendering, audio, and error handling
      */
     private void initializeWebEngine(WebEngine engine) {
+        // Keep third-party cookie blocking in step with the sites open in tabs
+        engine.locationProperty().addListener((obs, oldLocation, newLocation) -> updateFirstPartySites());
+        
         // Create persistent cache directories
         try {
             java.io.File cacheDir = new java.io.File(System.getProperty("user.home") + "/.pinora-browser/cache");
@@ -753,21 +763,9 @@ public class BrowserWindow {
                 // run a HEAD request in background to inspect content-type
                 new Thread(() -> {
                     try {
-                        java.net.URL u = URI.create(loc).toURL();
-                        java.net.HttpURLConnection c = (java.net.HttpURLConnection) u.openConnection();
-                        c.setRequestMethod("HEAD");
-                        c.setRequestProperty("User-Agent", "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36");
-                        c.setInstanceFollowRedirects(true);
-                        
-                        // Add cookies from cookie manager to the request
-                        cookieInterceptor.addCookiesFromManager(c, loc);
-                        
-                        c.connect();
-                        
-                        // Extract any cookies from the response
-                        cookieInterceptor.extractCookiesFromResponse(c, loc);
-                        
-                        String ct = c.getContentType();
+                        // Shared client: reuses pooled connections to the page's origin and its cookies
+                        String ct = browserEngine.getHttpClient().head(URI.create(loc))
+                            .headers().firstValue("Content-Type").orElse(null);
                         if (ct != null && !ct.toLowerCase().startsWith("text/html")) {
                             // cancel navigation and prompt download
                             try { engine.getLoadWorker().cancel(); } catch (Exception ignored) {}
@@ -1110,6 +1108,26 @@ public class BrowserWindow {
                 logger.debug("WebEngine resources cleaned up for closed tab: {}", tabName);
             }
         }
+        updateFirstPartySites();
+    }
+    
+    /**
+     * Tell the cookie handler which sites are open as top-level pages
+     */
+    private void updateFirstPartySites() {
+        if (tabPane == null) {
+            return;
+        }
+        java.util.List<String> locations = new ArrayList<>();
+        for (Tab t : tabPane.getTabs()) {
+            if (t.getContent() instanceof WebView wv) {
+                String location = wv.getEngine().getLocation();
+                if (location != null && !location.isEmpty()) {
+                    locations.add(location);
+                }
+            }
+        }
+        browserEngine.getCookieHandler().setFirstPartySites(locations);
     }
 
     private void handleZoomIn() {
@@ -1446,21 +1464,9 @@ private void closeCurrentTab() {
                 // run a HEAD request in background to inspect content-type
                 new Thread(() -> {
                     try {
-                        java.net.URL u = URI.create(loc).toURL();
-                        java.net.HttpURLConnection c = (java.net.HttpURLConnection) u.openConnection();
-                        c.setRequestMethod("HEAD");
-                        c.setRequestProperty("User-Agent", "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36");
-                        c.setInstanceFollowRedirects(true);
-                        
-                        // Add cookies from cookie manager to the request
-                        cookieInterceptor.addCookiesFromManager(c, loc);
-                        
-                        c.connect();
-                        
-                        // Extract any cookies from the response
-                        cookieInterceptor.extractCookiesFromResponse(c, loc);
-                        
-                        String ct = c.getContentType();
+                        // Shared client: reuses pooled connections to the page's origin and its cookies
+                        String ct = browserEngine.getHttpClient().head(URI.create(loc))
+                            .headers().firstValue("Content-Type").orElse(null);
                         if (ct != null && !ct.toLowerCase().startsWith("text/html")) {
                             // cancel navigation and prompt download
                             try { engine.getLoadWorker().cancel(); } catch (Exception ignored) {}
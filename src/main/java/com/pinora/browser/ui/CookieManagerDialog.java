@@ -1,5 +1,6 @@
 package com.pinora.browser.ui;
 
+import javafx.animation.PauseTransition;
 import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.scene.Scene;
@@ -10,6 +11,7 @@ import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 import javafx.stage.FileChooser;
+import javafx.util.Duration;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import com.pinora.browser.core.CookieData;
@@ -21,26 +23,52 @@ import java.io.File;
 import java.io.FileWriter;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Cookie Manager Dialog for viewing, editing, and managing cookies
+ * Cookie Manager Dialog for viewing, editing, and managing cookies.
+ *
+ * Filtering, domain counting and statistics run on a background loader thread
+ * and reach the table a page at a time, so the dialog opens at once however
+ * large the jar is. A newer load supersedes an older one mid-way.
  */
 public class CookieManagerDialog {
     
     private static final Logger logger = LoggerFactory.getLogger(CookieManagerDialog.class);
+    private static final int PAGE_SIZE = 500;
+    private static final Duration SEARCH_DELAY = Duration.millis(250);
     
     private CookieManager cookieManager;
     private Stage stage;
     private TableView<CookieData> cookieTable;
+    private final ObservableList<CookieData> rows = FXCollections.observableArrayList();
     private ComboBox<String> domainFilter;
+    private final ObservableList<String> domainItems = FXCollections.observableArrayList(""); // sorted, "" for all domains
+    private final Map<String, Integer> domainCounts = new HashMap<>(); // FX thread only
+    private boolean updatingDomains;
+    private TextField searchField;
+    private final PauseTransition searchDelay = new PauseTransition(SEARCH_DELAY);
+    private Label tableLabel;
     private TextArea detailsArea;
     private Label statsLabel;
     private CheckBox blockTrackingCheckBox;
     private CheckBox blockThirdPartyCheckBox;
     
+    private final AtomicInteger loadGeneration = new AtomicInteger();
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "CookieManagerDialog-Loader");
+        t.setDaemon(true);
+        return t;
+    });
+    
     public CookieManagerDialog(CookieManager cookieManager) {
         this.cookieManager = cookieManager;
     }
@@ -67,10 +95,14 @@ public class CookieManagerDialog {
         
         Scene scene = new Scene(root);
         stage.setScene(scene);
+        stage.setOnHidden(e -> {
+            loadGeneration.incrementAndGet();
+            loader.shutdownNow();
+        });
         stage.show();
         
-        // Refresh the data
-        refreshCookieTable();
+        // Load the data in the background
+        refreshCookieTable(true);
     }
     
     private VBox createToolbar() {
@@ -92,12 +124,37 @@ public class CookieManagerDialog {
         filterBox.setStyle("-fx-border-color: #e0e0e0; -fx-border-radius: 3; -fx-background-color: #f5f5f5;");
         
         Label filterLabel = new Label("Filter by domain:");
-        domainFilter = new ComboBox<>();
+        domainFilter = new ComboBox<>(domainItems);
         domainFilter.setPrefWidth(200);
         domainFilter.setPromptText("All domains");
-        domainFilter.valueProperty().addListener((obs, oldVal, newVal) -> filterCookies());
+        domainFilter.setCellFactory(list -> new ListCell<>() {
+            @Override
+            protected void updateItem(String domain, boolean empty) {
+                super.updateItem(domain, empty);
+                if (empty || domain == null) {
+                    setText(null);
+                } else if (domain.isEmpty()) {
+                    setText("All domains");
+                } else {
+                    setText(domain + " (" + domainCounts.getOrDefault(domain, 0) + ")");
+                }
+            }
+        });
+        domainFilter.valueProperty().addListener((obs, oldVal, newVal) -> {
+            if (!updatingDomains) {
+                filterCookies();
+            }
+        });
         
-        filterBox.getChildren().addAll(filterLabel, domainFilter);
+        // Typing restarts the delay, so the filter runs once the user pauses
+        Label searchLabel = new Label("Search:");
+        searchField = new TextField();
+        searchField.setPromptText("Name, domain or value");
+        searchField.setPrefWidth(220);
+        searchDelay.setOnFinished(e -> filterCookies());
+        searchField.textProperty().addListener((obs, oldVal, newVal) -> searchDelay.playFromStart());
+        
+        filterBox.getChildren().addAll(filterLabel, domainFilter, searchLabel, searchField);
         HBox.setHgrow(domainFilter, Priority.SOMETIMES);
         toolbar.getChildren().add(filterBox);
         
@@ -129,10 +186,10 @@ public class CookieManagerDialog {
         
         // Left: Cookie table
         VBox tableBox = new VBox(5);
-        Label tableLabel = new Label("Cookies:");
+        tableLabel = new Label("Cookies:");
         tableLabel.setStyle("-fx-font-weight: bold;");
         
-        cookieTable = new TableView<>();
+        cookieTable = new TableView<>(rows);
         cookieTable.setColumnResizePolicy(TableView.UNCONSTRAINED_RESIZE_POLICY);
         
         TableColumn<CookieData, String> nameCol = new TableColumn<>("Name");
@@ -228,7 +285,7 @@ public class CookieManagerDialog {
         
         Button refreshButton = new Button("Refresh");
         refreshButton.setStyle("-fx-padding: 8 15;");
-        refreshButton.setOnAction(e -> refreshCookieTable());
+        refreshButton.setOnAction(e -> refreshCookieTable(true));
         
         Button closeButton = new Button("Close");
         closeButton.setStyle("-fx-padding: 8 15;");
@@ -264,48 +321,178 @@ public class CookieManagerDialog {
     }
     
     private void filterCookies() {
-        refreshCookieTable();
+        refreshCookieTable(false);
     }
     
-    private void refreshCookieTable() {
-        Platform.runLater(() -> {
-            ObservableList<CookieData> items = FXCollections.observableArrayList();
+    /**
+     * Reload the table for the current domain filter and search text in the background,
+     * superseding any load still running. Domain counts are recounted only when asked.
+     * Must be called on the FX thread.
+     */
+    private void refreshCookieTable(boolean recountDomains) {
+        int generation = loadGeneration.incrementAndGet();
+        String domain = domainFilter.getValue();
+        String query = searchField.getText() != null ? searchField.getText().trim() : "";
+        tableLabel.setText("Cookies: loading...");
+        try {
+            loader.execute(() -> loadCookies(generation, domain, query, recountDomains));
+        } catch (Exception e) {
+            // The dialog has been closed
+            logger.debug("Cookie load not started", e);
+        }
+    }
+    
+    /**
+     * Runs on the loader thread: stream matching cookies to the table page by page,
+     * then the domain counts and statistics
+     */
+    private void loadCookies(int generation, String domain, String query, boolean recountDomains) {
+        try {
+            List<CookieData> all = cookieManager.getAllCookies();
+            List<CookieData> source = domain == null || domain.isEmpty() ? all : cookieManager.getCookiesForDomain(domain);
             
-            String selectedDomain = domainFilter.getValue();
+            List<CookieData> page = new ArrayList<>(PAGE_SIZE);
+            boolean first = true;
+            for (CookieData cookie : source) {
+                if (loadGeneration.get() != generation) {
+                    return;
+                }
+                if (matches(cookie, query)) {
+                    page.add(cookie);
+                    if (page.size() == PAGE_SIZE) {
+                        publishPage(generation, page, first, false, all.size());
+                        page = new ArrayList<>(PAGE_SIZE);
+                        first = false;
+                    }
+                }
+            }
+            publishPage(generation, page, first, true, all.size());
             
-            if (selectedDomain == null || selectedDomain.isEmpty()) {
-                items.addAll(cookieManager.getAllValidCookies());
+            if (recountDomains) {
+                Map<String, Integer> counts = new HashMap<>();
+                for (CookieData cookie : all) {
+                    counts.merge(cookie.getDomain(), 1, Integer::sum);
+                }
+                List<String> sorted = new ArrayList<>(counts.keySet());
+                Collections.sort(sorted);
+                Platform.runLater(() -> applyDomainCounts(counts, sorted));
+            }
+            refreshStatistics();
+        } catch (Exception e) {
+            logger.error("Failed to load cookies", e);
+        }
+    }
+    
+    private void publishPage(int generation, List<CookieData> page, boolean first, boolean last, int total) {
+        Platform.runLater(() -> {
+            if (loadGeneration.get() != generation) {
+                return;
+            }
+            if (first) {
+                rows.setAll(page);
             } else {
-                items.addAll(cookieManager.getCookiesForDomain(selectedDomain));
+                rows.addAll(page);
             }
-            
-            cookieTable.setItems(items);
-            
-            // Update domain filter options
-            List<String> domains = cookieManager.getAllDomains();
-            ObservableList<String> domainItems = FXCollections.observableArrayList();
-            domainItems.add(""); // Empty option for "All domains"
-            domainItems.addAll(domains);
-            String current = domainFilter.getValue();
-            domainFilter.setItems(domainItems);
-            domainFilter.setValue(current);
-            
-            // Update statistics
-            updateStatistics();
+            tableLabel.setText(String.format("Cookies: %,d of %,d%s", rows.size(), total, last ? "" : " (loading...)"));
         });
     }
     
-    private void updateStatistics() {
+    private void applyDomainCounts(Map<String, Integer> counts, List<String> sorted) {
+        String current = domainFilter.getValue();
+        updatingDomains = true;
+        try {
+            domainCounts.clear();
+            domainCounts.putAll(counts);
+            List<String> items = new ArrayList<>(sorted.size() + 1);
+            items.add("");
+            items.addAll(sorted);
+            domainItems.setAll(items);
+            domainFilter.setValue(current);
+        } finally {
+            updatingDomains = false;
+        }
+    }
+    
+    /**
+     * Account for one removed cookie without recounting the jar
+     */
+    private void decrementDomainCount(String domain) {
+        Integer count = domainCounts.get(domain);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            domainCounts.put(domain, count - 1);
+            return;
+        }
+        domainCounts.remove(domain);
+        int at = Collections.binarySearch(domainItems.subList(1, domainItems.size()), domain);
+        if (at >= 0 && !domain.equals(domainFilter.getValue())) {
+            updatingDomains = true;
+            try {
+                domainItems.remove(at + 1);
+            } finally {
+                updatingDomains = false;
+            }
+        }
+    }
+    
+    private static boolean matches(CookieData cookie, String query) {
+        return query.isEmpty()
+            || containsIgnoreCase(cookie.getName(), query)
+            || containsIgnoreCase(cookie.getDomain(), query)
+            || containsIgnoreCase(cookie.getValue(), query);
+    }
+    
+    private static boolean containsIgnoreCase(String text, String query) {
+        if (text == null) {
+            return false;
+        }
+        for (int i = 0; i + query.length() <= text.length(); i++) {
+            if (text.regionMatches(true, i, query, 0, query.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Compute statistics on the loader thread and show them when done
+     */
+    private void refreshStatistics() {
         Map<String, Object> stats = cookieManager.getCookieStatistics();
+        Platform.runLater(() -> updateStatistics(stats));
+    }
+    
+    private void updateStatistics(Map<String, Object> stats) {
         String statsText = String.format(
-            "Total: %d | Session: %d | Persistent: %d | Secure: %d | Domains: %d",
+            "Total: %d | Session: %d | Persistent: %d | Secure: %d | Domains: %d | Evicted: %d",
             stats.get("totalCookies"),
             stats.get("sessionCookies"),
             stats.get("persistentCookies"),
             stats.get("secureCookies"),
-            stats.get("uniqueDomains")
+            stats.get("uniqueDomains"),
+            stats.get("evictedCookies")
         );
         statsLabel.setText(statsText);
+        
+        // Show which sites lost cookies to the quotas
+        StringBuilder evicted = new StringBuilder(String.format(
+            "Limits: %d cookies, %d per site", stats.get("maxCookies"), stats.get("maxCookiesPerSite")));
+        Object bySite = stats.get("evictedBySite");
+        if (bySite instanceof Map<?, ?> sites && !sites.isEmpty()) {
+            evicted.append("\nEvicted by site:");
+            sites.forEach((site, count) -> evicted.append("\n  ").append(site).append(": ").append(count));
+        }
+        statsLabel.setTooltip(new Tooltip(evicted.toString()));
+    }
+    
+    private void submitStatisticsRefresh() {
+        try {
+            loader.execute(this::refreshStatistics);
+        } catch (Exception e) {
+            logger.debug("Statistics refresh not started", e);
+        }
     }
     
     private void deleteSelectedCookie() {
@@ -319,7 +506,10 @@ public class CookieManagerDialog {
             Optional<ButtonType> result = confirm.showAndWait();
             if (result.isPresent() && result.get() == ButtonType.OK) {
                 cookieManager.deleteCookie(selected.getDomain(), selected.getPath(), selected.getName());
-                refreshCookieTable();
+                rows.remove(selected);
+                decrementDomainCount(selected.getDomain());
+                detailsArea.clear();
+                submitStatisticsRefresh();
             }
         }
     }
@@ -333,8 +523,12 @@ public class CookieManagerDialog {
         Optional<ButtonType> result = confirm.showAndWait();
         if (result.isPresent() && result.get() == ButtonType.OK) {
             cookieManager.deleteAllCookies();
-            refreshCookieTable();
+            loadGeneration.incrementAndGet();
+            rows.clear();
+            applyDomainCounts(Collections.emptyMap(), Collections.emptyList());
+            tableLabel.setText("Cookies: 0 of 0");
             detailsArea.clear();
+            submitStatisticsRefresh();
         }
     }
     
@@ -347,7 +541,7 @@ public class CookieManagerDialog {
         Optional<ButtonType> result = confirm.showAndWait();
         if (result.isPresent() && result.get() == ButtonType.OK) {
             cookieManager.deleteSessionCookies();
-            refreshCookieTable();
+            refreshCookieTable(true);
             detailsArea.clear();
         }
     }
@@ -397,7 +591,7 @@ public class CookieManagerDialog {
                 String json = new String(Files.readAllBytes(Paths.get(selectedFile.getAbsolutePath())));
                 int imported = cookieManager.importCookiesFromJSON(json);
                 
-                refreshCookieTable();
+                refreshCookieTable(true);
                 
                 Alert alert = new Alert(Alert.AlertType.INFORMATION);
                 alert.setTitle("Import Successful");
@@ -1,12 +1,18 @@
 package com.pinora.browser.ui;
 
+import com.pinora.browser.core.CacheManager;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.scene.control.*;
+import javafx.scene.layout.GridPane;
 import javafx.scene.layout.VBox;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
 import javafx.geometry.Insets;
 import javafx.scene.paint.Color;
 import javafx.application.Platform;
+import javafx.util.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -14,9 +20,11 @@ import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /**
- * Developer Console panel for displaying JavaScript console output
+ * Developer Console panel for displaying JavaScript console output, with a
+ * second tab showing live HTTP cache statistics
  */
 public class DeveloperConsole extends VBox {
     
@@ -28,7 +36,17 @@ public class DeveloperConsole extends VBox {
     private List<ConsoleMessage> allMessages = new ArrayList<>();
     private DateTimeFormatter timeFormatter = DateTimeFormatter.ofPattern("HH:mm:ss.SSS");
     
-    public DeveloperConsole() {
+    private final CacheManager cacheManager;
+    private Tab cacheTab;
+    private Timeline cacheRefresh;
+    private final List<Label> cacheValues = new ArrayList<>();
+    private static final String[] CACHE_CAPTIONS = {
+        "Entries", "Size", "Hit ratio", "Hits / misses", "Revalidated (304)", "Stored",
+        "Evicted", "Rejected by policy", "Hit latency", "Network latency", "Revalidation latency"
+    };
+    
+    public DeveloperConsole(CacheManager cacheManager) {
+        this.cacheManager = cacheManager;
         initializeUI();
     }
     
@@ -37,9 +55,11 @@ public class DeveloperConsole extends VBox {
         this.setPadding(new Insets(5));
         this.setSpacing(5);
         
+        VBox consolePane = new VBox(5);
+        
         // Toolbar
         HBox toolbar = createToolbar();
-        this.getChildren().add(toolbar);
+        consolePane.getChildren().add(toolbar);
         
         // Message list
         messageList = new ListView<>();
@@ -47,8 +67,127 @@ public class DeveloperConsole extends VBox {
         messageList.setCellFactory(param -> new ConsoleMessageCell());
         messageList.setStyle("-fx-control-inner-background: #1e1e1e; -fx-text-fill: #e0e0e0;");
         
-        this.getChildren().add(messageList);
+        consolePane.getChildren().add(messageList);
         VBox.setVgrow(messageList, Priority.ALWAYS);
+        
+        Tab consoleTab = new Tab("Console", consolePane);
+        cacheTab = new Tab("Cache", createCachePanel());
+        TabPane tabs = new TabPane(consoleTab, cacheTab);
+        tabs.setTabClosingPolicy(TabPane.TabClosingPolicy.UNAVAILABLE);
+        this.getChildren().add(tabs);
+        VBox.setVgrow(tabs, Priority.ALWAYS);
+        
+        // Poll the cache counters only while the tab is on screen
+        cacheRefresh = new Timeline(new KeyFrame(Duration.seconds(1), e -> refreshCacheStatistics()));
+        cacheRefresh.setCycleCount(Animation.INDEFINITE);
+        cacheTab.selectedProperty().addListener((obs, oldVal, newVal) -> updateCacheRefresh());
+        visibleProperty().addListener((obs, oldVal, newVal) -> updateCacheRefresh());
+    }
+    
+    private VBox createCachePanel() {
+        GridPane grid = new GridPane();
+        grid.setHgap(20);
+        grid.setVgap(4);
+        grid.setPadding(new Insets(5));
+        for (int i = 0; i < CACHE_CAPTIONS.length; i++) {
+            Label value = new Label("-");
+            cacheValues.add(value);
+            grid.add(new Label(CACHE_CAPTIONS[i] + ":"), 0, i);
+            grid.add(value, 1, i);
+        }
+        
+        Button refreshButton = new Button("Refresh");
+        refreshButton.setStyle("-fx-padding: 5 15;");
+        refreshButton.setOnAction(e -> refreshCacheStatistics());
+        
+        Button clearButton = new Button("Clear Cache");
+        clearButton.setStyle("-fx-padding: 5 15;");
+        clearButton.setOnAction(e -> clearCache());
+        
+        HBox buttons = new HBox(10, refreshButton, clearButton);
+        buttons.setPadding(new Insets(5));
+        
+        VBox panel = new VBox(5, grid, buttons);
+        panel.setPadding(new Insets(5));
+        return panel;
+    }
+    
+    private void updateCacheRefresh() {
+        if (isVisible() && cacheTab.isSelected()) {
+            refreshCacheStatistics();
+            cacheRefresh.play();
+        } else {
+            cacheRefresh.stop();
+        }
+    }
+    
+    private void refreshCacheStatistics() {
+        Map<String, Object> stats = cacheManager.getCacheStatistics();
+        String[] values = {
+            String.format("%d", number(stats, "entries")),
+            String.format("%s of %s (slabs hold %s)", formatBytes(number(stats, "size")),
+                formatBytes(number(stats, "maxSize")), formatBytes(number(stats, "slabBytesAllocated"))),
+            String.format("%.1f%%", ((Number) stats.get("hitRatio")).doubleValue() * 100),
+            String.format("%d / %d", number(stats, "hits"), number(stats, "misses")),
+            String.format("%d", number(stats, "revalidated")),
+            String.format("%d responses, %s", number(stats, "stores"), formatBytes(number(stats, "bytesStored"))),
+            String.format("%d entries, %s", number(stats, "evictions"), formatBytes(number(stats, "evictedBytes"))),
+            String.format("%d", number(stats, "rejectedByPolicy")),
+            formatLatency(stats, "hitLatency"),
+            formatLatency(stats, "networkLatency"),
+            formatLatency(stats, "revalidationLatency")
+        };
+        for (int i = 0; i < values.length; i++) {
+            cacheValues.get(i).setText(values[i]);
+        }
+    }
+    
+    private void clearCache() {
+        // Deleting thousands of entries is disk work, keep it off the FX thread
+        Thread clearer = new Thread(() -> {
+            try {
+                cacheManager.clear();
+            } catch (Exception e) {
+                logger.error("Failed to clear cache", e);
+            }
+            Platform.runLater(this::refreshCacheStatistics);
+        }, "DeveloperConsole-ClearCache");
+        clearer.setDaemon(true);
+        clearer.start();
+    }
+    
+    private static long number(Map<String, Object> stats, String key) {
+        Object value = stats.get(key);
+        return value instanceof Number n ? n.longValue() : 0;
+    }
+    
+    private static String formatLatency(Map<String, Object> stats, String name) {
+        long count = number(stats, name + "Count");
+        if (count == 0) {
+            return "-";
+        }
+        return String.format("p50 < %s, p99 < %s (%d samples)",
+            formatNanos(number(stats, name + "P50Nanos")), formatNanos(number(stats, name + "P99Nanos")), count);
+    }
+    
+    private static String formatNanos(long nanos) {
+        if (nanos < 10_000) {
+            return nanos + " ns";
+        }
+        if (nanos < 10_000_000) {
+            return nanos / 1000 + " us";
+        }
+        return nanos / 1_000_000 + " ms";
+    }
+    
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        if (bytes < 1024 * 1024) {
+            return String.format("%.1f KB", bytes / 1024.0);
+        }
+        return String.format("%.1f MB", bytes / (1024.0 * 1024));
     }
     
     private HBox createToolbar() {
@@ -1,5 +1,6 @@
 package com.pinora.browser.ui;
 
+import com.pinora.browser.core.BrowserHttpClient;
 import javafx.application.Platform;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.SimpleDoubleProperty;
@@ -18,9 +19,11 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
-import java.net.HttpURLConnection;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URL;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
@@ -33,6 +36,7 @@ public class DownloadManager {
 
     private static final Logger logger = LoggerFactory.getLogger(DownloadManager.class);
 
+    private final BrowserHttpClient httpClient;
     private ListView<DownloadEntry> downloadList;
     private Stage stage;
     private VBox view;
@@ -40,6 +44,10 @@ public class DownloadManager {
     // track active tasks by id
     private final ConcurrentHashMap<DownloadEntry, Thread> activeThreads = new ConcurrentHashMap<>();
 
+    public DownloadManager(BrowserHttpClient httpClient) {
+        this.httpClient = httpClient;
+    }
+
     public void show(Stage owner) {
         if (stage == null) {
             stage = new Stage();
@@ -99,21 +107,20 @@ public class DownloadManager {
         Thread t = new Thread(() -> {
             try {
                 entry.setStatus("Downloading");
-                URL url = URI.create(entry.url).toURL();
                 Path tmp = entry.target.resolveSibling(entry.target.getFileName().toString() + ".part");
 
                 long existing = Files.exists(tmp) ? Files.size(tmp) : 0L;
 
-                HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                try {
-                    if (existing > 0) {
-                        conn.setRequestProperty("Range", "bytes=" + existing + "-");
-                    }
-                    conn.setRequestProperty("User-Agent", "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36");
-                    conn.connect();
-
-                    int response = conn.getResponseCode();
-                    long contentLength = conn.getHeaderFieldLong("Content-Length", -1);
+                HttpRequest.Builder request = httpClient.newRequest(URI.create(entry.url));
+                if (existing > 0) {
+                    request.header("Range", "bytes=" + existing + "-");
+                }
+                // A download can run or sit paused for a long time, so it does not keep one of its origin's connection slots
+                HttpResponse<InputStream> httpResponse = httpClient.download(request.build());
+                try (InputStream in = httpResponse.body()) {
+                    int response = httpResponse.statusCode();
+                    if (response >= 400) throw new IOException("HTTP " + response);
+                    long contentLength = httpResponse.headers().firstValueAsLong("Content-Length").orElse(-1);
                     long total = (contentLength > 0 && existing > 0 && response == 206) ? existing + contentLength : (contentLength > 0 ? contentLength : -1);
                 entry.setTotalSize(total);
 
@@ -122,22 +129,20 @@ public class DownloadManager {
                     byte[] buf = new byte[8192];
                     int r;
                     long downloaded = existing;
-                    try (var in = conn.getInputStream()) {
-                        while ((r = in.read(buf)) != -1) {
-                            if (entry.isCanceled()) {
-                                entry.setStatus("Canceled");
-                                break;
-                            }
-                            while (entry.isPaused()) {
-                                Thread.sleep(200);
-                                if (entry.isCanceled()) break;
-                            }
-                            raf.write(buf, 0, r);
-                            downloaded += r;
-                            final long dl = downloaded;
-                            if (total > 0) entry.setProgress((double) dl / total);
-                            entry.setDownloaded(dl);
+                    while ((r = in.read(buf)) != -1) {
+                        if (entry.isCanceled()) {
+                            entry.setStatus("Canceled");
+                            break;
+                        }
+                        while (entry.isPaused()) {
+                            Thread.sleep(200);
+                            if (entry.isCanceled()) break;
                         }
+                        raf.write(buf, 0, r);
+                        downloaded += r;
+                        final long dl = downloaded;
+                        if (total > 0) entry.setProgress((double) dl / total);
+                        entry.setDownloaded(dl);
                     }
                         if (!entry.isCanceled()) {
                             // move .part to final file (overwrite if exists)
@@ -148,8 +153,6 @@ public class DownloadManager {
                             try { Files.deleteIfExists(tmp); } catch (IOException ignored) {}
                         }
                     }
-                } finally {
-                    conn.disconnect();
                 }
             } catch (Exception e) {
                 logger.warn("Download failed: {}", e.getMessage());
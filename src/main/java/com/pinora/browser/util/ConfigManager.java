@@ -43,11 +43,25 @@ public class ConfigManager {
     public static String getHistoryFile() {
         return CONFIG_DIR + "/history.json";
     }
+
+    /**
+     * Get the directory holding the segmented history log
+     */
+    public static String getHistoryDirectory() {
+        return CONFIG_DIR + "/history";
+    }
     
     public static String getBookmarksFile() {
         return CONFIG_DIR + "/bookmarks.json";
     }
     
+    /**
+     * Get the file listing tracking-cookie name patterns, one per line
+     */
+    public static String getTrackerPatternsFile() {
+        return CONFIG_DIR + "/tracker_patterns.txt";
+    }
+    
     public static String getCacheDirectory() {
         return CONFIG_DIR + "/cache";
     }
@@ -518,4 +532,130 @@ public class ConfigManager {
             logger.warn("Failed to write save cookies between sessions preference: {}", e.getMessage());
         }
     }
+
+    /**
+     * Get maximum number of stored cookies
+     */
+    public static int getMaxCookies() {
+        try {
+            File f = new File(CONFIG_FILE);
+            if (!f.exists()) return 3000;
+            try (FileReader r = new FileReader(f)) {
+                JsonObject obj = GSON.fromJson(r, JsonObject.class);
+                if (obj != null && obj.has("maxCookies")) {
+                    return obj.get("maxCookies").getAsInt();
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to read maximum number of stored cookies: {}", e.getMessage());
+        }
+        return 3000;
+    }
+
+    /**
+     * Set maximum number of stored cookies
+     */
+    public static void setMaxCookies(int limit) {
+        try {
+            JsonObject obj = new JsonObject();
+            File f = new File(CONFIG_FILE);
+            if (f.exists()) {
+                try (FileReader r = new FileReader(f)) {
+                    JsonObject prev = GSON.fromJson(r, JsonObject.class);
+                    if (prev != null) obj = prev;
+                }
+            }
+            obj.addProperty("maxCookies", limit);
+            try (FileWriter w = new FileWriter(f)) {
+                GSON.toJson(obj, w);
+            }
+            logger.info("Maximum number of stored cookies: {}", limit);
+        } catch (Exception e) {
+            logger.warn("Failed to write maximum number of stored cookies: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Get maximum number of cookies per site
+     */
+    public static int getMaxCookiesPerSite() {
+        try {
+            File f = new File(CONFIG_FILE);
+            if (!f.exists()) return 180;
+            try (FileReader r = new FileReader(f)) {
+                JsonObject obj = GSON.fromJson(r, JsonObject.class);
+                if (obj != null && obj.has("maxCookiesPerSite")) {
+                    return obj.get("maxCookiesPerSite").getAsInt();
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to read maximum number of cookies per site: {}", e.getMessage());
+        }
+        return 180;
+    }
+
+    /**
+     * Set maximum number of cookies per site
+     */
+    public static void setMaxCookiesPerSite(int limit) {
+        try {
+            JsonObject obj = new JsonObject();
+            File f = new File(CONFIG_FILE);
+            if (f.exists()) {
+                try (FileReader r = new FileReader(f)) {
+                    JsonObject prev = GSON.fromJson(r, JsonObject.class);
+                    if (prev != null) obj = prev;
+                }
+            }
+            obj.addProperty("maxCookiesPerSite", limit);
+            try (FileWriter w = new FileWriter(f)) {
+                GSON.toJson(obj, w);
+            }
+            logger.info("Maximum number of cookies per site: {}", limit);
+        } catch (Exception e) {
+            logger.warn("Failed to write maximum number of cookies per site: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Get maximum size of the HTTP cache on disk, in bytes
+     */
+    public static long getMaxCacheSize() {
+        try {
+            File f = new File(CONFIG_FILE);
+            if (!f.exists()) return 256L * 1024 * 1024;
+            try (FileReader r = new FileReader(f)) {
+                JsonObject obj = GSON.fromJson(r, JsonObject.class);
+                if (obj != null && obj.has("maxCacheSize")) {
+                    return obj.get("maxCacheSize").getAsLong();
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to read maximum HTTP cache size: {}", e.getMessage());
+        }
+        return 256L * 1024 * 1024;
+    }
+
+    /**
+     * Set maximum size of the HTTP cache on disk, in bytes
+     */
+    public static void setMaxCacheSize(long bytes) {
+        try {
+            JsonObject obj = new JsonObject();
+            File f = new File(CONFIG_FILE);
+            if (f.exists()) {
+                try (FileReader r = new FileReader(f)) {
+                    JsonObject prev = GSON.fromJson(r, JsonObject.class);
+                    if (prev != null) obj = prev;
+                }
+            }
+            obj.addProperty("maxCacheSize", bytes);
+            try (FileWriter w = new FileWriter(f)) {
+                GSON.toJson(obj, w);
+            }
+            logger.info("Maximum HTTP cache size: {} bytes", bytes);
+        } catch (Exception e) {
+            logger.warn("Failed to write maximum HTTP cache size: {}", e.getMessage());
+        }
+    }
 }
@@ -0,0 +1,173 @@
+package com.pinora.browser.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Trie keyed by host name labels in reverse order ({@code www.example.com}
+ * is stored under com -> example -> www), so a domain and all of its
+ * subdomains share one subtree. Host names are expected to be normalized
+ * (see {@link URLUtil#normalizeHost}).
+ *
+ * Updates must come from one thread at a time; lookups and traversals may run
+ * concurrently with them and see each host either before or after an update.
+ */
+public class DomainTrie<V> {
+
+    private final Node<V> root = new Node<>();
+    private volatile int size;
+
+    public V get(String host) {
+        Node<V> node = find(host);
+        return node != null ? node.value : null;
+    }
+
+    public V put(String host, V value) {
+        Node<V> node = descend(host);
+        V previous = node.value;
+        node.value = value;
+        if (previous == null) {
+            size = size + 1;
+        }
+        return previous;
+    }
+
+    public V computeIfAbsent(String host, Function<String, V> factory) {
+        Node<V> node = descend(host);
+        if (node.value == null) {
+            node.value = factory.apply(host);
+            size = size + 1;
+        }
+        return node.value;
+    }
+
+    /**
+     * Remove the value for a host, pruning branches left empty
+     */
+    public V remove(String host) {
+        List<Node<V>> path = new ArrayList<>();
+        List<String> labels = new ArrayList<>();
+        Node<V> node = root;
+        int end = host.length();
+        while (node != null && end > 0) {
+            int dot = host.lastIndexOf('.', end - 1);
+            String label = host.substring(dot + 1, end);
+            path.add(node);
+            labels.add(label);
+            node = node.children != null ? node.children.get(label) : null;
+            end = dot < 0 ? 0 : dot;
+        }
+        if (node == null || node.value == null) {
+            return null;
+        }
+        V previous = node.value;
+        node.value = null;
+        size = size - 1;
+        for (int i = path.size() - 1; i >= 0 && node.isEmpty(); i--) {
+            Node<V> parent = path.get(i);
+            parent.children.remove(labels.get(i));
+            if (parent.children.isEmpty()) {
+                parent.children = null;
+            }
+            node = parent;
+        }
+        return previous;
+    }
+
+    /**
+     * Visit the value stored for {@code domain} itself and for every subdomain of it
+     */
+    public void forEachUnder(String domain, BiConsumer<String, V> action) {
+        Node<V> node = find(domain);
+        if (node != null) {
+            visit(node, domain, action);
+        }
+    }
+
+    /**
+     * Visit the values stored for the host and each of its parent domains,
+     * starting with the top-level domain and ending with the host itself
+     */
+    public void forEachSuffix(String host, BiConsumer<String, V> action) {
+        Node<V> node = root;
+        int end = host.length();
+        while (end > 0) {
+            int dot = host.lastIndexOf('.', end - 1);
+            Map<String, Node<V>> children = node.children;
+            node = children != null ? children.get(host.substring(dot + 1, end)) : null;
+            if (node == null) {
+                return;
+            }
+            V value = node.value;
+            if (value != null) {
+                action.accept(host.substring(dot + 1), value);
+            }
+            end = dot < 0 ? 0 : dot;
+        }
+    }
+
+    /**
+     * Number of hosts with a value
+     */
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        root.children = null;
+        root.value = null;
+        size = 0;
+    }
+
+    private void visit(Node<V> node, String host, BiConsumer<String, V> action) {
+        V value = node.value;
+        if (value != null) {
+            action.accept(host, value);
+        }
+        Map<String, Node<V>> children = node.children;
+        if (children != null) {
+            for (Map.Entry<String, Node<V>> child : children.entrySet()) {
+                visit(child.getValue(), child.getKey() + "." + host, action);
+            }
+        }
+    }
+
+    private Node<V> find(String host) {
+        Node<V> node = root;
+        int end = host.length();
+        while (node != null && end > 0) {
+            int dot = host.lastIndexOf('.', end - 1);
+            Map<String, Node<V>> children = node.children;
+            node = children != null ? children.get(host.substring(dot + 1, end)) : null;
+            end = dot < 0 ? 0 : dot;
+        }
+        return node == root ? null : node;
+    }
+
+    private Node<V> descend(String host) {
+        Node<V> node = root;
+        int end = host.length();
+        while (end > 0) {
+            int dot = host.lastIndexOf('.', end - 1);
+            if (node.children == null) {
+                node.children = new ConcurrentHashMap<>(4);
+            }
+            node = node.children.computeIfAbsent(host.substring(dot + 1, end), k -> new Node<>());
+            end = dot < 0 ? 0 : dot;
+        }
+        return node;
+    }
+
+    private static final class Node<V> {
+        private volatile Map<String, Node<V>> children;
+        private volatile V value;
+
+        boolean isEmpty() {
+            return value == null && (children == null || children.isEmpty());
+        }
+    }
+}
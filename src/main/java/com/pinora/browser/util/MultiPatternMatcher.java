@@ -0,0 +1,153 @@
+package com.pinora.browser.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Case-insensitive substring matcher for a fixed set of patterns, compiled
+ * into an Aho-Corasick automaton.
+ *
+ * Failure links are folded into a dense transition table over the characters
+ * that actually occur in the patterns, so {@link #matches(CharSequence)} is a
+ * single pass over the input with one array lookup per character and no
+ * allocation, however many patterns there are. Only ASCII letters are
+ * case-folded; patterns containing other non-ASCII characters are ignored.
+ * Instances are immutable and safe to share between threads.
+ */
+public class MultiPatternMatcher {
+
+    private static final int ASCII = 128;
+
+    private final byte[] charClass;     // ASCII char -> column, 0 for chars in no pattern
+    private final int columns;
+    private final int[] transitions;    // state * columns + column -> next state
+    private final boolean[] accepting;  // some pattern ends at this state or its failure chain
+    private final int patternCount;
+
+    public MultiPatternMatcher(Collection<String> patterns) {
+        List<String> accepted = new ArrayList<>();
+        for (String pattern : patterns) {
+            String p = pattern != null ? pattern.trim().toLowerCase(java.util.Locale.ROOT) : "";
+            if (!p.isEmpty() && isAscii(p)) {
+                accepted.add(p);
+            }
+        }
+        this.patternCount = accepted.size();
+
+        // Give every distinct pattern character its own column
+        charClass = new byte[ASCII];
+        int nextClass = 1;
+        for (String p : accepted) {
+            for (int i = 0; i < p.length(); i++) {
+                char c = p.charAt(i);
+                if (charClass[c] == 0) {
+                    if (nextClass > Byte.MAX_VALUE) {
+                        throw new IllegalArgumentException("Too many distinct pattern characters");
+                    }
+                    charClass[c] = (byte) nextClass++;
+                }
+            }
+        }
+        for (char c = 'a'; c <= 'z'; c++) {
+            charClass[c - 'a' + 'A'] = charClass[c];
+        }
+        columns = nextClass;
+
+        // Build the trie; state 0 is the root
+        int capacity = 1;
+        for (String p : accepted) {
+            capacity += p.length();
+        }
+        int[] goTo = new int[capacity * columns];
+        Arrays.fill(goTo, -1);
+        boolean[] output = new boolean[capacity];
+        int states = 1;
+        for (String p : accepted) {
+            int state = 0;
+            for (int i = 0; i < p.length(); i++) {
+                int slot = state * columns + charClass[p.charAt(i)];
+                if (goTo[slot] < 0) {
+                    goTo[slot] = states++;
+                }
+                state = goTo[slot];
+            }
+            output[state] = true;
+        }
+
+        // Breadth-first: resolve missing transitions through failure links
+        int[] failure = new int[states];
+        int[] queue = new int[states];
+        int head = 0;
+        int tail = 0;
+        for (int column = 0; column < columns; column++) {
+            int next = goTo[column];
+            if (next < 0) {
+                goTo[column] = 0;
+            } else {
+                failure[next] = 0;
+                queue[tail++] = next;
+            }
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            output[state] |= output[failure[state]];
+            for (int column = 0; column < columns; column++) {
+                int slot = state * columns + column;
+                int next = goTo[slot];
+                int fallback = goTo[failure[state] * columns + column];
+                if (next < 0) {
+                    goTo[slot] = fallback;
+                } else {
+                    failure[next] = fallback;
+                    queue[tail++] = next;
+                }
+            }
+        }
+
+        this.transitions = Arrays.copyOf(goTo, states * columns);
+        this.accepting = Arrays.copyOf(output, states);
+    }
+
+    /**
+     * Whether any pattern occurs in the text, ignoring ASCII case
+     */
+    public boolean matches(CharSequence text) {
+        if (text == null || patternCount == 0) {
+            return false;
+        }
+        int state = 0;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = text.charAt(i);
+            state = transitions[state * columns + (c < ASCII ? charClass[c] : 0)];
+            if (accepting[state]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Number of patterns compiled into the automaton
+     */
+    public int getPatternCount() {
+        return patternCount;
+    }
+
+    /**
+     * Number of automaton states, a rough measure of its size
+     */
+    public int getStateCount() {
+        return accepting.length;
+    }
+
+    private static boolean isAscii(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) >= ASCII) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
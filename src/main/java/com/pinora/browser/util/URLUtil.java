@@ -1,12 +1,25 @@
 package com.pinora.browser.util;
 
 import java.net.URI;
+import java.util.Locale;
+import java.util.Set;
 
 /**
  * URL utility functions
  */
 public class URLUtil {
     
+    // Common multi-label public suffixes; everything else is treated as a single-label suffix
+    private static final Set<String> MULTI_LABEL_SUFFIXES = Set.of(
+        "co.uk", "org.uk", "ac.uk", "gov.uk", "me.uk", "net.uk",
+        "com.au", "net.au", "org.au", "edu.au", "gov.au",
+        "co.nz", "org.nz", "co.jp", "ne.jp", "or.jp", "ac.jp",
+        "co.kr", "or.kr", "co.in", "org.in", "co.za", "co.il",
+        "com.br", "com.cn", "com.mx", "com.tr", "com.sg", "com.hk", "com.tw", "com.ar",
+        "github.io", "gitlab.io", "blogspot.com", "appspot.com", "herokuapp.com",
+        "netlify.app", "vercel.app", "pages.dev", "workers.dev", "cloudfront.net"
+    );
+    
     /**
      * Format URL - add protocol if missing, handle search queries
      */
@@ -59,4 +72,105 @@ public class URLUtil {
             return false;
         }
     }
+    
+    /**
+     * Lower-cased host of a URL without user info, port or trailing dot,
+     * or null if the URL has no host
+     */
+    public static String getHost(String url) {
+        if (url == null) {
+            return null;
+        }
+        int scheme = url.indexOf("://");
+        int start = scheme < 0 ? 0 : scheme + 3;
+        int end = start;
+        while (end < url.length() && "/?#".indexOf(url.charAt(end)) < 0) {
+            end++;
+        }
+        int at = url.lastIndexOf('@', end - 1);
+        if (at >= start) {
+            start = at + 1;
+        }
+        if (start < end && url.charAt(start) == '[') {
+            // IPv6 literal
+            int close = url.indexOf(']', start);
+            return close > start ? url.substring(start + 1, close).toLowerCase(Locale.ROOT) : null;
+        }
+        int colon = url.indexOf(':', start);
+        if (colon >= 0 && colon < end) {
+            end = colon;
+        }
+        return normalizeHost(url.substring(start, end));
+    }
+    
+    /**
+     * Lower-case a host name and strip leading and trailing dots; null if nothing is left
+     */
+    public static String normalizeHost(String host) {
+        if (host == null) {
+            return null;
+        }
+        int start = 0;
+        int end = host.length();
+        while (start < end && host.charAt(start) == '.') {
+            start++;
+        }
+        while (end > start && host.charAt(end - 1) == '.') {
+            end--;
+        }
+        return start < end ? host.substring(start, end).toLowerCase(Locale.ROOT) : null;
+    }
+    
+    /**
+     * Registrable domain ("eTLD+1") of a host, e.g. {@code news.bbc.co.uk -> bbc.co.uk}.
+     * Uses a built-in list of common multi-label suffixes rather than the full
+     * Public Suffix List. IP addresses and single-label hosts are returned as is.
+     */
+    public static String getRegistrableDomain(String host) {
+        host = normalizeHost(host);
+        if (host == null || isIPAddress(host)) {
+            return host;
+        }
+        int last = host.lastIndexOf('.');
+        if (last < 0) {
+            return host;
+        }
+        int second = host.lastIndexOf('.', last - 1);
+        if (second < 0) {
+            return host;
+        }
+        if (MULTI_LABEL_SUFFIXES.contains(host.substring(second + 1))) {
+            int third = host.lastIndexOf('.', second - 1);
+            return host.substring(third + 1);
+        }
+        return host.substring(second + 1);
+    }
+    
+    /**
+     * Whether the host is itself a public suffix such as {@code com} or {@code co.uk},
+     * by the same built-in list as {@link #getRegistrableDomain(String)}
+     */
+    public static boolean isPublicSuffix(String host) {
+        host = normalizeHost(host);
+        if (host == null || isIPAddress(host)) {
+            return false;
+        }
+        return host.indexOf('.') < 0 || MULTI_LABEL_SUFFIXES.contains(host);
+    }
+    
+    /**
+     * Whether the host is an IPv4 or IPv6 literal
+     */
+    public static boolean isIPAddress(String host) {
+        if (host.indexOf(':') >= 0) {
+            return true;
+        }
+        for (int i = 0; i < host.length(); i++) {
+            char c = host.charAt(i);
+            if (c != '.' && (c < '0' || c > '9')) {
+                return false;
+            }
+        }
+        return !host.isEmpty();
+    }
 }